@@ -0,0 +1,111 @@
+package ch.bbw.zork.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.bbw.zork.Command;
+import ch.bbw.zork.CommandHandler;
+import ch.bbw.zork.CommandWords;
+import ch.bbw.zork.Game;
+import ch.bbw.zork.Parser;
+
+/**
+ * DispatchBenchmark - finding the code for a parsed command.
+ *
+ * "registry" looks the handler up by command id in CommandWords,
+ * "ifElseChain" compares the command word with equals like the game did
+ * before. The handlers only count, so only the dispatch is measured.
+ * "isCommand*" check a word that is no command, with CommandWords and
+ * with the stream the check used before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class DispatchBenchmark {
+
+	private static final String[] LINES = { "go west", "search drawer", "pickup note", "inventory", "hide desk",
+			"map", "use disguise", "help" };
+	private static final List<String> OLD_COMMANDS = Arrays.asList("go", "quit", "help", "inventory", "hide",
+			"search", "pickup", "map", "use");
+
+	private CommandWords commandWords;
+	private Command[] commands;
+	private int counter;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		commandWords = new CommandWords();
+		CommandHandler count = (game, command) -> ++counter < 0;
+		for (String word : OLD_COMMANDS) {
+			commandWords.register(word, count);
+		}
+		commands = new Command[LINES.length];
+		for (int i = 0; i < LINES.length; i++) {
+			// A parser reuses its Command, so every line gets its own parser
+			commands[i] = new Parser(null, System.out, commandWords).parse(LINES[i]);
+		}
+	}
+
+	@Benchmark
+	public boolean registry() {
+		Command command = commands[next++ & (commands.length - 1)];
+		return commandWords.getHandler(command.getCommandId()).execute(null, command);
+	}
+
+	@Benchmark
+	public boolean ifElseChain() {
+		Command command = commands[next++ & (commands.length - 1)];
+		return oldProcessCommand(null, command);
+	}
+
+	@Benchmark
+	public boolean isCommand() {
+		return commandWords.isCommand("serach");
+	}
+
+	@Benchmark
+	public boolean isCommandStream() {
+		String word = "serach";
+		return OLD_COMMANDS.stream().filter(c -> c.equals(word)).count() > 0;
+	}
+
+	private boolean oldProcessCommand(Game game, Command command) {
+		String commandWord = command.getCommandWord();
+		if (commandWord.equals("help")) {
+			counter++;
+		} else if (commandWord.equals("go")) {
+			counter++;
+		} else if (commandWord.equals("inventory")) {
+			counter++;
+		} else if (commandWord.equals("hide")) {
+			counter++;
+		} else if (commandWord.equals("search")) {
+			counter++;
+		} else if (commandWord.equals("pickup")) {
+			counter++;
+		} else if (commandWord.equals("map")) {
+			counter++;
+		} else if (commandWord.equals("use")) {
+			counter++;
+		} else if (commandWord.equals("quit")) {
+			return true;
+		}
+		return counter < 0;
+	}
+}
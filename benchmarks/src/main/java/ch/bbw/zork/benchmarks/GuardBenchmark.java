@@ -0,0 +1,70 @@
+package ch.bbw.zork.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.bbw.zork.Guard;
+import ch.bbw.zork.Room;
+import ch.bbw.zork.World;
+import ch.bbw.zork.WorldState;
+
+/**
+ * GuardBenchmark - one move of the guard in the standard building.
+ *
+ * "moveRandom" is the game's guard: a random exit that is not forbidden
+ * and, if possible, not the room he came from. "movePatrol" follows a
+ * fixed route through the ground floor instead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class GuardBenchmark {
+
+	private static final String[] PATROL = { "lagerraum", "kueche", "flurEG", "empfangshalle", "cafeteria", "kueche" };
+
+	private Guard randomGuard;
+	private Guard patrolGuard;
+
+	@Setup
+	public void setUp() {
+		World world = World.standard();
+		WorldState state = new WorldState(world);
+		randomGuard = new Guard("Security Guard", world.getGuardStartRoom(), new Random(42), state);
+		for (Room room : world.getGuardForbiddenRooms()) {
+			randomGuard.setForbiddenRoom(room);
+		}
+		ArrayList<Room> route = new ArrayList<>();
+		for (String key : PATROL) {
+			route.add(world.getRoom(key));
+		}
+		patrolGuard = new Guard("Security Guard", route.get(0), new Random(42), state);
+		patrolGuard.setPatrolRoute(route);
+	}
+
+	@Benchmark
+	public Room moveRandom() {
+		randomGuard.move();
+		return randomGuard.getCurrentRoom();
+	}
+
+	@Benchmark
+	public Room movePatrol() {
+		patrolGuard.move();
+		return patrolGuard.getCurrentRoom();
+	}
+}
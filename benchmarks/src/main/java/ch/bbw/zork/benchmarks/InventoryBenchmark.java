@@ -0,0 +1,99 @@
+package ch.bbw.zork.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.bbw.zork.Inventory;
+import ch.bbw.zork.Item;
+import ch.bbw.zork.Searchable;
+import ch.bbw.zork.World;
+
+/**
+ * InventoryBenchmark - the item checks of a guard encounter ("has the
+ * player a pistol and bullets?") and of searching a door ("has the
+ * player the item it requires?").
+ *
+ * "*Scan" check an ArrayList of items by name with equalsIgnoreCase like
+ * the game did before, "*Mask" the Inventory bitset with the masks the
+ * World hands out. The player carries five items; the pistol is the
+ * last one picked up, the door requires the keycard.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class InventoryBenchmark {
+
+	private static final String[] CARRIED = { "bullets", "code", "keycard", "crowbar", "pistol" };
+
+	private List<Item> list;
+	private Inventory inventory;
+	private Searchable door;
+	private long[] pistolAndBullets;
+	private long[] doorMask;
+
+	@Setup
+	public void setUp() {
+		World world = World.standard();
+		list = new ArrayList<>();
+		inventory = new Inventory(world);
+		for (String name : CARRIED) {
+			for (int i = 0; i < world.getItemCount(); i++) {
+				if (world.getItem(i).getName().equals(name)) {
+					list.add(world.getItem(i));
+					inventory.add(world.getItem(i));
+				}
+			}
+		}
+		for (int i = 0; i < world.getSearchableCount(); i++) {
+			if ("keycard".equals(world.getSearchable(i).getRequiredItem())) {
+				door = world.getSearchable(i);
+			}
+		}
+		pistolAndBullets = world.getItemMask("pistol", "bullets");
+		doorMask = world.getRequiredItems(door);
+	}
+
+	@Benchmark
+	public boolean guardEncounterScan() {
+		return hasItem("pistol") && hasItem("bullets");
+	}
+
+	@Benchmark
+	public boolean guardEncounterMask() {
+		return inventory.hasAll(pistolAndBullets);
+	}
+
+	@Benchmark
+	public boolean doorScan() {
+		return hasItem(door.getRequiredItem());
+	}
+
+	@Benchmark
+	public boolean doorMask() {
+		return inventory.hasAny(doorMask);
+	}
+
+	private boolean hasItem(String name) {
+		for (Item item : list) {
+			if (item.getName().equalsIgnoreCase(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
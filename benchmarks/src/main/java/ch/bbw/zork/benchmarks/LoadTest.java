@@ -0,0 +1,193 @@
+package ch.bbw.zork.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import ch.bbw.zork.SessionManager;
+
+/**
+ * LoadTest - plays many scripted sessions at once and reports throughput
+ * and command latency.
+ *
+ * Every simulated player waits for the "> " prompt, optionally "thinks"
+ * for a while, and then types the next command of a fixed script. Only
+ * free commands are used, so the guard never ends a session early.
+ * Run it once with platform threads and once with virtual threads
+ * (Java 21+) to compare the two execution models. Build the benchmarks
+ * (see pom.xml), then:
+ *
+ *   java -cp target/benchmarks.jar ch.bbw.zork.benchmarks.LoadTest platform 2000 50 10
+ *   java -cp target/benchmarks.jar ch.bbw.zork.benchmarks.LoadTest virtual 2000 50 10
+ *
+ * Arguments: thread mode, number of sessions, commands per session and
+ * think time in milliseconds between commands.
+ */
+public class LoadTest {
+
+	// Commands that cost no action, so every session survives its script
+	private static final String[] SCRIPT = { "inventory", "map", "help", "pickup nothing", "use nothing" };
+
+	public static void main(String[] args) throws InterruptedException {
+		String mode = args.length > 0 ? args[0] : "platform";
+		int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		int commands = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+		long thinkMillis = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+		Executor executor = mode.equals("virtual") ? SessionManager.virtualThreads() : SessionManager.platformThreads();
+		SessionManager manager = new SessionManager(sessions, executor);
+		ScheduledExecutorService typist = Executors.newSingleThreadScheduledExecutor();
+		CountDownLatch done = new CountDownLatch(sessions);
+		ScriptedPlayer[] players = new ScriptedPlayer[sessions];
+
+		long start = System.nanoTime();
+		for (int i = 0; i < sessions; i++) {
+			players[i] = new ScriptedPlayer(commands, thinkMillis, typist, done);
+			manager.startSession(players[i].input, players[i].output);
+		}
+		// Sessions that already finished their script no longer count
+		long memory = manager.getMemoryUsage();
+		int running = manager.getActiveSessionCount();
+		done.await();
+		long elapsed = System.nanoTime() - start;
+		typist.shutdown();
+
+		long[] latencies = new long[sessions * commands];
+		int count = 0;
+		for (ScriptedPlayer player : players) {
+			System.arraycopy(player.latencies, 0, latencies, count, player.answered);
+			count += player.answered;
+		}
+		Arrays.sort(latencies, 0, count);
+
+		System.out.println("Mode:         " + mode);
+		System.out.println("Sessions:     " + sessions);
+		System.out.println("Commands:     " + count);
+		System.out.println("Elapsed:      " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+		System.out.println("Throughput:   " + (long) (count / (elapsed / 1e9)) + " commands/s");
+		System.out.println("p50 latency:  " + percentile(latencies, count, 0.50) / 1000 + " us");
+		System.out.println("p99 latency:  " + percentile(latencies, count, 0.99) / 1000 + " us");
+		System.out.println("Memory:       " + (running == 0 ? 0 : memory / running) + " bytes/session (estimated, "
+				+ running + " sessions running)");
+	}
+
+	private static long percentile(long[] sorted, int count, double fraction) {
+		if (count == 0) {
+			return 0;
+		}
+		return sorted[Math.min(count - 1, (int) (count * fraction))];
+	}
+
+	/**
+	 * One simulated player: an input stream the game reads commands from
+	 * and an output stream that watches for the prompt.
+	 */
+	private static class ScriptedPlayer {
+
+		// Marks the end of the input
+		private static final byte[] EOF = new byte[0];
+
+		private final BlockingQueue<byte[]> lines = new LinkedBlockingQueue<>();
+		private final long[] latencies;
+		private final int commands;
+		private final long thinkMillis;
+		private final ScheduledExecutorService typist;
+		private final CountDownLatch done;
+		private int typed;
+		private int answered;
+		private long sentAt;
+
+		final InputStream input = new InputStream() {
+			private byte[] current = new byte[0];
+			private int position;
+
+			public int read() throws IOException {
+				byte[] one = new byte[1];
+				return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+			}
+
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				if (current == EOF) {
+					return -1;
+				}
+				if (position == current.length) {
+					try {
+						// Blocks (or parks a virtual thread) until the player types
+						current = lines.take();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("interrupted");
+					}
+					position = 0;
+					if (current == EOF) {
+						return -1;
+					}
+				}
+				int n = Math.min(length, current.length - position);
+				System.arraycopy(current, position, buffer, offset, n);
+				position += n;
+				return n;
+			}
+		};
+
+		final OutputStream output = new OutputStream() {
+			private int previous = '\n';
+			private int beforePrevious = '\n';
+
+			public void write(int b) {
+				// The prompt is "> " at the start of a line
+				if (b == ' ' && previous == '>' && beforePrevious == '\n') {
+					promptShown();
+				}
+				beforePrevious = previous;
+				previous = b;
+			}
+
+			public void write(byte[] buffer, int offset, int length) {
+				for (int i = offset; i < offset + length; i++) {
+					write(buffer[i]);
+				}
+			}
+		};
+
+		ScriptedPlayer(int commands, long thinkMillis, ScheduledExecutorService typist, CountDownLatch done) {
+			this.commands = commands;
+			this.thinkMillis = thinkMillis;
+			this.typist = typist;
+			this.done = done;
+			this.latencies = new long[commands];
+		}
+
+		private void promptShown() {
+			if (typed > answered) {
+				latencies[answered++] = System.nanoTime() - sentAt;
+			}
+			if (typed == commands) {
+				lines.add(EOF);
+				done.countDown();
+				return;
+			}
+			byte[] line = (SCRIPT[typed % SCRIPT.length] + "\n").getBytes(StandardCharsets.UTF_8);
+			typed++;
+			if (thinkMillis > 0) {
+				typist.schedule(() -> type(line), thinkMillis, TimeUnit.MILLISECONDS);
+			} else {
+				type(line);
+			}
+		}
+
+		private void type(byte[] line) {
+			sentAt = System.nanoTime();
+			lines.add(line);
+		}
+	}
+}
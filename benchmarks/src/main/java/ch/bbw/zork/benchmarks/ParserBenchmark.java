@@ -0,0 +1,129 @@
+package ch.bbw.zork.benchmarks;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.bbw.zork.Command;
+import ch.bbw.zork.CommandWords;
+import ch.bbw.zork.Parser;
+
+/**
+ * ParserBenchmark - parsing recorded player lines into Commands.
+ *
+ * "parse" is the game's Parser, "splitParse" the way lines were parsed
+ * before (String.split, a stream over the command words and a new
+ * Command per line). Run with -prof gc to see the allocation per line.
+ *
+ * "getCommand" reads the same lines from an input stream, including the
+ * prompt and the line reader; "isCommand" checks the first words of the
+ * lines (commands and typos) with CommandWords.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class ParserBenchmark {
+
+	// Lines as typed by players and bots, including typos and extra words
+	private static final String[] LINES = { "go west", "search drawer", "pickup note", "inventory", "go south",
+			"hide desk", "1", "2", "map", "search  shelf", "use disguise", "go north now", "help", "serach drawer",
+			"go east", "" };
+
+	private Parser parser;
+	private Parser reader;
+	private CommandWords commandWords;
+	private String[] firstWords;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		parser = new Parser(null, System.out);
+		commandWords = new CommandWords();
+		StringBuilder recorded = new StringBuilder();
+		firstWords = new String[LINES.length];
+		for (int i = 0; i < LINES.length; i++) {
+			recorded.append(LINES[i]).append('\n');
+			String[] words = LINES[i].trim().split("\\s+");
+			firstWords[i] = words[0];
+		}
+		PrintStream silent = new PrintStream(new OutputStream() {
+			public void write(int b) {
+				// the prompt is not measured
+			}
+		});
+		reader = new Parser(new ReplayInputStream(recorded.toString().getBytes(StandardCharsets.UTF_8)), silent);
+	}
+
+	@Benchmark
+	public Command parse() {
+		return parser.parse(LINES[next++ & (LINES.length - 1)]);
+	}
+
+	@Benchmark
+	public Command getCommand() {
+		return reader.getCommand();
+	}
+
+	@Benchmark
+	public boolean isCommand() {
+		return commandWords.isCommand(firstWords[next++ & (firstWords.length - 1)]);
+	}
+
+	@Benchmark
+	public Command splitParse() {
+		String line = LINES[next++ & (LINES.length - 1)].trim();
+		if (line.isEmpty()) {
+			return new Command(null);
+		}
+		String[] tokens = line.split("\\s+");
+		if (!commandWords.isCommand(tokens[0])) {
+			return new Command(null, tokens.length == 2 ? tokens[1] : null);
+		}
+		return new Command(tokens[0], tokens.length > 1 ? tokens[1] : null);
+	}
+
+	/**
+	 * Plays the recorded input over and over, so the parser never sees
+	 * the end of it.
+	 */
+	private static final class ReplayInputStream extends InputStream {
+
+		private final byte[] recorded;
+		private int position;
+
+		ReplayInputStream(byte[] recorded) {
+			this.recorded = recorded;
+		}
+
+		@Override
+		public int read() {
+			int b = recorded[position];
+			position = (position + 1) % recorded.length;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) {
+			int n = Math.min(length, recorded.length - position);
+			System.arraycopy(recorded, position, buffer, offset, n);
+			position = (position + n) % recorded.length;
+			return n;
+		}
+	}
+}
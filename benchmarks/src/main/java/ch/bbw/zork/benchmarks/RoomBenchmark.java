@@ -0,0 +1,91 @@
+package ch.bbw.zork.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.bbw.zork.Direction;
+import ch.bbw.zork.Room;
+import ch.bbw.zork.Searchable;
+import ch.bbw.zork.World;
+import ch.bbw.zork.WorldState;
+
+/**
+ * RoomBenchmark - the room lookups of every turn in the standard
+ * building, going round all rooms (and objects, and exits).
+ *
+ * "longDescription" is the text printed on entering a room,
+ * "getSearchable" finds an object by the name the player typed, and
+ * "nextRoom" follows an exit on the room itself, "nextRoomState"
+ * through a game's WorldState (which checks the locks).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class RoomBenchmark {
+
+	private Room[] rooms;
+	private WorldState state;
+	// Every searchable object with the room it is in
+	private Room[] searchRooms;
+	private String[] searchNames;
+	private int nextRoom;
+	private int nextSearch;
+	private int nextExit;
+
+	@Setup
+	public void setUp() {
+		World world = World.standard();
+		state = new WorldState(world);
+		rooms = new Room[world.getRoomCount()];
+		List<Room> inRooms = new ArrayList<>();
+		List<String> names = new ArrayList<>();
+		for (int id = 0; id < rooms.length; id++) {
+			rooms[id] = world.getRoom(id);
+			for (Searchable searchable : rooms[id].getSearchables()) {
+				inRooms.add(rooms[id]);
+				names.add(searchable.getName());
+			}
+		}
+		searchRooms = inRooms.toArray(new Room[0]);
+		searchNames = names.toArray(new String[0]);
+	}
+
+	@Benchmark
+	public String longDescription() {
+		nextRoom = (nextRoom + 1) % rooms.length;
+		return rooms[nextRoom].longDescription(state);
+	}
+
+	@Benchmark
+	public Searchable getSearchable() {
+		nextSearch = (nextSearch + 1) % searchNames.length;
+		return searchRooms[nextSearch].getSearchable(searchNames[nextSearch], state);
+	}
+
+	@Benchmark
+	public Room nextRoom() {
+		nextExit = (nextExit + 1) % (rooms.length * Direction.COUNT);
+		return rooms[nextExit / Direction.COUNT].nextRoom(Direction.get(nextExit % Direction.COUNT));
+	}
+
+	@Benchmark
+	public Room nextRoomState() {
+		nextExit = (nextExit + 1) % (rooms.length * Direction.COUNT);
+		return state.nextRoom(rooms[nextExit / Direction.COUNT], Direction.get(nextExit % Direction.COUNT));
+	}
+}
@@ -0,0 +1,146 @@
+package ch.bbw.zork.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import ch.bbw.zork.Game;
+
+/**
+ * SaveBenchmark - compares the game's snapshot format with Java
+ * serialization and JSON holding the same information.
+ *
+ * Prints the size of one saved game and the average time to save and
+ * load it in each format. The JDK has no JSON parser, so JSON is only
+ * measured for saving. Also prints how fast new games (sessions) are
+ * created, which is what a restore costs besides reading the snapshot.
+ *
+ * It is a plain main class rather than a JMH benchmark because it
+ * compares formats side by side. Build the benchmarks (see pom.xml), then:
+ *
+ *   java -cp target/benchmarks.jar ch.bbw.zork.benchmarks.SaveBenchmark [iterations]
+ */
+public class SaveBenchmark {
+
+	private static final String[] SCRIPT = { "search drawer", "pickup note", "go west", "search shelf", "inventory" };
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		PrintStream silent = new PrintStream(new OutputStream() {
+			public void write(int b) {
+				// the game's text is not needed here
+			}
+		});
+		Game game = new Game(silent, 42);
+		game.start();
+		for (String line : SCRIPT) {
+			game.handleLine(line);
+		}
+
+		// Warm up all code paths before measuring
+		for (int i = 0; i < iterations / 10; i++) {
+			Game.restoreSnapshot(game.writeSnapshot(), silent);
+			readJava(writeJava(game.toStateMap()));
+			writeJson(game.toStateMap());
+			new Game(silent, i);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			new Game(silent, i);
+		}
+		long create = (System.nanoTime() - start) / iterations;
+
+		start = System.nanoTime();
+		byte[] snapshot = null;
+		for (int i = 0; i < iterations; i++) {
+			snapshot = game.writeSnapshot();
+		}
+		long snapshotSave = (System.nanoTime() - start) / iterations;
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			Game.restoreSnapshot(snapshot, silent);
+		}
+		long snapshotLoad = (System.nanoTime() - start) / iterations;
+
+		start = System.nanoTime();
+		byte[] java = null;
+		for (int i = 0; i < iterations; i++) {
+			java = writeJava(game.toStateMap());
+		}
+		long javaSave = (System.nanoTime() - start) / iterations;
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			readJava(java);
+		}
+		long javaLoad = (System.nanoTime() - start) / iterations;
+
+		start = System.nanoTime();
+		byte[] json = null;
+		for (int i = 0; i < iterations; i++) {
+			json = writeJson(game.toStateMap());
+		}
+		long jsonSave = (System.nanoTime() - start) / iterations;
+
+		System.out.println("Format             Bytes   Save (ns)   Load (ns)");
+		System.out.printf("Snapshot        %8d %11d %11d%n", snapshot.length, snapshotSave, snapshotLoad);
+		System.out.printf("Java serial.    %8d %11d %11d%n", java.length, javaSave, javaLoad);
+		System.out.printf("JSON            %8d %11d %11s%n", json.length, jsonSave, "-");
+		System.out.println();
+		System.out.printf("New game: %d ns (%d games/s)%n", create, 1000000000L / Math.max(create, 1));
+	}
+
+	private static byte[] writeJava(Map<String, Object> state) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(state);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Object readJava(byte[] bytes) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return in.readObject();
+		}
+	}
+
+	private static byte[] writeJson(Map<String, Object> state) {
+		StringBuilder json = new StringBuilder(512);
+		appendJson(json, state);
+		return json.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void appendJson(StringBuilder json, Object value) {
+		if (value instanceof Map) {
+			json.append('{');
+			String separator = "";
+			for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+				json.append(separator).append('"').append(entry.getKey()).append("\":");
+				appendJson(json, entry.getValue());
+				separator = ",";
+			}
+			json.append('}');
+		} else if (value instanceof List) {
+			json.append('[');
+			String separator = "";
+			for (Object element : (List<Object>) value) {
+				json.append(separator);
+				appendJson(json, element);
+				separator = ",";
+			}
+			json.append(']');
+		} else if (value instanceof String) {
+			json.append('"').append(((String) value).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+		} else {
+			json.append(value);
+		}
+	}
+}
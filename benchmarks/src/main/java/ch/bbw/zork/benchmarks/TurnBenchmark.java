@@ -0,0 +1,95 @@
+package ch.bbw.zork.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.bbw.zork.Game;
+import ch.bbw.zork.OutputSink;
+import ch.bbw.zork.Simulation;
+import ch.bbw.zork.SinkPrintStream;
+
+/**
+ * TurnBenchmark - whole turns of the game: parsing, dispatch, the
+ * command itself, the guard and the text of the response.
+ *
+ * "turn" hands one line of a scripted tour to Game.handleLine, which
+ * writes its response to a sink that drops it after encoding. When the
+ * guard ends the game a new one is started with the next seed, so the
+ * cost of new games is part of the average. "playthrough" plays the
+ * whole route to the teleport machine in a Simulation (no text at all).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class TurnBenchmark {
+
+	// A tour of the ground floor and the library, with free commands in between
+	private static final String[] TOUR = { "go west", "search shelf", "inventory", "go north", "search cabinet",
+			"go west", "search books", "hide bookshelf", "1", "2", "map", "go east", "go south", "go east",
+			"search drawer", "help" };
+	private static final List<String> TELEPORT_ROUTE = Arrays.asList("go west", "go south", "go west", "go south",
+			"hide alcove", "1", "1", "1", "2", "search teleportmachine");
+
+	private final OutputSink discard = new OutputSink() {
+		@Override
+		public void write(byte[] bytes, int offset, int length) {
+			// the response is encoded but not sent anywhere
+		}
+
+		@Override
+		public void write(ByteBuffer bytes) {
+			// nor are screens
+		}
+
+		@Override
+		public void flush() {
+		}
+	};
+
+	private Simulation simulation;
+	private Game game;
+	private long gameSeed;
+	private int next;
+	private long seed;
+
+	@Setup
+	public void setUp() {
+		simulation = new Simulation();
+		newGame();
+	}
+
+	@Benchmark
+	public boolean turn() {
+		boolean over = game.handleLine(TOUR[next++ % TOUR.length]);
+		if (over) {
+			newGame();
+		}
+		return over;
+	}
+
+	@Benchmark
+	public Simulation.Result playthrough() {
+		return simulation.run(seed++, TELEPORT_ROUTE);
+	}
+
+	private void newGame() {
+		game = new Game(SinkPrintStream.of(discard), gameSeed++);
+		next = 0;
+	}
+}
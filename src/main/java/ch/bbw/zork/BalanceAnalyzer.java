@@ -0,0 +1,409 @@
+package ch.bbw.zork;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * BalanceAnalyzer - plays a large number of simulated games with the
+ * same rules and reports how dangerous the guard is: the probability of
+ * being caught in each room and at each turn, the mean score and how
+ * the players escaped.
+ *
+ * The rules are the map of a World, the number of actions per round and
+ * the guard's behaviour: random movement (avoiding the forbidden rooms
+ * and stepping back), a fixed patrol route or hunting the player's
+ * noise (see NoiseField). Every run is a seeded
+ * Simulation, and the seeds are split into batches on a fork/join pool,
+ * each batch adding up its own Tally, so the runs share nothing and the
+ * result does not depend on the number of cores.
+ *
+ *   java -cp target/classes ch.bbw.zork.BalanceAnalyzer 1000000 1-3 random 200
+ *   java -cp target/classes ch.bbw.zork.BalanceAnalyzer 1000000 2 lagerraum,kueche,flurEG,keller 200
+ *   java -cp target/classes ch.bbw.zork.BalanceAnalyzer 1000000 2 hunt 200
+ *
+ * Arguments: number of runs, actions per round (one number or a range to
+ * sweep), "random", "hunt" or a patrol route of room keys, and the maximum number
+ * of turns (lines typed) per run. The players are Explorers.
+ */
+public class BalanceAnalyzer {
+
+	// Seeds per fork/join task that are played without splitting further
+	private static final int BATCH_SIZE = 256;
+	// Rows of the "caught by turn" table
+	private static final int TURN_ROWS = 20;
+
+	private final World world;
+	private final Simulation simulation;
+	private final int movesPerRound;
+	private final ArrayList<Room> patrolRoute;
+	private final boolean hunting;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Analyze the given rules on the common fork/join pool.
+	 *
+	 * @param patrolRoute the guard's route, or an empty list to let him
+	 *                    move randomly
+	 */
+	public BalanceAnalyzer(World world, int movesPerRound, List<Room> patrolRoute) {
+		this(world, movesPerRound, patrolRoute, false, ForkJoinPool.commonPool());
+	}
+
+	public BalanceAnalyzer(World world, int movesPerRound, List<Room> patrolRoute, ForkJoinPool pool) {
+		this(world, movesPerRound, patrolRoute, false, pool);
+	}
+
+	/**
+	 * @param hunting true to let the guard hunt the player's noise
+	 *                (see Game.setHunting) whenever he hears it
+	 */
+	public BalanceAnalyzer(World world, int movesPerRound, List<Room> patrolRoute, boolean hunting, ForkJoinPool pool) {
+		this.world = world;
+		this.movesPerRound = movesPerRound;
+		this.hunting = hunting;
+		// The route is only read by the guards, so all games share one list
+		ArrayList<Room> route = new ArrayList<>(patrolRoute);
+		this.patrolRoute = route;
+		this.pool = pool;
+		this.simulation = new Simulation(world, game -> {
+			game.setMovesPerRound(movesPerRound);
+			if (!route.isEmpty()) {
+				game.getGuard().setPatrolRoute(route);
+			}
+			if (hunting) {
+				game.setHunting(true);
+			}
+		});
+	}
+
+	/**
+	 * Play one game per seed from firstSeed to firstSeed + runs - 1 with
+	 * the given player, each for at most maxTurns lines.
+	 */
+	public Report analyze(Simulation.Player player, long firstSeed, int runs, int maxTurns) {
+		Tally tally = pool.invoke(new Batch(player, maxTurns, firstSeed, firstSeed + runs));
+		return new Report(this, tally, maxTurns);
+	}
+
+	public static void main(String[] args) {
+		int runs = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		String moves = args.length > 1 ? args[1] : "2";
+		String guard = args.length > 2 ? args[2] : "random";
+		int maxTurns = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+		World world = World.standard();
+		List<Room> route = new ArrayList<>();
+		boolean hunting = guard.equals("hunt");
+		if (!guard.equals("random") && !hunting) {
+			for (String key : guard.split(",")) {
+				Room room = world.getRoom(key.trim());
+				if (room == null) {
+					throw new IllegalArgumentException("No room " + key.trim() + " in the patrol route");
+				}
+				route.add(room);
+			}
+		}
+		int dash = moves.indexOf('-');
+		int fewest = Integer.parseInt(dash < 0 ? moves : moves.substring(0, dash));
+		int most = dash < 0 ? fewest : Integer.parseInt(moves.substring(dash + 1));
+
+		Simulation.Player explorer = new Explorer(world);
+		for (int movesPerRound = fewest; movesPerRound <= most; movesPerRound++) {
+			long start = System.nanoTime();
+			Report report = new BalanceAnalyzer(world, movesPerRound, route, hunting, ForkJoinPool.commonPool()).analyze(explorer, 0, runs, maxTurns);
+			long elapsed = System.nanoTime() - start;
+			report.printTo(System.out);
+			System.out.println("Elapsed:          " + elapsed / 1000000 + " ms (" + (long) (runs / (elapsed / 1e9) * 60) + " runs/min)");
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Plays a range of seeds, splitting it in halves until a batch is
+	 * small enough to play on one thread.
+	 */
+	private final class Batch extends RecursiveTask<Tally> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Simulation.Player player;
+		private final int maxTurns;
+		private final long from;
+		private final long to;
+
+		Batch(Simulation.Player player, int maxTurns, long from, long to) {
+			this.player = player;
+			this.maxTurns = maxTurns;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Tally compute() {
+			if (to - from <= BATCH_SIZE) {
+				Tally tally = new Tally(world.getRoomCount(), maxTurns);
+				for (long seed = from; seed < to; seed++) {
+					tally.add(simulation.run(seed, player, maxTurns));
+				}
+				return tally;
+			}
+			long middle = from + (to - from) / 2;
+			Batch left = new Batch(player, maxTurns, from, middle);
+			left.fork();
+			Tally right = new Batch(player, maxTurns, middle, to).compute();
+			return left.join().merge(right);
+		}
+	}
+
+	/**
+	 * The counts of a batch of runs. Tallies of different batches are
+	 * merged once the batches are done.
+	 */
+	private static final class Tally {
+
+		private long runs;
+		private final long[] endings = new long[Ending.values().length];
+		private long scoreSum;
+		private long turnSum;
+		// Captures by room id, and captures and endings of any kind by turn
+		private final long[] capturesByRoom;
+		private final long[] capturesByTurn;
+		private final long[] endedByTurn;
+
+		Tally(int rooms, int maxTurns) {
+			capturesByRoom = new long[rooms];
+			capturesByTurn = new long[maxTurns + 1];
+			endedByTurn = new long[maxTurns + 1];
+		}
+
+		void add(Simulation.Result result) {
+			runs++;
+			scoreSum += result.getScore();
+			turnSum += result.getTurns();
+			if (result.getEnding() != null) {
+				endings[result.getEnding().ordinal()]++;
+				endedByTurn[result.getTurns()]++;
+			}
+			if (result.isCaught()) {
+				capturesByRoom[result.getRoom().getId()]++;
+				capturesByTurn[result.getTurns()]++;
+			}
+		}
+
+		Tally merge(Tally other) {
+			runs += other.runs;
+			scoreSum += other.scoreSum;
+			turnSum += other.turnSum;
+			add(endings, other.endings);
+			add(capturesByRoom, other.capturesByRoom);
+			add(capturesByTurn, other.capturesByTurn);
+			add(endedByTurn, other.endedByTurn);
+			return this;
+		}
+
+		private static void add(long[] sums, long[] counts) {
+			for (int i = 0; i < sums.length; i++) {
+				sums[i] += counts[i];
+			}
+		}
+	}
+
+	/**
+	 * The result of an analysis.
+	 */
+	public static final class Report {
+
+		private final BalanceAnalyzer analyzer;
+		private final Tally tally;
+		private final int maxTurns;
+
+		private Report(BalanceAnalyzer analyzer, Tally tally, int maxTurns) {
+			this.analyzer = analyzer;
+			this.tally = tally;
+			this.maxTurns = maxTurns;
+		}
+
+		public long getRuns() {
+			return tally.runs;
+		}
+
+		/**
+		 * The number of runs that ended the given way.
+		 */
+		public long getCount(Ending ending) {
+			return tally.endings[ending.ordinal()];
+		}
+
+		/**
+		 * The number of runs that were still going after maxTurns lines
+		 * (or when the player stopped).
+		 */
+		public long getUnfinished() {
+			long ended = 0;
+			for (long count : tally.endings) {
+				ended += count;
+			}
+			return tally.runs - ended;
+		}
+
+		public double getMeanScore() {
+			return tally.scoreSum / (double) tally.runs;
+		}
+
+		public double getMeanTurns() {
+			return tally.turnSum / (double) tally.runs;
+		}
+
+		/**
+		 * The probability that a run ends with the player caught in the
+		 * given room.
+		 */
+		public double getCaptureProbability(Room room) {
+			return tally.capturesByRoom[room.getId()] / (double) tally.runs;
+		}
+
+		/**
+		 * The probability that a run ends with the player caught at the
+		 * given turn, counted in commands including the one the player was
+		 * caught at (see Simulation.Result.getTurns). Unlike getCaptureHazard
+		 * this is among all runs; it is 0 beyond maxTurns.
+		 */
+		public double getCaptureProbability(int turn) {
+			return turn < tally.capturesByTurn.length ? tally.capturesByTurn[turn] / (double) tally.runs : 0;
+		}
+
+		/**
+		 * The probability of being caught at the given turn for a player
+		 * whose game was still going before it.
+		 */
+		public double getCaptureHazard(int turn) {
+			return turn < tally.capturesByTurn.length ? hazard(turn, turn + 1) : 0;
+		}
+
+		// Captures in turns from to to-1 among the runs still going at from
+		private double hazard(int from, int to) {
+			long going = tally.runs;
+			for (int turn = 0; turn < from; turn++) {
+				going -= tally.endedByTurn[turn];
+			}
+			long captures = 0;
+			for (int turn = from; turn < to; turn++) {
+				captures += tally.capturesByTurn[turn];
+			}
+			return going == 0 ? 0 : captures / (double) going;
+		}
+
+		public void printTo(PrintStream out) {
+			StringBuilder guard = new StringBuilder();
+			for (Room room : analyzer.patrolRoute) {
+				guard.append(guard.length() == 0 ? "patrol " : " -> ").append(name(room));
+			}
+			out.println("Runs:             " + tally.runs + " (at most " + maxTurns + " turns each)");
+			if (analyzer.hunting) {
+				guard.insert(0, guard.length() == 0 ? "hunting, else random" : "hunting, else ");
+			}
+			out.println("Guard:            " + (guard.length() == 0 ? "random" : guard));
+			out.println("Actions/round:    " + analyzer.movesPerRound);
+			for (Ending ending : Ending.values()) {
+				out.println(String.format(Locale.ROOT, "%-17s %6.2f%%", name(ending) + ":", percent(getCount(ending))));
+			}
+			out.println(String.format(Locale.ROOT, "%-17s %6.2f%%", "unfinished:", percent(getUnfinished())));
+			out.println(String.format(Locale.ROOT, "Mean score:       %.1f", getMeanScore()));
+			out.println(String.format(Locale.ROOT, "Mean turns:       %.1f", getMeanTurns()));
+
+			out.println("Caught by room:");
+			for (int id = 0; id < analyzer.world.getRoomCount(); id++) {
+				Room room = analyzer.world.getRoom(id);
+				if (tally.capturesByRoom[id] > 0) {
+					out.println(String.format(Locale.ROOT, "  %-24s %6.2f%%", name(room), 100 * getCaptureProbability(room)));
+				}
+			}
+
+			// Group the turns so the table has at most TURN_ROWS rows
+			int width = (maxTurns + TURN_ROWS - 1) / TURN_ROWS;
+			out.println("Caught by turn:   (of all runs / of the runs still going)");
+			for (int first = 1; first <= maxTurns; first += width) {
+				int last = Math.min(maxTurns, first + width - 1);
+				long captures = 0;
+				for (int turn = first; turn <= last; turn++) {
+					captures += tally.capturesByTurn[turn];
+				}
+				String turns = first == last ? Integer.toString(first) : first + "-" + last;
+				out.println(String.format(Locale.ROOT, "  %-10s %6.2f%% %6.2f%%", turns, percent(captures), 100 * hazard(first, last + 1)));
+			}
+		}
+
+		private double percent(long count) {
+			return 100.0 * count / tally.runs;
+		}
+
+		private static String name(Ending ending) {
+			return ending.name().toLowerCase(Locale.ROOT);
+		}
+
+		// The room's name without its description
+		private static String name(Room room) {
+			String name = room.shortDescription();
+			int dash = name.indexOf(" - ");
+			return dash < 0 ? name : name.substring(0, dash);
+		}
+	}
+
+	/**
+	 * A player who wanders the building at random: every turn it goes
+	 * through an exit, searches an object or hides in a spot of its room,
+	 * or uses an item, all with the same probability (in a room with none
+	 * of these it checks its inventory). While hiding it
+	 * mostly stays hidden. The lines are prepared once per room, so
+	 * choosing one allocates nothing.
+	 */
+	public static final class Explorer implements Simulation.Player {
+
+		private final String[][] actions;
+
+		public Explorer(World world) {
+			actions = new String[world.getRoomCount()][];
+			for (int id = 0; id < actions.length; id++) {
+				Room room = world.getRoom(id);
+				List<String> lines = new ArrayList<>();
+				for (int d = 0; d < Direction.COUNT; d++) {
+					if (world.getExit(id, Direction.get(d)) >= 0) {
+						lines.add("go " + Direction.get(d).getName());
+					}
+				}
+				for (Searchable searchable : room.getSearchables()) {
+					lines.add("search " + searchable.getName());
+				}
+				for (Hideable hideable : room.getHideables()) {
+					lines.add("hide " + hideable.getName());
+				}
+				for (Role role : new Role[] { Role.DISGUISE, Role.ENERGY_DRINK }) {
+					String item = world.getItemName(role);
+					if (item != null) {
+						lines.add("use " + item);
+					}
+				}
+				if (lines.isEmpty()) {
+					// A room with nothing to do (e.g. without exits): the
+					// player can only wait for the guard
+					lines.add("inventory");
+				}
+				actions[id] = lines.toArray(new String[0]);
+			}
+		}
+
+		@Override
+		public String nextLine(Game game, int turn, Random random) {
+			if (game.isHiding()) {
+				return random.nextInt(4) == 0 ? "2" : "1";
+			}
+			String[] choices = actions[game.getCurrentRoom().getId()];
+			return choices[random.nextInt(choices.length)];
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package ch.bbw.zork;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * CaptureSink - keeps a session's output in memory, e.g. to check what
+ * a game answered in a test or to replay games without a console.
+ */
+public class CaptureSink implements OutputSink {
+
+	private byte[] bytes = new byte[1024];
+	private int count;
+	private int flushes;
+
+	@Override
+	public void write(byte[] source, int offset, int length) {
+		ensureCapacity(length);
+		System.arraycopy(source, offset, bytes, count, length);
+		count += length;
+	}
+
+	@Override
+	public void write(ByteBuffer source) {
+		int length = source.remaining();
+		ensureCapacity(length);
+		source.get(bytes, count, length);
+		count += length;
+	}
+
+	@Override
+	public void flush() {
+		flushes++;
+	}
+
+	/**
+	 * The number of responses completed so far.
+	 */
+	public int getFlushCount() {
+		return flushes;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public byte[] toByteArray() {
+		return Arrays.copyOf(bytes, count);
+	}
+
+	/**
+	 * Forget the captured output (the flush count is kept).
+	 */
+	public void reset() {
+		count = 0;
+	}
+
+	/**
+	 * The captured output as text.
+	 */
+	@Override
+	public String toString() {
+		return new String(bytes, 0, count, StandardCharsets.UTF_8);
+	}
+
+	private void ensureCapacity(int length) {
+		if (count + length > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, count + length));
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package ch.bbw.zork;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * ChannelSink - output for a non-blocking socket channel.
+ *
+ * Text of the current response is collected in a buffer; flush() closes
+ * the response and queues it. Buffers that never change (screens) are
+ * queued as they are, without copying. send() then writes as much of
+ * the queue as the socket takes with one gathering write, and never
+ * blocks: what is left stays queued until the channel is writable
+ * again (see hasPending).
+ */
+public class ChannelSink implements OutputSink {
+
+	private final GatheringByteChannel channel;
+	private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+	// The current response
+	private byte[] response = new byte[1024];
+	private int count;
+	// Reused for the gathering write
+	private ByteBuffer[] batch = new ByteBuffer[8];
+
+	public ChannelSink(GatheringByteChannel channel) {
+		this.channel = channel;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) {
+		if (count + length > response.length) {
+			response = Arrays.copyOf(response, Math.max(response.length * 2, count + length));
+		}
+		System.arraycopy(bytes, offset, response, count, length);
+		count += length;
+	}
+
+	@Override
+	public void write(ByteBuffer bytes) {
+		queueResponse();
+		pending.add(bytes);
+	}
+
+	@Override
+	public void flush() {
+		queueResponse();
+	}
+
+	/**
+	 * Write queued output to the channel without blocking.
+	 *
+	 * @return the number of bytes written
+	 */
+	public long send() throws IOException {
+		long written = 0;
+		while (!pending.isEmpty()) {
+			if (batch.length < pending.size()) {
+				batch = new ByteBuffer[Math.max(batch.length * 2, pending.size())];
+			}
+			int n = 0;
+			for (ByteBuffer buffer : pending) {
+				batch[n++] = buffer;
+			}
+			long count = channel.write(batch, 0, n);
+			Arrays.fill(batch, 0, n, null);
+			written += count;
+			while (!pending.isEmpty() && !pending.peek().hasRemaining()) {
+				pending.poll();
+			}
+			if (count == 0) {
+				break; // the socket buffer is full
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * True while queued output waits for the channel to become writable.
+	 */
+	public boolean hasPending() {
+		return !pending.isEmpty();
+	}
+
+	private void queueResponse() {
+		if (count > 0) {
+			pending.add(ByteBuffer.wrap(Arrays.copyOf(response, count)));
+			count = 0;
+		}
+	}
+}
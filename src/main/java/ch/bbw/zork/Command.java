@@ -1,10 +1,12 @@
 package ch.bbw.zork;
 
+import java.util.List;
+
 /**
  * Class Command - represents a parsed player command.
  *
  * This small helper class stores a command word like "go" and an optional
- * second word like "north". The parser builds one of these for every
+ * second word like "north". The parser fills one of these for every
  * line the player types. The rest of the game only needs to ask this
  * object whether the command was recognized and to retrieve the words.
  *
@@ -14,15 +16,41 @@ package ch.bbw.zork;
 
 public class Command {
 
+	// Id of the command word (see CommandWords), -1 when unknown
+	private int commandId;
 	private String commandWord;
 	private String secondWord;
+	// The commands an abbreviated first word could mean, or null
+	private List<String> candidates;
 
 	public Command(String commandWord) {
 		this(commandWord, null);
 	}
 	public Command(String commandWord, String secondWord) {
+		this(-1, commandWord, secondWord);
+	}
+	Command(int commandId, String commandWord, String secondWord) {
+		set(commandId, commandWord, secondWord);
+	}
+
+	/**
+	 * Reuse this command for the next line (the parser keeps one Command
+	 * per session instead of creating a new one for every line).
+	 */
+	void set(int commandId, String commandWord, String secondWord) {
+		this.commandId = commandId;
 		this.commandWord = commandWord;
 		this.secondWord = secondWord;
+		this.candidates = null;
+	}
+
+	void setCandidates(List<String> candidates) {
+		this.candidates = candidates;
+	}
+
+	public int getCommandId() {
+		// The id of the command word, or -1 if unknown or not set by the parser
+		return commandId;
 	}
 
 	public String getCommandWord() {
@@ -37,6 +65,10 @@ public class Command {
 		// A command is unknown when the parser couldn't match the first word
 		return (commandWord == null);
 	}
+	public List<String> getCandidates() {
+		// The commands an ambiguous first word (e.g. "h") could mean, or null
+		return candidates;
+	}
 	public boolean hasSecondWord() {
 		// True when the command has a meaningful second word
 		return (secondWord != null);
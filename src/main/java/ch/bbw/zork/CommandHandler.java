@@ -0,0 +1,18 @@
+package ch.bbw.zork;
+
+/**
+ * CommandHandler - carries out one command word for a game.
+ *
+ * Handlers are registered with CommandWords under their word; the game
+ * looks them up by the command id the parser found. A handler should
+ * not keep state of its own, as one handler serves every game.
+ */
+public interface CommandHandler {
+
+	/**
+	 * Carry out the command in the given game.
+	 *
+	 * @return true when the game should end (the player quit)
+	 */
+	boolean execute(Game game, Command command);
+}
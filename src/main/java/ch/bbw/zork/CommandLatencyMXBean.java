@@ -0,0 +1,22 @@
+package ch.bbw.zork;
+
+/**
+ * CommandLatencyMXBean - the latency of one command word over JMX (as
+ * ch.bbw.zork:type=CommandLatency,command=go). Times are in microseconds.
+ */
+public interface CommandLatencyMXBean {
+
+	String getCommand();
+
+	long getCount();
+
+	double getMeanMicros();
+
+	double getP50Micros();
+
+	double getP99Micros();
+
+	double getP999Micros();
+
+	double getMaxMicros();
+}
@@ -6,7 +6,6 @@ package ch.bbw.zork;
  */
 
 import java.util.Arrays;
-import java.util.List;
 
 
 /**
@@ -15,12 +14,76 @@ import java.util.List;
  * The parser uses this class to check whether the first word typed by
  * the player is a recognized command. The list is small and fixed for
  * this game, and we expose a helper to print them to the user.
+ * Commands are also known by their id (their index in the list), so
+ * the parser can recognize them without creating new Strings, and the
+ * game finds the CommandHandler of a command by its id. Players may
+ * abbreviate commands ("inv"); resolve() finds them in a NameTrie.
  */
 public class CommandWords {
 
-	// List of recognized commands. If you add a new command to the game,
-	// also add it here so the parser accepts it.
-	private List<String> validCommands = Arrays.asList("go", "quit", "help", "inventory", "hide", "search", "pickup", "map", "use" );
+	// The built-in commands. New commands are added with register().
+	private static final String[] BUILT_IN = { "go", "quit", "help", "inventory", "hide", "search", "pickup", "map", "use" };
+
+	// Recognized commands and their handlers; the index is the command id
+	private String[] validCommands;
+	private CommandHandler[] handlers;
+	private int count;
+	// The command words by name, with their id as value
+	private NameTrie<Integer> names;
+	// The id of "go", which is built in and so never changes
+	private final int goId;
+
+	/**
+	 * The built-in commands, without handlers.
+	 */
+	public CommandWords() {
+		this.validCommands = BUILT_IN.clone();
+		this.handlers = new CommandHandler[validCommands.length];
+		this.count = validCommands.length;
+		this.names = buildNames();
+		this.goId = find("go", 0, 2);
+	}
+
+	/**
+	 * A copy of the given commands, so commands can be added to the copy
+	 * without changing the original.
+	 */
+	public CommandWords(CommandWords original) {
+		this.validCommands = Arrays.copyOf(original.validCommands, original.count);
+		this.handlers = Arrays.copyOf(original.handlers, original.count);
+		this.count = original.count;
+		this.names = buildNames();
+		this.goId = original.goId;
+	}
+
+	private NameTrie<Integer> buildNames() {
+		NameTrie<Integer> trie = new NameTrie<>();
+		for (int id = 0; id < count; id++) {
+			trie.add(validCommands[id], id);
+		}
+		return trie;
+	}
+
+	/**
+	 * Set the handler of a command. A new word becomes a new command, a
+	 * known word gets the new handler.
+	 *
+	 * @return the id of the command
+	 */
+	public int register(String commandWord, CommandHandler handler) {
+		int id = find(commandWord, 0, commandWord.length());
+		if (id < 0) {
+			if (count == validCommands.length) {
+				validCommands = Arrays.copyOf(validCommands, count * 2);
+				handlers = Arrays.copyOf(handlers, count * 2);
+			}
+			id = count++;
+			validCommands[id] = commandWord;
+			names.add(commandWord, id);
+		}
+		handlers[id] = handler;
+		return id;
+	}
 
 	/**
 	 * Check whether a word is a valid command.
@@ -29,17 +92,65 @@ public class CommandWords {
 	 * @return true if this word is one of the known commands
 	 */
 	public boolean isCommand(String commandWord) {
-		// We could use contains(), but stream is expressive and fine here.
-		return validCommands.stream()
-				.filter( c -> c.equals(commandWord) )
-				.count()>0;
+		return commandWord != null && find(commandWord, 0, commandWord.length()) >= 0;
+	}
+
+	/**
+	 * Find the command in characters start to end of a line without
+	 * copying it out first.
+	 *
+	 * @return the command id, or -1 if the word is no command
+	 */
+	public int find(String line, int start, int end) {
+		NameTrie.Match<Integer> match = names.resolve(line, start, end);
+		return isExact(match, start, end) && line.regionMatches(start, match.getName(), 0, end - start) ? match.getValue() : -1;
+	}
+
+	/**
+	 * Whether a match of resolve() is the command the word spells out
+	 * (ignoring case) rather than one it abbreviates.
+	 */
+	public static boolean isExact(NameTrie.Match<Integer> match, int start, int end) {
+		return match.isFound() && match.getName().length() == end - start;
+	}
+
+	/**
+	 * The id of the "go" command.
+	 */
+	public int getGoId() {
+		return goId;
+	}
+
+	/**
+	 * Find the command a player meant in characters start to end of a
+	 * line. Unlike find() the word may be abbreviated and in any case
+	 * ("inv", "Search"); a word that starts several commands ("h") is
+	 * ambiguous. The value of a found match is the command id.
+	 */
+	public NameTrie.Match<Integer> resolve(String line, int start, int end) {
+		return names.resolve(line, start, end);
+	}
+
+	/**
+	 * The command word with the given id. The same String instance is
+	 * returned every time.
+	 */
+	public String getWord(int id) {
+		return validCommands[id];
+	}
+
+	/**
+	 * The handler of the command with the given id, or null if it has none.
+	 */
+	public CommandHandler getHandler(int id) {
+		return handlers[id];
 	}
 
 	/**
 	 * Return a space-separated list of all known commands for help output.
 	 */
 	public String showAll() {
-		return String.join(" ", validCommands);
+		return String.join(" ", Arrays.asList(validCommands).subList(0, count));
 	}
 
 }
@@ -0,0 +1,68 @@
+package ch.bbw.zork;
+
+/**
+ * Direction - the four ways a room can be left.
+ *
+ * The ordinal of a direction indexes the exit arrays of Room and World,
+ * so following an exit needs no hashing.
+ */
+public enum Direction {
+
+	NORTH("north"), EAST("east"), SOUTH("south"), WEST("west");
+
+	// values() copies its array on every call, so keep one copy
+	private static final Direction[] ALL = values();
+	public static final int COUNT = ALL.length;
+
+	// All direction names, so players can type "n" for north
+	private static final NameTrie<Direction> NAMES = new NameTrie<>();
+	static {
+		for (Direction direction : ALL) {
+			NAMES.add(direction.name, direction);
+		}
+	}
+
+	private final String name;
+
+	Direction(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * The word players type for this direction (e.g. "north").
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public static Direction get(int ordinal) {
+		return ALL[ordinal];
+	}
+
+	/**
+	 * Find the direction for a typed word, or null if it is none.
+	 */
+	public static Direction fromName(String name) {
+		for (Direction direction : ALL) {
+			if (direction.name.equals(name)) {
+				return direction;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Find the direction for a typed word, which may be abbreviated and
+	 * in any case ("n", "South").
+	 */
+	public static NameTrie.Match<Direction> resolve(String word) {
+		return NAMES.resolve(word);
+	}
+
+	/**
+	 * Same as resolve(String), for characters start to end of a line.
+	 */
+	public static NameTrie.Match<Direction> resolve(String line, int start, int end) {
+		return NAMES.resolve(line, start, end);
+	}
+}
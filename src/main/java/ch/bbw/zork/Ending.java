@@ -0,0 +1,33 @@
+package ch.bbw.zork;
+
+/**
+ * Ending - how a game ended.
+ */
+public enum Ending {
+
+	/** Escaped through the main gate with the gate key. */
+	GATE(true),
+	/** Shot the padlock of the roof hatch and climbed down. */
+	ROOF(true),
+	/** Found and used the hidden teleport machine. */
+	TELEPORT(true),
+	/** Shot the guard while in disguise. */
+	COMBAT(true),
+	/** Spotted by the guard. */
+	CAUGHT(false),
+	/** The player quit. */
+	QUIT(false);
+
+	private final boolean escape;
+
+	Ending(boolean escape) {
+		this.escape = escape;
+	}
+
+	/**
+	 * True for the endings in which the player got out.
+	 */
+	public boolean isEscape() {
+		return escape;
+	}
+}
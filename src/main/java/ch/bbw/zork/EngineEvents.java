@@ -0,0 +1,143 @@
+package ch.bbw.zork;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * EngineEvents - JDK Flight Recorder events of the game engine: parsing
+ * and dispatching a command, rendering a room description, a guard move
+ * and the resolution of a guard encounter. Every event carries the
+ * session id, the command word being handled and the room, so a slow
+ * turn in a recording can be matched with GC pauses or lock contention
+ * at the same time.
+ *
+ *   java -XX:StartFlightRecording=filename=zork.jfr,settings=profile ...
+ *   jfr print --events ch.bbw.zork.CommandDispatch zork.jfr
+ *
+ * The events are off unless a recording enables them. Callers check
+ * the *Enabled method first and only then create an event, so a turn
+ * without a recording builds nothing. Without jdk.jfr (Java 8 before
+ * 8u262) no event is ever enabled.
+ */
+final class EngineEvents {
+
+	static final boolean AVAILABLE = isAvailable();
+
+	private EngineEvents() {
+	}
+
+	static boolean parseEnabled() {
+		return AVAILABLE && Types.PARSE.isEnabled();
+	}
+
+	static boolean dispatchEnabled() {
+		return AVAILABLE && Types.DISPATCH.isEnabled();
+	}
+
+	static boolean renderEnabled() {
+		return AVAILABLE && Types.RENDER.isEnabled();
+	}
+
+	static boolean guardMoveEnabled() {
+		return AVAILABLE && Types.GUARD_MOVE.isEnabled();
+	}
+
+	static boolean encounterEnabled() {
+		return AVAILABLE && Types.ENCOUNTER.isEnabled();
+	}
+
+	private static boolean isAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	// Only loaded once jdk.jfr is known to be there
+	private static final class Types {
+		static final EventType PARSE = EventType.getEventType(CommandParse.class);
+		static final EventType DISPATCH = EventType.getEventType(CommandDispatch.class);
+		static final EventType RENDER = EventType.getEventType(RoomRender.class);
+		static final EventType GUARD_MOVE = EventType.getEventType(GuardMove.class);
+		static final EventType ENCOUNTER = EventType.getEventType(Encounter.class);
+	}
+
+	/**
+	 * The fields all engine events have.
+	 */
+	abstract static class EngineEvent extends Event {
+
+		@Label("Session")
+		@Description("Id of the session the game belongs to (0 when it has none)")
+		int sessionId;
+
+		@Label("Command")
+		@Description("Word of the command being handled, if any")
+		String command;
+
+		@Label("Room")
+		String room;
+
+		void set(int sessionId, String command, Room room) {
+			this.sessionId = sessionId;
+			this.command = command;
+			this.room = room == null ? null : room.shortDescription();
+		}
+	}
+
+	@Name("ch.bbw.zork.CommandParse")
+	@Label("Command Parse")
+	@Category({ "Zork", "Engine" })
+	@Description("An input line parsed into a command")
+	static final class CommandParse extends EngineEvent {
+	}
+
+	@Name("ch.bbw.zork.CommandDispatch")
+	@Label("Command Dispatch")
+	@Category({ "Zork", "Engine" })
+	@Description("A command run by its handler, including the guard's reaction")
+	static final class CommandDispatch extends EngineEvent {
+	}
+
+	@Name("ch.bbw.zork.RoomRender")
+	@Label("Room Description Render")
+	@Category({ "Zork", "Engine" })
+	@Description("The description of a room looked up (rendered if not cached) and printed")
+	static final class RoomRender extends EngineEvent {
+	}
+
+	@Name("ch.bbw.zork.GuardMove")
+	@Label("Guard Move")
+	@Category({ "Zork", "Engine" })
+	@Description("The guard moved to the next room; Room is where he went")
+	static final class GuardMove extends EngineEvent {
+
+		@Label("From Room")
+		String from;
+
+		@Label("Patrol")
+		@Description("True when the guard follows a patrol route, false when he moves randomly")
+		boolean patrol;
+
+		@Label("Hunting")
+		@Description("True when the guard walked towards the player's noise")
+		boolean hunting;
+	}
+
+	@Name("ch.bbw.zork.Encounter")
+	@Label("Guard Encounter")
+	@Category({ "Zork", "Engine" })
+	@Description("The guard entered the player's room and the game decided what happens")
+	static final class Encounter extends EngineEvent {
+
+		@Label("Outcome")
+		@Description("shot, disguise, hidden or caught")
+		String outcome;
+	}
+}
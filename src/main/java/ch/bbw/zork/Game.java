@@ -1,15 +1,27 @@
 package ch.bbw.zork;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
 
 /**
  * Game - the main game logic for Zork Escape Game.
  *
- * This class builds the world (rooms, items, searchable objects),
- * handles the player's input loop, tracks inventory, score and the
+ * The world (rooms, items, searchable objects) is shared by all games
+ * (see World); this class keeps what one player changed in it in a
+ * WorldState, handles the player's input loop, tracks inventory, score and the
  * guard enemy. Methods are small and descriptive so the main play
  * loop simply reads a Command and delegates to the appropriate
  * handler.
@@ -21,372 +33,841 @@ public class Game {
 
 	// Input parser for reading player commands from the console
 	private Parser parser;
+	// The commands of this game: the shared built-in ones until a game
+	// registers its own (see registerCommand)
+	private static final CommandWords BUILT_IN_COMMANDS = builtInCommands();
+	private CommandWords commands = BUILT_IN_COMMANDS;
+	// Where all game text is printed (the player's console)
+	private PrintStream out;
+	// The sink behind out if it is a SinkPrintStream, else null
+	private OutputSink sink;
 	// The room the player is currently in
 	private Room currentRoom;
-	// Rooms used in the game world. Variable names follow the
-	// original German identifiers but the room descriptions are in English.
-	private Room empfangshalle, flurEG, flurOG, bibliothek, bueroChef, tresorRaum;
-	private Room sicherheitsraum, ueberwachungsraum, cafeteria, kueche, lagerraum;
-	private Room keller, heizungskeller, versteck, dachboden, aussenbereich;
-	private ArrayList<Item> inventory;
+	// The shared world and what this game changed in it
+	private World world;
+	private WorldState state;
+	// Rooms and objects with special rules, by their role in the world
+	// (see Role); null when the world has no such puzzle
+	private Room vault, hideout;
+	private Searchable teleportMachine, vaultHandle, roofHatch, atticDoor;
+	// The exits of the vault that lead to a vent and are sealed from its
+	// side, by direction
+	private boolean[] sealedVents;
+	// Names of the items the player can use
+	private String disguise, energyDrink;
+	private static final int SNAPSHOT_VERSION = 4;
+	// The code of the safe, chosen randomly for every game
+	private String vaultCode;
+	private Inventory inventory;
+	// Masks of the items the game logic checks for (see Inventory)
+	private long[] crowbar, bullets, pistolAndBullets;
 	private int movesLeft;
 	private static final int MAX_MOVES_PER_ROUND = 2;
-	private boolean tresorDoorOpen = false; // Track if the vault door to boss office is open
+	private int movesPerRound = MAX_MOVES_PER_ROUND; // Only changed by balance tests
 	private int hiddenInVersteckCount = 0; // Track how many times player hid in versteck
-	private boolean teleportMachineRevealed = false; // Track if teleport machine is revealed
 	private boolean isHiding = false; // Track if player is currently hiding
 	private String currentHidingSpot = ""; // Track where player is hiding
 	private Guard guard; // The guard enemy
+	// The player's noise a hunting guard follows; null unless hunting
+	private NoiseField noise;
+	// How many rooms far the player's noises carry
+	private static final int SEARCH_NOISE = 2;
+	private static final int WRONG_CODE_NOISE = 4;
+	private static final int SHOT_NOISE = NoiseField.RANGE;
+	// Heap bytes of a game in the built-in world without an input stream,
+	// measured on a 64-bit JVM (see estimateFootprint), and what reading
+	// from an input stream adds (the reader's char and byte buffers)
+	private static final long BASE_FOOTPRINT = 2048;
+	private static final long INPUT_FOOTPRINT = 25 * 1024;
 	
 	// Score system
 	private int score = 0;
 	private boolean hasDisguise = false; // One-time use to avoid guard
 	private boolean hasEnergyDrink = false; // One-time use for extra action
 	private boolean guardShot = false; // Track if guard has been shot
+	private boolean gameOver = false; // Set once the player escaped, got caught or quit
+	private Ending ending; // How the game ended, null while it runs
 
+	// What the next input line answers: a command or a question the
+	// game asked in the middle of an action
+	private enum Awaiting { COMMAND, HIDING_CHOICE, SAFE_CODE }
+	private Awaiting awaiting = Awaiting.COMMAND;
+	private Searchable pendingSafe; // The safe waiting for its code
+
+	// Seed the world was built from and the generator for all random
+	// decisions (vault code, guard moves), so a game can be replayed
+	private long seed;
+	private GameRandom random;
+
+	// Optional journal that records this session for crash recovery
+	private SessionJournal journal;
+	// The key the journal knows this session by (see SessionJournal.key)
+	private long journalKey;
+	private int sessionId;
+	private int linesSinceSnapshot;
+
+	// Optional metrics of the server this game runs in
+	private GameMetrics metrics;
+	private GameMetrics.SessionStats sessionStats;
+	// Word of the command being handled, for the engine events
+	private String activeCommand;
+
+	/**
+	 * Create a game that plays on the process console (System.in/System.out).
+	 */
 	public Game() {
+		this(System.in, System.out);
+	}
+
+	/**
+	 * Create a game without an input stream. The caller calls start() and
+	 * then hands every line the player types to handleLine().
+	 */
+	public Game(PrintStream out) {
+		this(null, out);
+	}
+
+	/**
+	 * Create a game without an input stream that writes its responses to
+	 * the given sink, one flush per response.
+	 */
+	public Game(OutputSink sink) {
+		this(null, SinkPrintStream.of(sink));
+	}
+
+	/**
+	 * Same as Game(PrintStream), but the world is built from the given
+	 * seed: the same seed and the same input always give the same game.
+	 */
+	public Game(PrintStream out, long seed) {
+		this(null, out, seed);
+	}
+
+	/**
+	 * Create a game that reads commands from the given input and prints
+	 * to the given output. Every Game is an independent world, so many of
+	 * them can run side by side in one process.
+	 */
+	public Game(InputStream in, PrintStream out) {
+		this(in, out, new Random().nextLong());
+	}
+
+	public Game(InputStream in, PrintStream out, long seed) {
+		this(in, out, seed, World.standard());
+	}
+
+	/**
+	 * Create a game in the given world. The world is shared and never
+	 * changed; everything this game changes is kept in its own WorldState.
+	 */
+	public Game(InputStream in, PrintStream out, long seed, World world) {
 		// Build parser and initial state
 
-		parser = new Parser(System.in);
-		inventory = new ArrayList<>();
-		movesLeft = MAX_MOVES_PER_ROUND;
-
-		// create rooms
-		empfangshalle = new Room("Reception Hall - large entrance hall with reception desk");
-		flurEG = new Room("Ground Floor Corridor - main corridor on the ground floor");
-		flurOG = new Room("Upper Floor Corridor - corridor on the upper floor");
-		bibliothek = new Room("Library - large library with many hiding places");
-		bueroChef = new Room("Boss Office - boss's office with valuable items");
-		tresorRaum = new Room("Vault Room - heavily secured room with main vault (requires key)");
-		sicherheitsraum = new Room("Security Room - room with security systems");
-		ueberwachungsraum = new Room("Surveillance Room - room with surveillance monitors");
-		cafeteria = new Room("Cafeteria - employee cafeteria");
-		kueche = new Room("Kitchen - kitchen with utensils");
-		lagerraum = new Room("Storage Room - storage room full of boxes and cabinets");
-		keller = new Room("Cellar - dark cellar area");
-		heizungskeller = new Room("Boiler Room - boiler room with many pipes");
-		versteck = new Room("Hideout - secret hideout in the cellar");
-		dachboden = new Room("Attic - dusty attic (requires key)");
-		aussenbereich = new Room("Outside Area - area outside the building");
-
-		// initialise room exits (north, east, south, west)
-		// Ebene Dachboden
-		dachboden.setExits(null, null, bibliothek, null);
-		
-		// Ebene OG
-		bibliothek.setExits(dachboden, flurOG, keller, null);
-		flurOG.setExits(null, bueroChef, flurEG, bibliothek);
-		bueroChef.setExits(null, null, null, flurOG);
-		tresorRaum.setExits(null, null, sicherheitsraum, null);
-		
-		// Ebene Empfangshalle/Sicherheitsraum
-		empfangshalle.setExits(null, null, cafeteria, flurEG);
-		sicherheitsraum.setExits(tresorRaum, null, ueberwachungsraum, null);
-		
-		// Ebene EG
-		keller.setExits(bibliothek, flurEG, heizungskeller, null);
-		flurEG.setExits(flurOG, empfangshalle, kueche, keller);
-		cafeteria.setExits(empfangshalle, ueberwachungsraum, aussenbereich, kueche);
-		ueberwachungsraum.setExits(sicherheitsraum, null, null, cafeteria);
-		
-		// Ebene Küche/Heizungskeller
-		heizungskeller.setExits(keller, kueche, versteck, null);
-		kueche.setExits(flurEG, cafeteria, lagerraum, heizungskeller);
-		
-		// Ebene Keller unten
-		versteck.setExits(heizungskeller, lagerraum, null, null);
-		lagerraum.setExits(kueche, aussenbereich, null, versteck);
-		aussenbereich.setExits(null, null, null, lagerraum);
+		setOutput(out);
+		this.seed = seed;
+		this.random = new GameRandom(seed);
+		this.world = world;
+		this.state = new WorldState(world);
+		parser = new Parser(in, out, commands);
+		inventory = new Inventory(world);
+		crowbar = world.getItemMask(Role.CROWBAR);
+		bullets = world.getItemMask(Role.BULLETS);
+		pistolAndBullets = world.getItemMask(Role.PISTOL, Role.BULLETS);
+		disguise = world.getItemName(Role.DISGUISE);
+		energyDrink = world.getItemName(Role.ENERGY_DRINK);
+		movesLeft = movesPerRound;
+
+		// Generate a random 4-digit vault code at game start
+		vaultCode = Integer.toString(random.nextInt(9000) + 1000); // 1000-9999
+
+		// What the puzzles are built around
+		vault = world.getRoom(Role.VAULT);
+		hideout = world.getRoom(Role.HIDEOUT);
+		teleportMachine = world.getSearchable(Role.TELEPORT);
+		vaultHandle = world.getSearchable(Role.VAULT_HANDLE);
+		roofHatch = world.getSearchable(Role.ROOF_HATCH);
+		atticDoor = world.getSearchable(Role.ATTIC_DOOR);
+		sealedVents = new boolean[Direction.COUNT];
+		for (int d = 0; vault != null && d < Direction.COUNT; d++) {
+			int next = world.getExit(vault.getId(), Direction.get(d));
+			sealedVents[d] = next >= 0 && hasVent(world.getRoom(next));
+		}
+
+		currentRoom = world.getStartRoom();
 
-		currentRoom = empfangshalle; // start game in Empfangshalle
-		
-		// Setup special door: bueroChef -> tresorRaum with keycard
-		Searchable tresorDoor = new Searchable("door", "A secure door to the vault - requires security access", null);
-		tresorDoor.setDoor(true);
-		tresorDoor.setRequiredItem("keycard");
-		bueroChef.addSearchable(tresorDoor);
-		
-		// Setup inner door handle in tresorRaum to open door from inside
-		Searchable innerHandle = new Searchable("handle", "Door handle on the inside of the vault door", null);
-		innerHandle.setDoor(true);
-		innerHandle.setRequiredItem("none"); // No item required from inside
-		tresorRaum.addSearchable(innerHandle);
-		
-	// Setup password-protected safe in tresorRaum
-	// Generate a random 4-digit vault code at game start
-	Random random = new Random();
-	String vaultCode = Integer.toString(random.nextInt(9000) + 1000); // 1000-9999
-	Searchable safe = new Searchable("safe", "Large vault safe - requires 4-digit code", new Item("gatekey", "Heavy Gate Key - opens the exit gate"));
-	safe.setPasswordProtected(true);
-	safe.setPassword(vaultCode);
-		
-		// Setup gate in aussenbereich
-		Searchable gate = new Searchable("gate", "The exit gate - locked with a heavy padlock", null);
-		gate.setGate(true);
-		gate.setRequiredItem("gatekey");
-		
-		// Setup locked attic door in bibliothek
-		Searchable atticDoor = new Searchable("atticdoor", "A heavy wooden door leading to the attic - sealed shut with old boards", null);
-		atticDoor.setDoor(true);
-		atticDoor.setRequiredItem("crowbar");
-		
-		// Setup roof hatch in dachboden
-		Searchable roofHatch = new Searchable("hatch", "A locked roof hatch leading outside - heavy padlock", null);
-		roofHatch.setGate(true); // Reuse gate logic for escape
-		roofHatch.setRequiredItem("pistol");
-		
-		// add hideables to all rooms
-		empfangshalle.addHideable(new Hideable("desk", "Large reception desk with space underneath"));
-		flurEG.addHideable(new Hideable("closet", "Large storage closet"));
-		flurOG.addHideable(new Hideable("curtains", "Floor-to-ceiling heavy curtains"));
-		bibliothek.addHideable(new Hideable("bookshelf", "Tall bookshelf with space behind it"));
-		bueroChef.addHideable(new Hideable("wardrobe", "Large wooden wardrobe"));
-		tresorRaum.addHideable(new Hideable("vault", "Space behind the large vault door"));
-		sicherheitsraum.addHideable(new Hideable("cabinet", "Large equipment cabinet"));
-		ueberwachungsraum.addHideable(new Hideable("desk", "Control desk with space underneath"));
-		cafeteria.addHideable(new Hideable("counter", "Long counter with space behind it"));
-		kueche.addHideable(new Hideable("pantry", "Walk-in storage pantry"));
-		lagerraum.addHideable(new Hideable("boxes", "Large stack of boxes"));
-		keller.addHideable(new Hideable("corner", "Dark shadowy corner"));
-		heizungskeller.addHideable(new Hideable("pipes", "Behind the large heating pipes"));
-		versteck.addHideable(new Hideable("alcove", "Hidden wall alcove"));
-		dachboden.addHideable(new Hideable("trunk", "Large old trunk - big enough to fit inside"));
-		aussenbereich.addHideable(new Hideable("bushes", "Dense bushes"));
-		
-		// add searchables to rooms (some with items)
-		empfangshalle.addSearchable(new Searchable("drawer", "Reception desk drawer", new Item("bullets", "A box of pistol ammunition")));
-		flurEG.addSearchable(new Searchable("shelf", "Dusty shelf", new Item("disguise", "Security Guard Uniform - one-time use to avoid detection! (+50 points)")));
-		flurOG.addSearchable(new Searchable("cabinet", "Wall cabinet", null));
-		bibliothek.addSearchable(new Searchable("books", "Old books on shelf", new Item("keycard", "Security Keycard - grants access to restricted areas")));
-		bibliothek.addSearchable(atticDoor); // Add locked attic door
-		bueroChef.addSearchable(new Searchable("drawer", "Boss's desk drawer", null));
-		tresorRaum.addSearchable(safe);
-		sicherheitsraum.addSearchable(new Searchable("locker", "Security locker", new Item("pistol", "A small pistol - needs ammunition")));
-		sicherheitsraum.addSearchable(new Searchable("vent", "Air vent in the wall - looks sealed", null, true));
-		ueberwachungsraum.addSearchable(new Searchable("desk", "Control desk", new Item("energydrink", "Energy Drink - one-time use for +1 extra action! (+30 points)")));
-		cafeteria.addSearchable(new Searchable("cabinet", "Kitchen cabinet", null));
-		kueche.addSearchable(new Searchable("drawer", "Kitchen drawer", new Item("crowbar", "A heavy crowbar - useful for breaking things")));
-		lagerraum.addSearchable(new Searchable("crate", "Wooden crate", null));
-		keller.addSearchable(new Searchable("shelves", "Metal shelves", null));
-	heizungskeller.addSearchable(new Searchable("toolbox", "Old toolbox with a piece of paper inside", new Item("code", "Paper with code - '" + vaultCode + "'")));
-		versteck.addSearchable(new Searchable("chest", "Hidden chest", null));
-		dachboden.addSearchable(new Searchable("boxes", "Dusty boxes", null));
-		dachboden.addSearchable(roofHatch); // Add roof escape route
-		aussenbereich.addSearchable(new Searchable("bin", "Trash bin", null));
-		aussenbereich.addSearchable(gate);
-		
-		// add notes to rooms
-		empfangshalle.addNote(new Note("note", "A note on the reception desk - 'Security clearance badges are kept in the boss's office'"));
-		bueroChef.addNote(new Note("note", "A note on the desk - 'He enjoys reading during breaks'"));
-		sicherheitsraum.addNote(new Note("note", "A note pinned to the wall - 'Kitchen inventory check overdue'"));
-		tresorRaum.addNote(new Note("note", "A sticky note on the vault - 'Remember: The code is hidden in the boiler room'"));
-		dachboden.addNote(new Note("note", "A dusty note - 'Emergency exit: Roof hatch locked with heavy padlock. Force may be necessary.'"));
-		
 		// Initialize the guard - starts in storage room, moves randomly
-		guard = new Guard("Security Guard", lagerraum);
-		guard.setForbiddenRoom(tresorRaum); // Guard cannot enter vault room
-		guard.setForbiddenRoom(dachboden); // Guard cannot access attic
+		guard = new Guard("Security Guard", world.getGuardStartRoom(), random, state);
+		for (Room room : world.getGuardForbiddenRooms()) {
+			guard.setForbiddenRoom(room);
+		}
 	}
 
 
 	/**
 	 * Start the main game loop: print welcome text, then repeatedly read
-	 * a command and process it until the player quits or the game ends.
+	 * a line and process it until the player quits or the game ends.
 	 */
 	public void play() {
-		printWelcome();
+		start();
+		readLines();
+	}
 
-		// Enter the main command loop.  Here we repeatedly read commands and
+	/**
+	 * Like play(), for a game that was restored (see restoreSnapshot):
+	 * read commands from the given input, starting where the player left
+	 * off instead of with the welcome screen.
+	 */
+	public void resumePlay(InputStream in) {
+		parser.setInput(in);
+		resume();
+		readLines();
+	}
+
+	private void readLines() {
+		// Enter the main command loop.  Here we repeatedly read lines and
 		// execute them until the game is over.
 		boolean finished = false;
 		while (!finished) {
-			Command command = parser.getCommand();
-			finished = processCommand(command);
+			String line;
+			try {
+				line = parser.readLine();
+			} catch (IOException exc) {
+				out.println("There was an error during reading: " + exc.getMessage());
+				line = null;
+			}
+			if (line == null) {
+				detach(); // input closed - the player left
+				break;
+			}
+			finished = handleLine(line);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Print the welcome screen and the first prompt. Used instead of
+	 * play() when the caller pushes input lines itself (e.g. a network
+	 * server feeding handleLine()).
+	 */
+	public void start() {
+		printWelcome();
+		out.print("> ");
+		out.flush();
+	}
+
+	/**
+	 * Like start(), for a game that was restored: print where the player
+	 * is and the prompt (or the question the game is waiting for) again.
+	 */
+	public void resume() {
+		out.println("Welcome back.");
+		printRoomDescription();
+		out.println();
+		out.println("Actions remaining: " + movesLeft);
+		out.println();
+		if (awaiting == Awaiting.HIDING_CHOICE) {
+			out.print("Enter choice (1 or 2): ");
+		} else if (awaiting == Awaiting.SAFE_CODE) {
+			out.println("The safe has a digital keypad. Enter 4-digit code:");
+			out.print("> ");
+		} else {
+			out.print("> ");
+		}
+		out.flush();
+	}
+
+	/**
+	 * Handle one line typed by the player. The line is either a command
+	 * or the answer to a question the game asked (hiding choice or safe
+	 * code). Afterwards the next prompt is printed.
+	 *
+	 * @return true when the game is over and no more input is expected
+	 */
+	public boolean handleLine(String line) {
+		if (gameOver) {
+			return true;
+		}
+		if (journal != null) {
+			journal.recordLine(journalKey, line);
+		}
+		activeCommand = null;
+		boolean finished;
+		try {
+			if (awaiting == Awaiting.HIDING_CHOICE) {
+				handleHidingChoice(line);
+			} else if (awaiting == Awaiting.SAFE_CODE) {
+				enterSafeCode(line);
+			} else if (processCommand(parse(line))) {
+				out.println("Thank you for playing.  Good bye.");
+				gameOver = true;
+				ending = Ending.QUIT;
+				if (metrics != null) {
+					metrics.recordEnding(ending);
+				}
+			}
+			finished = gameOver;
+		} catch (GameOver e) {
+			finished = true; // the ending was already printed
 		}
-		System.out.println("Thank you for playing.  Good bye.");
+		if (!finished && awaiting == Awaiting.COMMAND) {
+			out.print("> ");
+		}
+		out.flush();
+		if (journal != null) {
+			if (finished) {
+				journal.recordEnd(journalKey);
+			} else if (++linesSinceSnapshot >= journal.getSnapshotInterval()) {
+				journal.recordSnapshot(journalKey, this);
+				linesSinceSnapshot = 0;
+			}
+		}
+		return finished;
+	}
+
+	/**
+	 * Record this session in the given journal from now on. A snapshot
+	 * is written right away, so the journal can rebuild the game even if
+	 * it was restored or had already been played for a while.
+	 */
+	public void setJournal(SessionJournal journal, int sessionId) {
+		this.journal = journal;
+		this.journalKey = journal.key(sessionId);
+		this.sessionId = sessionId;
+		this.linesSinceSnapshot = 0;
+		journal.recordSnapshot(journalKey, this);
+	}
+
+	/**
+	 * Like setJournal, for a game recovered from the journal (see
+	 * SessionJournal.recover) under the given key: from now on it is
+	 * recorded as the given session of this run, and the old key ends.
+	 */
+	public void resumeJournal(SessionJournal journal, int sessionId, long recoveredKey) {
+		this.journal = journal;
+		this.journalKey = journal.key(sessionId);
+		this.sessionId = sessionId;
+		this.linesSinceSnapshot = 0;
+		journal.recordResume(journalKey, recoveredKey, this);
+	}
+
+	/**
+	 * Tell the journal that the player left before the game was over, so
+	 * the game can be taken up again with its session token for a while
+	 * (see SessionJournal.recordDetach). Does nothing without a journal
+	 * or when the game is over.
+	 */
+	public void detach() {
+		if (journal != null && !gameOver) {
+			journal.recordDetach(journalKey, this);
+		}
+	}
+
+	/**
+	 * Record this game's commands and events in the given metrics from
+	 * now on, counting its commands for the given session.
+	 */
+	public void setMetrics(GameMetrics metrics, int sessionId) {
+		this.metrics = metrics;
+		this.sessionStats = metrics.openSession(sessionId);
+		this.sessionId = sessionId;
+	}
+
+	/**
+	 * The id of the session this game is played in, shown in its
+	 * engine events (see EngineEvents).
+	 */
+	public void setSessionId(int sessionId) {
+		this.sessionId = sessionId;
+	}
+
+	/**
+	 * Print from now on to the given output (e.g. after the game was
+	 * restored without a player attached).
+	 */
+	public void setOutput(PrintStream out) {
+		this.out = out;
+		this.sink = out instanceof SinkPrintStream ? ((SinkPrintStream) out).getSink() : null;
+	}
+
+	/**
+	 * Where this game prints to (e.g. for registered commands).
+	 */
+	public PrintStream getOutput() {
+		return out;
 	}
 
+	/**
+	 * True once the player escaped, got caught or quit.
+	 */
+	public boolean isGameOver() {
+		return gameOver;
+	}
+
+	/**
+	 * How the game ended, or null while it is running.
+	 */
+	public Ending getEnding() {
+		return ending;
+	}
+
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * The room the player is in.
+	 */
+	public Room getCurrentRoom() {
+		return currentRoom;
+	}
+
+	/**
+	 * True while the player hides. The game then expects the answer to
+	 * "stay hidden or exit" (1 or 2) instead of a command.
+	 */
+	public boolean isHiding() {
+		return isHiding;
+	}
+
+	/**
+	 * The guard, e.g. to give him a patrol route before the game starts.
+	 */
+	public Guard getGuard() {
+		return guard;
+	}
+
+	/**
+	 * Change the number of actions per round before the first command
+	 * (for balance tests). It is not kept in snapshots, and the help
+	 * still shows the default.
+	 */
+	public void setMovesPerRound(int movesPerRound) {
+		this.movesPerRound = movesPerRound;
+		this.movesLeft = movesPerRound;
+	}
+
+	/**
+	 * About how many heap bytes a new game in the given world takes, not
+	 * counting the shared World. Servers use it to turn a memory budget
+	 * into a number of sessions before they create a game.
+	 *
+	 * @param withInput true if the game reads from an input stream
+	 */
+	public static long estimateFootprint(World world, boolean withInput) {
+		// Per-game bits: searched objects, taken notes, revealed objects,
+		// open locks and the inventory
+		long bits = 3L * world.getSearchableCount() + world.getNoteCount() + world.getItemCount()
+				+ world.getItemTypeCount();
+		return BASE_FOOTPRINT + bits / 8 + (withInput ? INPUT_FOOTPRINT : 0);
+	}
+
+	/**
+	 * About how many heap bytes this game takes (see estimateFootprint),
+	 * including a hunting guard's noise field.
+	 */
+	public long getFootprint() {
+		long bytes = estimateFootprint(world, parser.hasInput());
+		if (noise != null) {
+			bytes += noise.getFootprint();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Let the guard hunt the player by the noise they make (searching,
+	 * wrong safe codes, the pistol) instead of only patrolling or moving
+	 * randomly, or stop him hunting. Like the actions per round it is
+	 * not kept in snapshots.
+	 */
+	public void setHunting(boolean hunting) {
+		noise = hunting ? new NoiseField(world) : null;
+		guard.setNoiseField(noise);
+	}
+
+	/**
+	 * Make a noise in the player's room that carries the given number of
+	 * rooms (only a hunting guard listens).
+	 */
+	private void makeNoise(int loudness) {
+		if (noise != null) {
+			noise.makeNoise(loudness);
+		}
+	}
+
+	/**
+	 * Move the guard, after letting the noise come from where the
+	 * player is now.
+	 */
+	private void moveGuardOnce() {
+		if (noise != null) {
+			noise.moveSource(currentRoom);
+		}
+		guard.move(sessionId, activeCommand);
+	}
+
+	/**
+	 * End the game after an escape or a capture. Instead of exiting the
+	 * process we unwind back to the play loop, so only this session ends.
+	 */
+	private void endGame(Ending ending) {
+		this.ending = ending;
+		gameOver = true;
+		if (metrics != null) {
+			metrics.recordEnding(ending);
+		}
+		out.flush();
+		throw new GameOver();
+	}
+
+	/**
+	 * Thrown by endGame to leave the current command immediately, the
+	 * same way System.exit used to stop the game mid-command.
+	 */
+	private static class GameOver extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		GameOver() {
+			super(null, null, false, false);
+		}
+	}
+
+	// The welcome screen up to the first room description (see Screen)
+	private static final Screen WELCOME = new Screen(
+			"",
+			"╔════════════════════════════════════════╗",
+			"║     WELCOME TO ZORK ESCAPE GAME        ║",
+			"╚════════════════════════════════════════╝",
+			"",
+			"You wake up locked inside a mysterious building.",
+			"Your goal: ESCAPE before the guard catches you!",
+			"",
+			"┌─ STORY ────────────────────────────────┐",
+			"│ A Security Guard patrols the building. │",
+			"│ If he finds you: GAME OVER!            │",
+			"│ Hide to avoid detection.               │",
+			"└────────────────────────────────────────┘",
+			"",
+			"┌─ QUICK START ──────────────────────────┐",
+			"│ - Find notes - they contain clues!     │",
+			"│ - Search for items                     │",
+			"│ - Hide when the Guard is near          │",
+			"│ - Unlock the exit gate to escape       │",
+			"│ - Earn points for your actions!        │",
+			"│   Check 'inventory' to see your score  │",
+			"└────────────────────────────────────────┘",
+			"",
+			"BASIC COMMANDS:",
+			"  go <direction>  - Move around (north/south/east/west)",
+			"  search <object> - Search for items",
+			"  hide <object>   - Hide from the guard",
+			"  pickup <note>   - Read notes",
+			"  inventory       - Check items & score",
+			"  map             - Show building map",
+			"  help            - Full command list",
+			"",
+			"Type 'help' for detailed instructions.",
+			"────────────────────────────────────────",
+			"");
+
 	/**
 	 * Print a friendly welcome screen with quick instructions and the
 	 * initial room description so the player can get started.
 	 */
 	private void printWelcome() {
-		System.out.println();
-		System.out.println("╔════════════════════════════════════════╗");
-		System.out.println("║     WELCOME TO ZORK ESCAPE GAME        ║");
-		System.out.println("╚════════════════════════════════════════╝");
-		System.out.println();
-		System.out.println("You wake up locked inside a mysterious building.");
-		System.out.println("Your goal: ESCAPE before the guard catches you!");
-		System.out.println();
-		System.out.println("┌─ STORY ────────────────────────────────┐");
-		System.out.println("│ A Security Guard patrols the building. │");
-		System.out.println("│ If he finds you: GAME OVER!            │");
-		System.out.println("│ Hide to avoid detection.               │");
-		System.out.println("└────────────────────────────────────────┘");
-		System.out.println();
-		System.out.println("┌─ QUICK START ──────────────────────────┐");
-		System.out.println("│ - Find notes - they contain clues!     │");
-		System.out.println("│ - Search for items                     │");
-		System.out.println("│ - Hide when the Guard is near          │");
-		System.out.println("│ - Unlock the exit gate to escape       │");
-		System.out.println("│ - Earn points for your actions!        │");
-		System.out.println("│   Check 'inventory' to see your score  │");
-		System.out.println("└────────────────────────────────────────┘");
-		System.out.println();
-		System.out.println("BASIC COMMANDS:");
-		System.out.println("  go <direction>  - Move around (north/south/east/west)");
-		System.out.println("  search <object> - Search for items");
-		System.out.println("  hide <object>   - Hide from the guard");
-		System.out.println("  pickup <note>   - Read notes");
-		System.out.println("  inventory       - Check items & score");
-		System.out.println("  map             - Show building map");
-		System.out.println("  help            - Full command list");
-		System.out.println();
-		System.out.println("Type 'help' for detailed instructions.");
-		System.out.println("────────────────────────────────────────");
-		System.out.println();
-		System.out.println(currentRoom.longDescription());
-		System.out.println();
-		System.out.println("Actions remaining: " + movesLeft);
-		System.out.println();
+		print(WELCOME);
+		printRoomDescription();
+		out.println();
+		out.println("Actions remaining: " + movesLeft);
+		out.println();
 	}
 
 	/**
 	 * Process a single player command and perform the requested action.
-	 * Returns true when the player requested to quit the game.
+	 * Returns true when the player requested to quit the game. With
+	 * metrics, the time it took is recorded under its command word.
 	 */
 	private boolean processCommand(Command command) {
+		// The parser reuses its Command, so take the word before running it
+		String commandWord = command.isUnknown() ? null : command.getCommandWord();
+		activeCommand = commandWord;
+		if (metrics == null && !EngineEvents.dispatchEnabled()) {
+			return dispatch(command);
+		}
+		EngineEvents.CommandDispatch event = null;
+		if (EngineEvents.dispatchEnabled()) {
+			event = new EngineEvents.CommandDispatch();
+			event.set(sessionId, commandWord, currentRoom);
+			event.begin();
+		}
+		long start = System.nanoTime();
+		try {
+			return dispatch(command);
+		} finally {
+			if (metrics != null) {
+				metrics.recordCommand(sessionStats, commandWord, System.nanoTime() - start);
+			}
+			if (event != null) {
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Parse a command line (see Parser.parse).
+	 */
+	private Command parse(String line) {
+		if (!EngineEvents.parseEnabled()) {
+			return parser.parse(line);
+		}
+		EngineEvents.CommandParse event = new EngineEvents.CommandParse();
+		event.begin();
+		Command command = parser.parse(line);
+		event.set(sessionId, command.isUnknown() ? null : command.getCommandWord(), currentRoom);
+		event.commit();
+		return command;
+	}
+
+	/**
+	 * Run the handler of a command.
+	 */
+	private boolean dispatch(Command command) {
 		if (command.isUnknown()) {
-			System.out.println("I don't know what you mean...");
+			if (command.getCandidates() != null) {
+				printCandidates(command.getCandidates());
+			} else {
+				out.println("I don't know what you mean...");
+			}
 			return false;
 		}
 
-		String commandWord = command.getCommandWord();
-		if (commandWord.equals("help")) {
-			printHelp();
+		// Commands made outside the parser carry no id yet
+		int id = command.getCommandId();
+		if (id < 0) {
+			id = commands.find(command.getCommandWord(), 0, command.getCommandWord().length());
+		}
+		CommandHandler handler = id < 0 ? null : commands.getHandler(id);
+		if (handler == null) {
+			out.println("I don't know what you mean...");
+			return false;
+		}
+		return handler.execute(this, command);
+	}
 
-		} else if (commandWord.equals("go")) {
-			if (movesLeft > 0) {
-				goRoom(command);
-				movesLeft--;
-				showMovesLeft();
+	/**
+	 * Print a screen. Its UTF-8 bytes go to a sink as they are; any other
+	 * stream encodes the text in its own charset, which need not be the
+	 * default one (System.out uses stdout.encoding).
+	 */
+	private void print(Screen screen) {
+		if (sink != null) {
+			sink.write(screen.getBuffer());
+		} else {
+			out.print(screen.getText());
+		}
+	}
+
+	/**
+	 * Print the long description of the current room. Descriptions are
+	 * rendered and encoded once per room variant (see Room.describe), so
+	 * a sink gets the bytes as they are; other streams print the text.
+	 */
+	private void printRoomDescription() {
+		EngineEvents.RoomRender event = null;
+		if (EngineEvents.renderEnabled()) {
+			event = new EngineEvents.RoomRender();
+			event.set(sessionId, activeCommand, currentRoom);
+			event.begin();
+		}
+		Room.Description description = currentRoom.describe(state);
+		if (sink != null) {
+			sink.write(description.getLine(), 0, description.getLine().length);
+		} else {
+			out.println(description.getText());
+		}
+		if (event != null) {
+			event.commit();
+		}
+	}
+
+	/**
+	 * Answer a word that could mean several things (e.g. "search d" in
+	 * a room with a desk and a drawer).
+	 */
+	private void printCandidates(List<String> candidates) {
+		out.println("Which do you mean: " + String.join(", ", candidates) + "?");
+	}
+
+	/**
+	 * Add a command to this game (or replace one), e.g. from a mod or a
+	 * test. Other games are not affected.
+	 */
+	public void registerCommand(String commandWord, CommandHandler handler) {
+		if (commands == BUILT_IN_COMMANDS) {
+			// Copy the shared commands before changing them
+			commands = new CommandWords(BUILT_IN_COMMANDS);
+			parser.setCommandWords(commands);
+		}
+		commands.register(commandWord, handler);
+	}
+
+	/**
+	 * The built-in commands with their handlers, shared by all games.
+	 */
+	private static CommandWords builtInCommands() {
+		CommandWords commands = new CommandWords();
+		commands.register("help", (game, command) -> {
+			game.printHelp();
+			return false;
+		});
+		commands.register("go", (game, command) -> {
+			if (game.movesLeft > 0) {
+				game.goRoom(command);
+				game.movesLeft--;
+				game.showMovesLeft();
 			} else {
-				System.out.println("No actions left this round!");
-				resetRound();
+				game.out.println("No actions left this round!");
+				game.resetRound();
 			}
-			
-		} else if (commandWord.equals("inventory")) {
-			showInventory();
-			
-		} else if (commandWord.equals("hide")) {
-			if (movesLeft > 0) {
-				movesLeft--;
-				hideInRoom(command);
+			return false;
+		});
+		commands.register("travel", (game, command) -> {
+			if (game.movesLeft > 0) {
+				game.travel(command);
 			} else {
-				System.out.println("No actions left this round!");
-				resetRound();
+				game.out.println("No actions left this round!");
+				game.resetRound();
 			}
-			
-		} else if (commandWord.equals("search")) {
-			if (movesLeft > 0) {
-				searchObject(command);
-				movesLeft--;
-				showMovesLeft();
+			return false;
+		});
+		commands.register("inventory", (game, command) -> {
+			game.showInventory();
+			return false;
+		});
+		commands.register("hide", (game, command) -> {
+			if (game.movesLeft > 0) {
+				game.movesLeft--;
+				game.hideInRoom(command);
 			} else {
-				System.out.println("No actions left this round!");
-				resetRound();
+				game.out.println("No actions left this round!");
+				game.resetRound();
 			}
-			
-		} else if (commandWord.equals("pickup")) {
-			pickupNote(command);
-
-		} else if (commandWord.equals("map")) {
-			showMap();
-
-		} else if (commandWord.equals("use")) {
-			useItem(command);
-
-		} else if (commandWord.equals("quit")) {
-			if (command.hasSecondWord()) {
-				System.out.println("Quit what?");
+			return false;
+		});
+		commands.register("search", (game, command) -> {
+			if (game.movesLeft > 0) {
+				game.searchObject(command);
+				if (game.awaiting == Awaiting.SAFE_CODE) {
+					return false; // the action ends once the code was entered
+				}
+				game.movesLeft--;
+				game.showMovesLeft();
 			} else {
-				return true; // signal that we want to quit
+				game.out.println("No actions left this round!");
+				game.resetRound();
 			}
-		}
-		return false;
+			return false;
+		});
+		commands.register("pickup", (game, command) -> {
+			game.pickupNote(command);
+			return false;
+		});
+		commands.register("map", (game, command) -> {
+			game.showMap();
+			return false;
+		});
+		commands.register("use", (game, command) -> {
+			game.useItem(command);
+			return false;
+		});
+		commands.register("quit", (game, command) -> {
+			if (command.hasSecondWord()) {
+				game.out.println("Quit what?");
+				return false;
+			}
+			return true; // signal that we want to quit
+		});
+		return commands;
 	}
 
+	// The help text, the same for every game
+	private static final Screen HELP = new Screen(
+			"",
+			"========================================",
+			"           HELP - COMMANDS",
+			"========================================",
+			"",
+			"=== OBJECTIVE ===",
+			"Find the exit gate and unlock it to escape!",
+			"Avoid the Security Guard - he moves every round!",
+			"",
+			"=== ACTIONS (Cost: 1 action point) ===",
+			"  go <direction>",
+			"    - Move to another room",
+			"    - Directions: north, south, east, west",
+			"    - Example: go north",
+			"",
+			"  travel <room>",
+			"    - Walk the shortest way to a room, 1 action per room",
+			"    - Stops when your actions run out or the Guard shows up",
+			"    - Example: travel library",
+			"",
+			"  search <object>",
+			"    - Search an object for items",
+			"    - Example: search drawer",
+			"    - Some objects need special items to open!",
+			"",
+			"  hide <object>",
+			"    - Hide in an object (costs 1 action)",
+			"    - Example: hide desk",
+			"    - While hiding:",
+			"      1. Stay hidden - costs 1 additional action",
+			"      2. Exit - FREE, no action cost",
+			"    - Hiding protects you from the Guard!",
+			"",
+			"=== FREE ACTIONS (No cost) ===",
+			"  pickup <note>",
+			"    - Pick up and read a note",
+			"    - Example: pickup note",
+			"    - Notes contain important clues!",
+			"",
+			"  inventory",
+			"    - Show items and current score",
+			"",
+			"  map",
+			"    - Show the building map",
+			"",
+			"  use <item>",
+			"    - Use a powerup item",
+			"    - Example: use disguise, use energydrink",
+			"",
+			"  help",
+			"    - Show this help message",
+			"",
+			"  quit",
+			"    - Exit the game",
+			"",
+			"=== SCORING ===",
+			"- Find items: +10 points",
+			"- Crack safe: +20 points",
+			"- Pick up notes: +5 points",
+			"- Hide from Guard: +5 points per encounter",
+			"- Use disguise: +50 points",
+			"- Use energy drink: +30 points",
+			"- Escape via gate: +100 points",
+			"- Escape via teleport: +150 points",
+			"",
+			"=== TIPS ===",
+			"- Read all notes - they have important hints!",
+			"- Search everything you can!",
+			"- Hide when the Guard is nearby!",
+			"- You have " + MAX_MOVES_PER_ROUND + " actions per round",
+			"- Guard moves after every round!",
+			"- Look for secret easter eggs...",
+			"",
+			"========================================");
+
 	private void printHelp() {
-		System.out.println();
-		System.out.println("========================================");
-		System.out.println("           HELP - COMMANDS");
-		System.out.println("========================================");
-		System.out.println();
-		System.out.println("=== OBJECTIVE ===");
-		System.out.println("Find the exit gate and unlock it to escape!");
-		System.out.println("Avoid the Security Guard - he moves every round!");
-		System.out.println();
-		System.out.println("=== ACTIONS (Cost: 1 action point) ===");
-		System.out.println("  go <direction>");
-		System.out.println("    - Move to another room");
-		System.out.println("    - Directions: north, south, east, west");
-		System.out.println("    - Example: go north");
-		System.out.println();
-		System.out.println("  search <object>");
-		System.out.println("    - Search an object for items");
-		System.out.println("    - Example: search drawer");
-		System.out.println("    - Some objects need special items to open!");
-		System.out.println();
-		System.out.println("  hide <object>");
-		System.out.println("    - Hide in an object (costs 1 action)");
-		System.out.println("    - Example: hide desk");
-		System.out.println("    - While hiding:");
-		System.out.println("      1. Stay hidden - costs 1 additional action");
-		System.out.println("      2. Exit - FREE, no action cost");
-		System.out.println("    - Hiding protects you from the Guard!");
-		System.out.println();
-		System.out.println("=== FREE ACTIONS (No cost) ===");
-		System.out.println("  pickup <note>");
-		System.out.println("    - Pick up and read a note");
-		System.out.println("    - Example: pickup note");
-		System.out.println("    - Notes contain important clues!");
-		System.out.println();
-		System.out.println("  inventory");
-		System.out.println("    - Show items and current score");
-		System.out.println();
-		System.out.println("  map");
-		System.out.println("    - Show the building map");
-		System.out.println();
-		System.out.println("  use <item>");
-		System.out.println("    - Use a powerup item");
-		System.out.println("    - Example: use disguise, use energydrink");
-		System.out.println();
-		System.out.println("  help");
-		System.out.println("    - Show this help message");
-		System.out.println();
-		System.out.println("  quit");
-		System.out.println("    - Exit the game");
-		System.out.println();
-		System.out.println("=== SCORING ===");
-		System.out.println("- Find items: +10 points");
-		System.out.println("- Crack safe: +20 points");
-		System.out.println("- Pick up notes: +5 points");
-		System.out.println("- Hide from Guard: +5 points per encounter");
-		System.out.println("- Use disguise: +50 points");
-		System.out.println("- Use energy drink: +30 points");
-		System.out.println("- Escape via gate: +100 points");
-		System.out.println("- Escape via teleport: +150 points");
-		System.out.println();
-		System.out.println("=== TIPS ===");
-		System.out.println("- Read all notes - they have important hints!");
-		System.out.println("- Search everything you can!");
-		System.out.println("- Hide when the Guard is nearby!");
-		System.out.println("- You have " + MAX_MOVES_PER_ROUND + " actions per round");
-		System.out.println("- Guard moves after every round!");
-		System.out.println("- Look for secret easter eggs...");
-		System.out.println();
-		System.out.println("========================================");
+		print(HELP);
 	}
 
 	/**
@@ -396,213 +877,343 @@ public class Game {
 	 */
 	private void goRoom(Command command) {
 		if (!command.hasSecondWord()) {
-			System.out.println("Go where?");
+			out.println("Go where?");
 		} else {
+			// Directions may be abbreviated ("go n")
+			Direction exit = Direction.resolve(command.getSecondWord()).getValue();
+			if (exit == null) {
+				out.println("There is no door!");
+			} else {
+				walk(exit);
+			}
+		}
+	}
 
-			String direction = command.getSecondWord();
+	/**
+	 * Leave the current room in the given direction, if the player can.
+	 *
+	 * @return true if the player moved
+	 */
+	private boolean walk(Direction exit) {
+		// Special check: the vent cannot be opened from the vault's side without the crowbar
+		if (isSealedVent(currentRoom, exit)) {
+			out.println("The vent is sealed from this side. You cannot go through without the crowbar.");
+			return false;
+		}
 
-			// Special check: prevent going south from tresorRaum to sicherheitsraum without crowbar
-			if (currentRoom == tresorRaum && direction.equalsIgnoreCase("south")) {
-				boolean hasCrowbar = false;
-				for (Item item : inventory) {
-					if (item.getName().equalsIgnoreCase("crowbar")) {
-						hasCrowbar = true;
-						break;
-					}
-				}
-				
-				if (!hasCrowbar) {
-					System.out.println("The vent is sealed from this side. You cannot go through without the crowbar.");
-					return;
-				}
+		// Try to leave current room.
+		Room nextRoom = state.nextRoom(currentRoom, exit);
+
+		if (nextRoom == null) {
+			out.println("There is no door!");
+			return false;
+		}
+		currentRoom = nextRoom;
+		printRoomDescription();
+		checkGuardEncounter(); // Check if guard is in new room
+		return true;
+	}
+
+	// A vent only opens from the vault's side with the crowbar
+	private boolean isSealedVent(Room room, Direction exit) {
+		return room == vault && sealedVents[exit.ordinal()] && !inventory.hasAny(crowbar);
+	}
+
+	private static boolean hasVent(Room room) {
+		for (Searchable searchable : room.getSearchables()) {
+			if (searchable.isVent()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Walk the shortest way to the room named in the command, one room
+	 * per action, until the player gets there, the round's actions are
+	 * used up or the guard shows up. The way only leads through doors
+	 * the player can pass now (see findWay).
+	 */
+	private void travel(Command command) {
+		if (!command.hasSecondWord()) {
+			out.println("Travel where?");
+			return;
+		}
+		NameTrie.Match<Room> match = world.findRoom(command.getSecondWord());
+		if (match.isAmbiguous()) {
+			printCandidates(match.getCandidateNames());
+			return;
+		}
+		if (!match.isFound()) {
+			out.println("There is no such room!");
+			return;
+		}
+		Room target = match.getValue();
+		if (target == currentRoom) {
+			out.println("You are already there.");
+			return;
+		}
+		List<Direction> way = findWay(currentRoom, target);
+		if (way == null) {
+			out.println("You don't know a way there from here.");
+			return;
+		}
+		boolean moved = false;
+		for (int step = 0; step < way.size() && movesLeft > 0; step++) {
+			if (!walk(way.get(step))) {
+				break;
+			}
+			moved = true;
+			movesLeft--;
+			if (guard.getCurrentRoom() == currentRoom) {
+				break; // the guard stops the player either way
+			}
+		}
+		if (moved) {
+			showMovesLeft();
+		}
+	}
+
+	/**
+	 * The shortest way from one room to another through the exits this
+	 * game lets the player pass (open doors, the vent only with the
+	 * crowbar), or null if there is none. The world's RoutingTable knows
+	 * the shortest way when every door is open, found in time of the
+	 * length of the way; only when a closed door is on it is the way
+	 * searched again, breadth-first over the passable exits.
+	 */
+	List<Direction> findWay(Room from, Room target) {
+		RoutingTable routes = world.getRoutes();
+		List<Direction> way = new ArrayList<>();
+		int room = from.getId();
+		while (room != target.getId()) {
+			int direction = routes.nextHop(room, target.getId());
+			if (direction < 0) {
+				return null; // not even with every door open
 			}
+			Direction exit = Direction.get(direction);
+			if (!canPass(room, exit)) {
+				return searchWay(from, target);
+			}
+			way.add(exit);
+			room = world.getExit(room, exit);
+		}
+		return way;
+	}
 
-			// Try to leave current room.
-			Room nextRoom = currentRoom.nextRoom(direction);
+	private boolean canPass(int room, Direction exit) {
+		return state.nextRoom(room, exit) >= 0 && !isSealedVent(world.getRoom(room), exit);
+	}
 
-			if (nextRoom == null)
-				System.out.println("There is no door!");
-			else {
-				currentRoom = nextRoom;
-				System.out.println(currentRoom.longDescription());
-				checkGuardEncounter(); // Check if guard is in new room
+	/**
+	 * findWay for a way the RoutingTable cannot know: a breadth-first
+	 * search over the exits the player can pass.
+	 */
+	private List<Direction> searchWay(Room from, Room target) {
+		int count = world.getRoomCount();
+		// The room each room was first reached from, and by which exit
+		int[] previous = new int[count];
+		byte[] exits = new byte[count];
+		Arrays.fill(previous, -1);
+		int[] queue = new int[count];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = from.getId();
+		previous[from.getId()] = from.getId();
+		while (head < tail && previous[target.getId()] < 0) {
+			int room = queue[head++];
+			for (int d = 0; d < Direction.COUNT; d++) {
+				Direction exit = Direction.get(d);
+				int next = world.getExit(room, exit);
+				if (next >= 0 && previous[next] < 0 && canPass(room, exit)) {
+					previous[next] = room;
+					exits[next] = (byte) d;
+					queue[tail++] = next;
+				}
 			}
 		}
+		if (previous[target.getId()] < 0) {
+			return null;
+		}
+		List<Direction> way = new ArrayList<>();
+		for (int room = target.getId(); room != from.getId(); room = previous[room]) {
+			way.add(Direction.get(exits[room]));
+		}
+		Collections.reverse(way);
+		return way;
 	}
-	
+
 	private void showInventory() {
-		System.out.println("========================================");
-		System.out.println("Score: " + score + " points");
-		System.out.println("========================================");
+		out.println("========================================");
+		out.println("Score: " + score + " points");
+		out.println("========================================");
 		if (inventory.isEmpty()) {
-			System.out.println("You are carrying nothing.");
+			out.println("You are carrying nothing.");
 		} else {
-			System.out.println("You are carrying:");
+			out.println("You are carrying:");
 			for (Item item : inventory) {
-				System.out.println("  " + item.getName() + " - " + item.getDescription());
+				// The paper with the code shows this game's vault code
+				out.println("  " + item.getName() + " - " + item.getDescription().replace("{code}", vaultCode));
 			}
 		}
 		if (hasDisguise) {
-			System.out.println();
-			System.out.println("Active Power-up: Disguise (protects from 1 guard encounter)");
+			out.println();
+			out.println("Active Power-up: Disguise (protects from 1 guard encounter)");
 		}
 	}
 	
 	private void hideInRoom(Command command) {
 		if (!command.hasSecondWord()) {
-			System.out.println("Hide where?");
+			out.println("Hide where?");
 			return;
 		}
 		
 		String hideableName = command.getSecondWord();
-		Hideable hideable = currentRoom.getHideable(hideableName);
+		NameTrie.Match<Hideable> match = currentRoom.findHideable(hideableName);
+		Hideable hideable = match.getValue();
 		
-		if (hideable == null) {
-			System.out.println("You cannot hide in " + hideableName + " here!");
+		if (match.isAmbiguous()) {
+			printCandidates(match.getCandidateNames());
+		} else if (hideable == null) {
+			out.println("You cannot hide in " + hideableName + " here!");
 		} else {
-			System.out.println("You hide in the " + hideable.getName() + " - " + hideable.getDescription());
-			System.out.println("You feel safer here...");
+			out.println("You hide in the " + hideable.getName() + " - " + hideable.getDescription());
+			out.println("You feel safer here...");
+			if (metrics != null) {
+				metrics.recordHide();
+			}
 			
 			// Set hiding state
 			isHiding = true;
 			currentHidingSpot = hideable.getName();
 			
-			// Easter egg: Check if hiding in versteck
-			if (currentRoom == versteck) {
+			// Easter egg: Check if hiding in the hideout
+			if (currentRoom == hideout) {
 				hiddenInVersteckCount++;
 				
-				if (hiddenInVersteckCount >= 4 && !teleportMachineRevealed) {
-					System.out.println();
-					System.out.println("*** As you hide, you notice the wall shifting slightly... ***");
-					System.out.println("*** A hidden panel opens, revealing a strange glowing machine! ***");
-					System.out.println("*** A TELEPORT MACHINE has been revealed! ***");
-					teleportMachineRevealed = true;
-					
-					// Add teleport machine to the room
-					Searchable teleportMachine = new Searchable("teleportmachine", "A mysterious glowing teleport machine with buttons", null);
-					teleportMachine.setDoor(true); // Use door flag for special handling
-					teleportMachine.setRequiredItem("easter-egg");
-					versteck.addSearchable(teleportMachine);
+				if (hiddenInVersteckCount >= 4 && !isTeleportMachineRevealed()) {
+					out.println();
+					out.println("*** As you hide, you notice the wall shifting slightly... ***");
+					out.println("*** A hidden panel opens, revealing a strange glowing machine! ***");
+					out.println("*** A TELEPORT MACHINE has been revealed! ***");
+					revealTeleportMachine();
 				} else if (hiddenInVersteckCount < 4) {
-					System.out.println("(Hidden " + hiddenInVersteckCount + "/4 times in this room...)");
+					out.println("(Hidden " + hiddenInVersteckCount + "/4 times in this room...)");
 				}
 			}
 			
 			// Action already deducted in processCommand, now check if round ended
 			if (movesLeft == 0) {
-				System.out.println();
-				System.out.println("=== NEW ROUND ===");
-				movesLeft = MAX_MOVES_PER_ROUND;
+				out.println();
+				out.println("=== NEW ROUND ===");
+				movesLeft = movesPerRound;
 				moveGuard(); // Guard moves if round ended
 			}
-			System.out.println("Actions remaining: " + movesLeft);
+			out.println("Actions remaining: " + movesLeft);
 			
 			// Ask player if they want to stay hidden or exit
 			askHidingOptions();
 		}
 	}
 	
+	/**
+	 * Ask the player whether to stay hidden or leave the hiding spot. The
+	 * answer arrives as the next input line (see handleHidingChoice).
+	 */
 	private void askHidingOptions() {
-		while (isHiding) {
-			System.out.println();
-			System.out.println("You are hiding in the " + currentHidingSpot + ".");
-			System.out.println("What do you want to do?");
-			System.out.println("  1. Stay hidden");
-			System.out.println("  2. Exit hiding spot");
-			System.out.print("Enter choice (1 or 2): ");
-			
-			try {
-				BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-				String input = reader.readLine();
-				if (input == null || input.trim().isEmpty()) {
-					System.out.println("You exit the hiding spot.");
-					isHiding = false;
-					break;
-				}
-				
-				String choice = input.trim();
-				if (choice.equals("1")) {
-					System.out.println("You remain hidden in the " + currentHidingSpot + "...");
-					System.out.println("Time passes quietly...");
-					movesLeft--;
-					
-					// Check if we're in versteck and increment counter
-					if (currentRoom == versteck) {
-						hiddenInVersteckCount++;
-						
-						if (hiddenInVersteckCount >= 4 && !teleportMachineRevealed) {
-							System.out.println();
-							System.out.println("*** As you remain hidden, you notice the wall shifting slightly... ***");
-							System.out.println("*** A hidden panel opens, revealing a strange glowing machine! ***");
-							System.out.println("*** A TELEPORT MACHINE has been revealed! ***");
-							teleportMachineRevealed = true;
-							
-							// Add teleport machine to the room
-							Searchable teleportMachine = new Searchable("teleportmachine", "A mysterious glowing teleport machine with buttons", null);
-							teleportMachine.setDoor(true); // Use door flag for special handling
-							teleportMachine.setRequiredItem("easter-egg");
-							versteck.addSearchable(teleportMachine);
-						} else if (hiddenInVersteckCount < 4) {
-							System.out.println("(Hidden " + hiddenInVersteckCount + "/4 times in this room...)");
-						}
-					}
-					
-					showMovesLeft();
-					// Continue loop - ask again
-				} else if (choice.equals("2")) {
-					System.out.println("You carefully exit the " + currentHidingSpot + ".");
-					isHiding = false;
-					System.out.println();
-					System.out.println(currentRoom.longDescription());
-					showMovesLeft();
-					break;
-				} else {
-					System.out.println("Invalid choice. Please enter 1 or 2.");
-					// Continue loop - ask again
+		out.println();
+		out.println("You are hiding in the " + currentHidingSpot + ".");
+		out.println("What do you want to do?");
+		out.println("  1. Stay hidden");
+		out.println("  2. Exit hiding spot");
+		out.print("Enter choice (1 or 2): ");
+		awaiting = Awaiting.HIDING_CHOICE;
+	}
+
+	private void handleHidingChoice(String input) {
+		awaiting = Awaiting.COMMAND;
+		if (input.trim().isEmpty()) {
+			out.println("You exit the hiding spot.");
+			isHiding = false;
+			return;
+		}
+
+		String choice = input.trim();
+		if (choice.equals("1")) {
+			out.println("You remain hidden in the " + currentHidingSpot + "...");
+			out.println("Time passes quietly...");
+			movesLeft--;
+
+			// Check if we're in the hideout and increment counter
+			if (currentRoom == hideout) {
+				hiddenInVersteckCount++;
+
+				if (hiddenInVersteckCount >= 4 && !isTeleportMachineRevealed()) {
+					out.println();
+					out.println("*** As you remain hidden, you notice the wall shifting slightly... ***");
+					out.println("*** A hidden panel opens, revealing a strange glowing machine! ***");
+					out.println("*** A TELEPORT MACHINE has been revealed! ***");
+					revealTeleportMachine();
+				} else if (hiddenInVersteckCount < 4) {
+					out.println("(Hidden " + hiddenInVersteckCount + "/4 times in this room...)");
 				}
-			} catch (Exception e) {
-				System.out.println("You exit the hiding spot.");
-				isHiding = false;
-				System.out.println();
-				System.out.println(currentRoom.longDescription());
-				showMovesLeft();
-				break;
 			}
+
+			showMovesLeft();
+			askHidingOptions(); // ask again
+		} else if (choice.equals("2")) {
+			out.println("You carefully exit the " + currentHidingSpot + ".");
+			isHiding = false;
+			out.println();
+			printRoomDescription();
+			showMovesLeft();
+		} else {
+			out.println("Invalid choice. Please enter 1 or 2.");
+			askHidingOptions(); // ask again
 		}
 	}
 	
 	private void pickupNote(Command command) {
 		if (!command.hasSecondWord()) {
-			System.out.println("Pick up what?");
+			out.println("Pick up what?");
 			return;
 		}
 		
 		String noteName = command.getSecondWord();
-		Note note = currentRoom.removeNote(noteName);
+		Note note = currentRoom.findNote(noteName, state);
 		
 		if (note == null) {
-			System.out.println("There is no " + noteName + " here!");
+			out.println("There is no " + noteName + " here!");
 		} else {
-			System.out.println("Note added to inventory!");
-			System.out.println("You read the note:");
-			System.out.println(note.getText());
+			state.take(note);
+			out.println("Note added to inventory!");
+			out.println("You read the note:");
+			out.println(note.getText());
 			score += 5; // Points for finding note
-			System.out.println(">>> +5 POINTS! Current score: " + score);
+			out.println(">>> +5 POINTS! Current score: " + score);
 		}
 	}
 	
 	private void searchObject(Command command) {
 		if (!command.hasSecondWord()) {
-			System.out.println("Search what?");
+			out.println("Search what?");
 			return;
 		}
 		
 		String searchableName = command.getSecondWord();
-		Searchable searchable = currentRoom.getSearchable(searchableName);
+		NameTrie.Match<Searchable> match = currentRoom.findSearchable(searchableName, state);
+		Searchable searchable = match.getValue();
 		
-		if (searchable == null) {
-			System.out.println("You cannot search " + searchableName + " here!");
+		if (match.isAmbiguous()) {
+			printCandidates(match.getCandidateNames());
+		} else if (searchable == null) {
+			out.println("You cannot search " + searchableName + " here!");
 		} else {
+			if (metrics != null) {
+				metrics.recordSearch();
+			}
+			makeNoise(SEARCH_NOISE);
+
 			// Special handling for vent
 			if (searchable.isVent()) {
 				handleVent(searchable);
@@ -627,313 +1238,328 @@ public class Game {
 				return;
 			}
 			
-			if (searchable.isSearched()) {
-				System.out.println("You already searched the " + searchable.getName() + ". Nothing else here.");
+			if (state.isSearched(searchable)) {
+				out.println("You already searched the " + searchable.getName() + ". Nothing else here.");
 			} else {
-				searchable.setSearched(true);
-				System.out.println("You search the " + searchable.getName() + "...");
+				state.setSearched(searchable);
+				out.println("You search the " + searchable.getName() + "...");
 				
 				Item item = searchable.getItem();
 				if (item != null) {
 					inventory.add(item);
-					System.out.println("You've got a new item in your inventory: " + item.getName());
+					out.println("You've got a new item in your inventory: " + item.getName());
 					score += 10; // Points for finding item
-					System.out.println(">>> +10 POINTS! Current score: " + score);
+					out.println(">>> +10 POINTS! Current score: " + score);
 				} else {
-					System.out.println("You find nothing useful.");
+					out.println("You find nothing useful.");
 				}
 			}
 		}
 	}
 	
 	private void handlePasswordProtected(Searchable safe) {
-		if (safe.isSearched()) {
-			System.out.println("The safe is already open and empty.");
+		if (state.isSearched(safe)) {
+			out.println("The safe is already open and empty.");
 			return;
 		}
 		
-		System.out.println("The safe has a digital keypad. Enter 4-digit code:");
-		System.out.print("> ");
-		
-		try {
-			BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-			String input = reader.readLine();
-			if (input == null || input.trim().isEmpty()) {
-				System.out.println("No code entered.");
-				return;
-			}
-			
+		out.println("The safe has a digital keypad. Enter 4-digit code:");
+		out.print("> ");
+		// The code arrives as the next input line (see enterSafeCode)
+		pendingSafe = safe;
+		awaiting = Awaiting.SAFE_CODE;
+	}
+
+	private void enterSafeCode(String input) {
+		Searchable safe = pendingSafe;
+		pendingSafe = null;
+		awaiting = Awaiting.COMMAND;
+
+		if (input.trim().isEmpty()) {
+			out.println("No code entered.");
+		} else {
 			String code = input.trim();
-			if (code.equals(safe.getPassword())) {
-				System.out.println("*CLICK* The safe opens!");
-				safe.setSearched(true);
+			// A safe without its own password opens with the game's vault code
+			String password = safe.getPassword() != null ? safe.getPassword() : vaultCode;
+			if (code.equals(password)) {
+				out.println("*CLICK* The safe opens!");
+				state.setSearched(safe);
 				Item item = safe.getItem();
 				if (item != null) {
 					inventory.add(item);
-					System.out.println("You've got a new item in your inventory: " + item.getName());
-					System.out.println("You also find a pile of money inside!");
+					out.println("You've got a new item in your inventory: " + item.getName());
+					out.println("You also find a pile of money inside!");
 					score += 20; // Bonus for cracking the safe
-					System.out.println(">>> +20 POINTS for cracking the safe! Current score: " + score);
+					out.println(">>> +20 POINTS for cracking the safe! Current score: " + score);
 				}
 			} else {
-				System.out.println("*BEEP* Wrong code! The safe remains locked.");
+				out.println("*BEEP* Wrong code! The safe remains locked.");
+				makeNoise(WRONG_CODE_NOISE);
 			}
-		} catch (Exception e) {
-			System.out.println("Error reading input.");
 		}
+
+		// Finish the search action that asked for the code
+		movesLeft--;
+		showMovesLeft();
 	}
 	
 	private void handleGate(Searchable gate) {
 		String requiredItemName = gate.getRequiredItem();
+		long[] requiredItem = world.getRequiredItems(gate);
 		
 		// Check if player has required item
-		boolean hasItem = false;
-		for (Item item : inventory) {
-			if (item.getName().equalsIgnoreCase(requiredItemName)) {
-				hasItem = true;
-				break;
-			}
-		}
+		boolean hasItem = inventory.hasAny(requiredItem);
 		
 		// Check if this is the roof hatch or main gate
-		boolean isRoofHatch = gate.getName().equalsIgnoreCase("hatch");
+		boolean isRoofHatch = gate == roofHatch;
 		
 		// For pistol, also check if player has bullets
-		if (isRoofHatch && hasItem && !hasBullets()) {
-			System.out.println("You have the pistol but no ammunition!");
-			System.out.println("You need bullets to shoot the lock.");
+		if (isRoofHatch && hasItem && !inventory.hasAny(bullets)) {
+			out.println("You have the pistol but no ammunition!");
+			out.println("You need bullets to shoot the lock.");
 			return;
 		}
 		
 		if (!hasItem) {
 			if (isRoofHatch) {
-				System.out.println("The " + gate.getName() + " has a heavy padlock. You need a " + requiredItemName + " to shoot it off.");
+				out.println("The " + gate.getName() + " has a heavy padlock. You need a " + requiredItemName + " to shoot it off.");
 			} else {
-				System.out.println("The " + gate.getName() + " is locked with a heavy padlock. You need a " + requiredItemName + " to unlock it.");
+				out.println("The " + gate.getName() + " is locked with a heavy padlock. You need a " + requiredItemName + " to unlock it.");
 			}
 		} else {
 			if (isRoofHatch) {
-				System.out.println("You load the pistol with bullets...");
-				System.out.println("You aim the pistol at the padlock...");
-				System.out.println("*BANG!* The shot echoes through the attic!");
-				System.out.println("The padlock shatters and falls to the ground!");
-				System.out.println("The roof hatch swings open, revealing the night sky...");
-				System.out.println("You climb through the hatch onto the roof!");
-				System.out.println("From the roof, you spot a fire escape ladder leading down...");
-				System.out.println("You climb down to freedom!");
+				out.println("You load the pistol with bullets...");
+				out.println("You aim the pistol at the padlock...");
+				out.println("*BANG!* The shot echoes through the attic!");
+				makeNoise(SHOT_NOISE);
+				out.println("The padlock shatters and falls to the ground!");
+				out.println("The roof hatch swings open, revealing the night sky...");
+				out.println("You climb through the hatch onto the roof!");
+				out.println("From the roof, you spot a fire escape ladder leading down...");
+				out.println("You climb down to freedom!");
 			} else {
-				System.out.println("You use the " + requiredItemName + " to unlock the gate!");
+				out.println("You use the " + requiredItemName + " to unlock the gate!");
 			}
-			System.out.println();
+			out.println();
 			score += 100; // Big bonus for escaping!
-			System.out.println("========================================");
-			System.out.println("   CONGRATULATIONS! YOU ESCAPED!");
-			System.out.println("========================================");
-			System.out.println("You've successfully escaped the building!");
+			out.println("========================================");
+			out.println("   CONGRATULATIONS! YOU ESCAPED!");
+			out.println("========================================");
+			out.println("You've successfully escaped the building!");
 			if (isRoofHatch) {
-				System.out.println("ESCAPE ROUTE: Roof Hatch (Attic Route)");
+				out.println("ESCAPE ROUTE: Roof Hatch (Attic Route)");
 			} else {
-				System.out.println("ESCAPE ROUTE: Main Gate (Standard Route)");
+				out.println("ESCAPE ROUTE: Main Gate (Standard Route)");
 			}
-			System.out.println("FINAL SCORE: " + score + " points");
-			System.out.println("========================================");
-			System.out.println("Thank you for playing!");
-			System.exit(0);
+			out.println("FINAL SCORE: " + score + " points");
+			out.println("========================================");
+			out.println("Thank you for playing!");
+			endGame(isRoofHatch ? Ending.ROOF : Ending.GATE);
 		}
 	}
 	
 	private void handleDoor(Searchable door) {
 		String requiredItemName = door.getRequiredItem();
+		long[] requiredItem = world.getRequiredItems(door);
 		
 		// Special case: teleport machine easter egg
-		if (door.getName().equalsIgnoreCase("teleportmachine")) {
+		if (door == teleportMachine) {
 			handleTeleportMachine();
 			return;
 		}
 		
 		// Special case: door handle from inside vault (only works if door not already open)
-		if (door.getName().equalsIgnoreCase("handle") && currentRoom == tresorRaum) {
-			if (tresorDoorOpen) {
-				System.out.println("The door is already open.");
+		if (door == vaultHandle) {
+			if (state.isOpen(door.getOpensLock())) {
+				out.println("The door is already open.");
 			} else {
 				// Check if player has crowbar to force the door from inside
-				boolean hasCrowbar = false;
-				for (Item item : inventory) {
-					if (item.getName().equalsIgnoreCase("crowbar")) {
-						hasCrowbar = true;
-						break;
-					}
-				}
+				boolean hasCrowbar = inventory.hasAny(crowbar);
 				
 				if (!hasCrowbar) {
-					System.out.println("The door handle won't budge. It seems to be locked from the outside.");
-					System.out.println("You need something to force it open.");
+					out.println("The door handle won't budge. It seems to be locked from the outside.");
+					out.println("You need something to force it open.");
 				} else {
-					System.out.println("You use the crowbar to force the door handle from inside.");
-					System.out.println("The door opens! You can now access the Boss Office.");
-					bueroChef.setExits(null, tresorRaum, null, flurOG);
-					tresorRaum.setExits(null, null, sicherheitsraum, bueroChef);
-					tresorDoorOpen = true;
-					System.out.println("You can now go west to the Boss Office.");
+					Direction exit = lockedExit(door.getOpensLock());
+					out.println("You use the crowbar to force the door handle from inside.");
+					out.println("The door opens! You can now access the " + exitName(exit) + ".");
+					state.open(door.getOpensLock());
+					printExitOpened(exit);
 				}
 			}
 			return;
 		}
 		
 		// Check if player has required item
-		boolean hasItem = false;
-		for (Item item : inventory) {
-			if (item.getName().equalsIgnoreCase(requiredItemName)) {
-				hasItem = true;
-				break;
-			}
-		}
+		boolean hasItem = inventory.hasAny(requiredItem);
 		
 		if (!hasItem) {
-			System.out.println("The " + door.getName() + " is locked. You need a " + requiredItemName + " to unlock it.");
+			out.println("The " + door.getName() + " is locked. You need a " + requiredItemName + " to unlock it.");
 		} else {
-			System.out.println("You use your " + requiredItemName + " to unlock the " + door.getName() + ".");
-			System.out.println("The door opens with a satisfying click!");
+			out.println("You use your " + requiredItemName + " to unlock the " + door.getName() + ".");
+			out.println("The door opens with a satisfying click!");
 			
-			// Open the door from bueroChef to tresorRaum
-			if (currentRoom == bueroChef) {
-				bueroChef.setExits(null, tresorRaum, null, flurOG);
-				tresorRaum.setExits(null, null, sicherheitsraum, bueroChef);
-				tresorDoorOpen = true;
-				System.out.println("You can now go east to the Vault Room.");
+			// Open the locked exit the door belongs to (e.g. into the vault)
+			if (door.getOpensLock() >= 0) {
+				state.open(door.getOpensLock());
+				printExitOpened(lockedExit(door.getOpensLock()));
 			}
 			
-			// Open attic door in bibliothek
-			if (door.getName().equalsIgnoreCase("atticdoor") && currentRoom == bibliothek) {
-				System.out.println("You pry the boards off the attic door with the crowbar!");
-				System.out.println("The door creaks open, revealing stairs leading up to the attic.");
-				bibliothek.setExits(dachboden, flurOG, keller, null);
-				System.out.println("You can now go north to the Attic.");
+			// Open the attic door
+			if (door == atticDoor) {
+				out.println("You pry the boards off the attic door with the crowbar!");
+				out.println("The door creaks open, revealing stairs leading up to the attic.");
+				out.println("You can now go north to the Attic.");
 			}
 		}
 	}
 	
+	/**
+	 * The exit of the current room the given lock closes, or null.
+	 */
+	private Direction lockedExit(int lock) {
+		for (int d = 0; d < Direction.COUNT; d++) {
+			if (currentRoom.getExitLock(Direction.get(d)) == lock) {
+				return Direction.get(d);
+			}
+		}
+		return null;
+	}
+
+	private String exitName(Direction exit) {
+		return exit == null ? "next room" : currentRoom.nextRoom(exit).getName();
+	}
+
+	private void printExitOpened(Direction exit) {
+		if (exit != null) {
+			out.println("You can now go " + exit.getName() + " to the " + exitName(exit) + ".");
+		}
+	}
+
+	/**
+	 * Show the hidden teleport machine in the hideout (easter egg).
+	 */
+	private void revealTeleportMachine() {
+		for (Searchable searchable : hideout.getSearchables()) {
+			if (searchable.isHidden()) {
+				state.reveal(searchable);
+			}
+		}
+	}
+	
+	private boolean isTeleportMachineRevealed() {
+		return teleportMachine != null && state.isVisible(teleportMachine);
+	}
+	
 	private void handleVent(Searchable vent) {
-		if (currentRoom != sicherheitsraum) {
-			System.out.println("There is no vent here.");
+		if (vault == null) {
+			out.println("There is no vent here.");
 			return;
 		}
 		
-		boolean hasCrowbar = false;
-		for (Item item : inventory) {
-			if (item.getName().equalsIgnoreCase("crowbar")) {
-				hasCrowbar = true;
-				break;
-			}
-		}
+		boolean hasCrowbar = inventory.hasAny(crowbar);
 		
 		if (!hasCrowbar) {
-			System.out.println("The vent is sealed shut with metal screws. You need something to break it open.");
+			out.println("The vent is sealed shut with metal screws. You need something to break it open.");
 		} else {
-			System.out.println("You use the crowbar to pry open the vent cover...");
-			System.out.println("The vent is big enough to crawl through!");
-			System.out.println("You crawl through the vent shaft...");
-			currentRoom = tresorRaum;
-			System.out.println();
-			System.out.println(currentRoom.longDescription());
+			out.println("You use the crowbar to pry open the vent cover...");
+			out.println("The vent is big enough to crawl through!");
+			out.println("You crawl through the vent shaft...");
+			currentRoom = vault;
+			out.println();
+			printRoomDescription();
 		}
 	}
 	
 	private void handleTeleportMachine() {
-		System.out.println();
-		System.out.println("*** TELEPORT MACHINE ACTIVATED! ***");
-		System.out.println("The machine hums with mysterious energy...");
-		System.out.println("A glowing portal opens before you...");
-		System.out.println();
-		System.out.println("*** WHOOOOSH! ***");
-		System.out.println("You feel your body dissolving into energy...");
-		System.out.println("Reality shifts around you...");
-		System.out.println("You materialize outside the building!");
-		System.out.println();
+		out.println();
+		out.println("*** TELEPORT MACHINE ACTIVATED! ***");
+		out.println("The machine hums with mysterious energy...");
+		out.println("A glowing portal opens before you...");
+		out.println();
+		out.println("*** WHOOOOSH! ***");
+		out.println("You feel your body dissolving into energy...");
+		out.println("Reality shifts around you...");
+		out.println("You materialize outside the building!");
+		out.println();
 		score += 150; // Easter egg bonus
-		System.out.println("========================================");
-		System.out.println("   CONGRATULATIONS! YOU ESCAPED!");
-		System.out.println("========================================");
-		System.out.println("You discovered the secret teleport easter egg!");
-		System.out.println("You've successfully escaped the building!");
-		System.out.println("FINAL SCORE: " + score + " points (+50 easter egg bonus!)");
-		System.out.println("========================================");
-		System.out.println("Thank you for playing!");
-		System.exit(0);
+		out.println("========================================");
+		out.println("   CONGRATULATIONS! YOU ESCAPED!");
+		out.println("========================================");
+		out.println("You discovered the secret teleport easter egg!");
+		out.println("You've successfully escaped the building!");
+		out.println("FINAL SCORE: " + score + " points (+50 easter egg bonus!)");
+		out.println("========================================");
+		out.println("Thank you for playing!");
+		endGame(Ending.TELEPORT);
 	}
 	
 	private void useItem(Command command) {
 		if (!command.hasSecondWord()) {
-			System.out.println("Use what?");
+			out.println("Use what?");
 			return;
 		}
 		
 		String itemName = command.getSecondWord().toLowerCase();
 		
 		// Check if item exists in inventory
-		Item itemToUse = null;
-		for (Item item : inventory) {
-			if (item.getName().equalsIgnoreCase(itemName)) {
-				itemToUse = item;
-				break;
-			}
-		}
+		Item itemToUse = inventory.get(itemName);
 		
 		if (itemToUse == null) {
-			System.out.println("You don't have a " + itemName + " in your inventory!");
+			out.println("You don't have a " + itemName + " in your inventory!");
 			return;
 		}
 		
 		// Handle disguise
-		if (itemName.equals("disguise")) {
+		if (itemName.equals(disguise)) {
 			if (hasDisguise) {
-				System.out.println("You've already used the disguise!");
+				out.println("You've already used the disguise!");
 				return;
 			}
-			System.out.println("You put on the security guard uniform...");
-			System.out.println("Perfect! The guard won't recognize you now (ONE TIME USE)!");
+			out.println("You put on the security guard uniform...");
+			out.println("Perfect! The guard won't recognize you now (ONE TIME USE)!");
 			hasDisguise = true;
 			score += 50; // Bonus points for using disguise
 			inventory.remove(itemToUse);
-			System.out.println(">>> +50 POINTS! Current score: " + score);
+			out.println(">>> +50 POINTS! Current score: " + score);
 			
 		// Handle energy drink
-		} else if (itemName.equals("energydrink")) {
+		} else if (itemName.equals(energyDrink)) {
 			if (hasEnergyDrink) {
-				System.out.println("You've already used an energy drink!");
+				out.println("You've already used an energy drink!");
 				return;
 			}
-			System.out.println("You drink the energy drink...");
-			System.out.println("You feel energized! +1 EXTRA ACTION this round!");
+			out.println("You drink the energy drink...");
+			out.println("You feel energized! +1 EXTRA ACTION this round!");
 			hasEnergyDrink = true;
 			movesLeft++; // Grant extra action
 			score += 30; // Bonus points for using energy drink
 			inventory.remove(itemToUse);
-			System.out.println(">>> +30 POINTS! Current score: " + score);
+			out.println(">>> +30 POINTS! Current score: " + score);
 			showMovesLeft();
 			
 		} else {
-			System.out.println("You can't use " + itemName + " like that. Try using it with the 'search' command instead.");
+			out.println("You can't use " + itemName + " like that. Try using it with the 'search' command instead.");
 		}
 	}
 	
 	private void showMovesLeft() {
 		if (movesLeft == 0) {
-			System.out.println();
-			System.out.println("=== NEW ROUND ===");
-			movesLeft = MAX_MOVES_PER_ROUND;
+			out.println();
+			out.println("=== NEW ROUND ===");
+			movesLeft = movesPerRound;
 			moveGuard(); // Guard moves every round
 		}
-		System.out.println("Actions remaining: " + movesLeft);
+		out.println("Actions remaining: " + movesLeft);
 	}
 	
 	private void resetRound() {
-		System.out.println();
-		System.out.println("=== NEW ROUND ===");
-		movesLeft = MAX_MOVES_PER_ROUND;
+		out.println();
+		out.println("=== NEW ROUND ===");
+		movesLeft = movesPerRound;
 		moveGuard(); // Guard moves when round resets
-		System.out.println("Actions remaining: " + movesLeft);
-		System.out.println();
+		out.println("Actions remaining: " + movesLeft);
+		out.println();
 	}
 	
 	/**
@@ -941,11 +1567,14 @@ public class Game {
 	 * After the guard moves we immediately check for any encounter.
 	 */
 	private void moveGuard() {
-		guard.move();
-		System.out.println();
-		System.out.println("*** You hear footsteps... The Guard is on patrol! ***");
-		System.out.println("(" + guard.getLocationDescription() + ")");
-		System.out.println();
+		moveGuardOnce();
+		if (noise != null) {
+			noise.fade(); // noises die down every round
+		}
+		out.println();
+		out.println("*** You hear footsteps... The Guard is on patrol! ***");
+		out.println("(" + guard.getLocationDescription() + ")");
+		out.println();
 		
 		checkGuardEncounter();
 	}
@@ -957,118 +1586,334 @@ public class Game {
 	 * gets caught (game over).
 	 */
 	private void checkGuardEncounter() {
+		if (guard.getCurrentRoom() != currentRoom) {
+			return;
+		}
+		if (metrics != null) {
+			metrics.recordGuardEncounter();
+		}
+		if (!EngineEvents.encounterEnabled()) {
+			resolveEncounter();
+			return;
+		}
+		EngineEvents.Encounter event = new EngineEvents.Encounter();
+		event.set(sessionId, activeCommand, currentRoom);
+		event.begin();
+		try {
+			resolveEncounter();
+		} finally {
+			// A shot guard or a capture ended the game; otherwise the
+			// player stayed hidden or was let go in disguise
+			event.outcome = ending == Ending.COMBAT ? "shot" : ending == Ending.CAUGHT ? "caught"
+					: isHiding ? "hidden" : "disguise";
+			event.commit();
+		}
+	}
+
+	private void resolveEncounter() {
 		if (guard.getCurrentRoom() == currentRoom && !isHiding) {
 			// Check if player has both disguise, pistol AND bullets - shoot the guard!
-			if (hasDisguise && hasPistol() && hasBullets() && !guardShot) {
-				System.out.println();
-				System.out.println("*** The Guard enters the room! ***");
-				System.out.println("*** He sees you in the security uniform and approaches... ***");
-				System.out.println("*** You quickly pull out the pistol! ***");
-				System.out.println("*** *BANG!* You shoot the guard! ***");
-				System.out.println("*** The guard falls to the ground, unconscious! ***");
-				System.out.println("*** The way is clear - you can now escape freely! ***");
-				System.out.println();
+			if (hasDisguise && inventory.hasAll(pistolAndBullets) && !guardShot) {
+				out.println();
+				out.println("*** The Guard enters the room! ***");
+				out.println("*** He sees you in the security uniform and approaches... ***");
+				out.println("*** You quickly pull out the pistol! ***");
+				out.println("*** *BANG!* You shoot the guard! ***");
+				out.println("*** The guard falls to the ground, unconscious! ***");
+				out.println("*** The way is clear - you can now escape freely! ***");
+				out.println();
 				guardShot = true;
 				score += 200; // Big bonus for eliminating the guard!
-				System.out.println(">>> +200 POINTS for neutralizing the guard! Current score: " + score);
-				System.out.println();
-				System.out.println("========================================");
-				System.out.println("   CONGRATULATIONS! YOU ESCAPED!");
-				System.out.println("========================================");
-				System.out.println("With the guard neutralized, you calmly walk out!");
-				System.out.println("ESCAPE ROUTE: Combat Victory (Secret Route)");
-				System.out.println("FINAL SCORE: " + score + " points");
-				System.out.println("========================================");
-				System.out.println("Thank you for playing!");
-				System.exit(0);
+				out.println(">>> +200 POINTS for neutralizing the guard! Current score: " + score);
+				out.println();
+				out.println("========================================");
+				out.println("   CONGRATULATIONS! YOU ESCAPED!");
+				out.println("========================================");
+				out.println("With the guard neutralized, you calmly walk out!");
+				out.println("ESCAPE ROUTE: Combat Victory (Secret Route)");
+				out.println("FINAL SCORE: " + score + " points");
+				out.println("========================================");
+				out.println("Thank you for playing!");
+				endGame(Ending.COMBAT);
 			}
 			
 			// Check if player has disguise active (but no gun or bullets)
 			if (hasDisguise) {
-				System.out.println();
-				System.out.println("*** The Guard enters the room! ***");
-				System.out.println("*** He sees you in the security uniform... ***");
-				System.out.println("*** He nods at you - he thinks you're a colleague! ***");
-				System.out.println("*** The Guard continues his patrol... ***");
-				System.out.println("*** Your disguise has been used up! ***");
+				out.println();
+				out.println("*** The Guard enters the room! ***");
+				out.println("*** He sees you in the security uniform... ***");
+				out.println("*** He nods at you - he thinks you're a colleague! ***");
+				out.println("*** The Guard continues his patrol... ***");
+				out.println("*** Your disguise has been used up! ***");
 				hasDisguise = false; // Disguise consumed
 				return;
 			}
 			
-			System.out.println();
-			System.out.println("========================================");
-			System.out.println("        GAME OVER!");
-			System.out.println("========================================");
-			System.out.println("The Guard spotted you!");
-			System.out.println("You've been caught and escorted out.");
-			System.out.println("Better luck next time!");
-			System.out.println("========================================");
-			System.out.println("Final Score: " + score + " points");
-			System.out.println("========================================");
-			System.exit(0);
+			out.println();
+			out.println("========================================");
+			out.println("        GAME OVER!");
+			out.println("========================================");
+			out.println("The Guard spotted you!");
+			out.println("You've been caught and escorted out.");
+			out.println("Better luck next time!");
+			out.println("========================================");
+			out.println("Final Score: " + score + " points");
+			out.println("========================================");
+			endGame(Ending.CAUGHT);
 		} else if (guard.getCurrentRoom() == currentRoom && isHiding) {
-			System.out.println();
-			System.out.println("*** The Guard enters the room! ***");
-			System.out.println("*** You hold your breath in your hiding spot... ***");
-			System.out.println("*** The Guard looks around but doesn't see you! ***");
-			System.out.println("*** The Guard leaves the room and continues his patrol... ***");
+			out.println();
+			out.println("*** The Guard enters the room! ***");
+			out.println("*** You hold your breath in your hiding spot... ***");
+			out.println("*** The Guard looks around but doesn't see you! ***");
+			out.println("*** The Guard leaves the room and continues his patrol... ***");
 			score += 5; // Points for successfully hiding from guard
-			System.out.println(">>> +5 POINTS for hiding successfully! Current score: " + score);
-			guard.move(); // Guard moves to random adjacent room
-			System.out.println("*** He moved to: " + guard.getCurrentRoom().shortDescription() + " ***");
-			System.out.println();
+			out.println(">>> +5 POINTS for hiding successfully! Current score: " + score);
+			moveGuardOnce(); // Guard moves to random adjacent room
+			out.println("*** He moved to: " + guard.getCurrentRoom().shortDescription() + " ***");
+			out.println();
 		}
 	}
 	
-	private boolean hasPistol() {
-		for (Item item : inventory) {
-			if (item.getName().equalsIgnoreCase("pistol")) {
-				return true;
-			}
+	// The map without the positions of the player and the guard
+	private static final Screen MAP = new Screen(
+			"",
+			"========================================",
+			"            BUILDING MAP",
+			"========================================",
+			"",
+			"[Attic]",
+			"   |",
+			"   |",
+			"   |",
+			"[Library]---[Upper Corridor]-------[Boss Office]---------[Vault Room]",
+			"    |              |                                            |",
+			"    |              |                                            |",
+			"    |              |                                            |",
+			"[Cellar]------[Ground Corridor]---[Reception Hall]      [Security Room]",
+			"    |              |                     |                      |",
+			"    |              |                     |                      |",
+			"    |              |                     |                      |",
+			"[Boiler Room]-[Kitchen]------------[Cafeteria]--------[Surveillance Room]",
+			"    |              |                     |",
+			"    |              |                     |",
+			"    |              |                     |",
+			"[Hideout]------[Storage Room]-----[Outside Area]",
+			"");
+
+	/**
+	 * Display a simple ASCII map to help the player navigate. This map is
+	 * purely informational and does not change game state.
+	 */
+	private void showMap() {
+		print(MAP);
+		out.println("Your current location: " + currentRoom.shortDescription());
+		out.println("Guard location: " + guard.getCurrentRoom().shortDescription());
+		out.println("========================================");
+	}
+
+	/**
+	 * Write the complete state of this game as a compact, versioned
+	 * snapshot (about 60 bytes). Rooms, searchables and hiding spots are
+	 * stored as ids, the inventory and the game's WorldState as bitsets
+	 * over the ids of the shared World. Ids and bitset lengths are
+	 * varints (see writeVarInt), so small worlds take a byte per id and
+	 * any world still fits.
+	 *
+	 * The state of the random generator is stored as it is, so a restored
+	 * copy continues with the same random decisions as the live game,
+	 * which taking the snapshot leaves untouched.
+	 */
+	public byte[] writeSnapshot() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		try (DataOutputStream data = new DataOutputStream(bytes)) {
+			data.writeByte(SNAPSHOT_VERSION);
+			data.writeLong(seed);
+			data.writeLong(random.getState());
+
+			writeVarInt(data, currentRoom.getId());
+			data.writeByte(movesLeft);
+			data.writeInt(score);
+			writeVarInt(data, hiddenInVersteckCount);
+			int flags = 0;
+			if (isHiding) flags |= 1;
+			if (hasDisguise) flags |= 2;
+			if (hasEnergyDrink) flags |= 4;
+			if (guardShot) flags |= 8;
+			if (gameOver) flags |= 16;
+			// Bits 5 to 7: the ending plus one, 0 while the game runs
+			if (ending != null) flags |= (ending.ordinal() + 1) << 5;
+			data.writeByte(flags);
+			data.writeByte(awaiting.ordinal());
+			// Ids that may be missing are stored plus one, 0 for none
+			writeVarInt(data, currentRoom.getHideables().indexOf(currentRoom.getHideable(currentHidingSpot)) + 1);
+			writeVarInt(data, pendingSafe == null ? 0 : pendingSafe.getId() + 1);
+
+			writeBits(data, inventory.toBitSet());
+			writeBits(data, state.getSearchedBits());
+			writeBits(data, state.getNotesTakenBits());
+			writeBits(data, state.getOpenLockBits());
+			writeBits(data, state.getRevealedBits());
+
+			writeVarInt(data, guard.getCurrentRoom().getId());
+			writeVarInt(data, guard.getPreviousRoom() == null ? 0 : guard.getPreviousRoom().getId() + 1);
+			writeVarInt(data, guard.getPatrolIndex());
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not write snapshot", e);
 		}
-		return false;
+		return bytes.toByteArray();
 	}
-	
-	private boolean hasBullets() {
-		for (Item item : inventory) {
-			if (item.getName().equalsIgnoreCase("bullets")) {
-				return true;
+
+	/**
+	 * True if a snapshot holds all of this game, so restoreSnapshot gives
+	 * it back as it is. It does not hold the world (restored games play
+	 * in the standard one), a patrol route, a hunting guard's noise, a
+	 * changed number of actions per round or registered commands; games
+	 * with any of those are not hibernated (see SessionStore).
+	 */
+	public boolean isSnapshotComplete() {
+		return world == World.standard() && !guard.hasPatrolRoute() && noise == null
+				&& movesPerRound == MAX_MOVES_PER_ROUND && commands == BUILT_IN_COMMANDS;
+	}
+
+	/**
+	 * Rebuild a game of the standard world from a snapshot written by
+	 * writeSnapshot(). The restored game prints to the given output and
+	 * takes its input through handleLine(). Carried items are listed in
+	 * world order.
+	 *
+	 * @throws IOException when the snapshot is damaged or has an unknown version
+	 */
+	public static Game restoreSnapshot(byte[] snapshot, PrintStream out) throws IOException {
+		return restoreSnapshot(snapshot, out, World.standard());
+	}
+
+	/**
+	 * Same as restoreSnapshot(byte[], PrintStream) for a game played in
+	 * the given world.
+	 */
+	public static Game restoreSnapshot(byte[] snapshot, PrintStream out, World world) throws IOException {
+		DataInputStream data = new DataInputStream(new ByteArrayInputStream(snapshot));
+		int version = data.readByte();
+		if (version != SNAPSHOT_VERSION) {
+			throw new IOException("Unknown snapshot version " + version);
+		}
+		Game game = new Game(null, out, data.readLong(), world);
+		game.random.setState(data.readLong());
+
+		game.currentRoom = world.getRoom(readVarInt(data));
+		game.movesLeft = data.readByte();
+		game.score = data.readInt();
+		game.hiddenInVersteckCount = readVarInt(data);
+		int flags = data.readByte();
+		game.isHiding = (flags & 1) != 0;
+		game.hasDisguise = (flags & 2) != 0;
+		game.hasEnergyDrink = (flags & 4) != 0;
+		game.guardShot = (flags & 8) != 0;
+		game.gameOver = (flags & 16) != 0;
+		int ending = (flags >>> 5) & 7;
+		game.ending = ending == 0 ? null : Ending.values()[ending - 1];
+		game.awaiting = Awaiting.values()[data.readByte()];
+		int hidingSpot = readVarInt(data) - 1;
+		game.currentHidingSpot = hidingSpot < 0 ? "" : game.currentRoom.getHideables().get(hidingSpot).getName();
+		int pendingSafe = readVarInt(data) - 1;
+		game.pendingSafe = pendingSafe < 0 ? null : world.getSearchable(pendingSafe);
+
+		BitSet carried = readBits(data);
+		for (int i = carried.nextSetBit(0); i >= 0; i = carried.nextSetBit(i + 1)) {
+			game.inventory.add(world.getItem(i));
+		}
+		game.state.getSearchedBits().or(readBits(data));
+		game.state.getNotesTakenBits().or(readBits(data));
+		game.state.getOpenLockBits().or(readBits(data));
+		game.state.getRevealedBits().or(readBits(data));
+
+		Room guardRoom = world.getRoom(readVarInt(data));
+		int previous = readVarInt(data) - 1;
+		game.guard.restorePosition(guardRoom, previous < 0 ? null : world.getRoom(previous), readVarInt(data));
+		return game;
+	}
+
+	private static void writeBits(DataOutputStream data, BitSet bits) throws IOException {
+		byte[] bytes = bits.toByteArray();
+		writeVarInt(data, bytes.length);
+		data.write(bytes);
+	}
+
+	private static BitSet readBits(DataInputStream data) throws IOException {
+		byte[] bytes = new byte[readVarInt(data)];
+		data.readFully(bytes);
+		return BitSet.valueOf(bytes);
+	}
+
+	/**
+	 * Write a number that is not negative in as few bytes as it needs,
+	 * seven bits per byte with the high bit set on all but the last.
+	 */
+	private static void writeVarInt(DataOutputStream data, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			data.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		data.writeByte(value);
+	}
+
+	private static int readVarInt(DataInputStream data) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = data.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
 			}
 		}
-		return false;
+		throw new IOException("Damaged snapshot: varint too long");
 	}
-	
+
 	/**
-	 * Display a simple ASCII map to help the player navigate. This map is
-	 * purely informational and does not change game state.
+	 * The same information as a snapshot, as a map of plain Java values.
+	 * Only used to compare the snapshot format with generic formats (see
+	 * the benchmarks) and restored games with their originals.
 	 */
-	private void showMap() {
-		System.out.println();
-		System.out.println("========================================");
-		System.out.println("            BUILDING MAP");
-		System.out.println("========================================");
-		System.out.println();
-		System.out.println("[Attic]");
-		System.out.println("   |");
-		System.out.println("   |");
-		System.out.println("   |");
-		System.out.println("[Library]---[Upper Corridor]-------[Boss Office]---------[Vault Room]");
-		System.out.println("    |              |                                            |");
-		System.out.println("    |              |                                            |");
-		System.out.println("    |              |                                            |");
-		System.out.println("[Cellar]------[Ground Corridor]---[Reception Hall]      [Security Room]");
-		System.out.println("    |              |                     |                      |");
-		System.out.println("    |              |                     |                      |");
-		System.out.println("    |              |                     |                      |");
-		System.out.println("[Boiler Room]-[Kitchen]------------[Cafeteria]--------[Surveillance Room]");
-		System.out.println("    |              |                     |");
-		System.out.println("    |              |                     |");
-		System.out.println("    |              |                     |");
-		System.out.println("[Hideout]------[Storage Room]-----[Outside Area]");
-		System.out.println();
-		System.out.println("Your current location: " + currentRoom.shortDescription());
-		System.out.println("Guard location: " + guard.getCurrentRoom().shortDescription());
-		System.out.println("========================================");
+	public Map<String, Object> toStateMap() {
+		Map<String, Object> state = new LinkedHashMap<>();
+		state.put("seed", seed);
+		state.put("room", currentRoom.shortDescription());
+		state.put("movesLeft", movesLeft);
+		state.put("score", score);
+		state.put("hiddenInVersteckCount", hiddenInVersteckCount);
+		state.put("tresorDoorOpen", vaultHandle != null && this.state.isOpen(vaultHandle.getOpensLock()));
+		state.put("teleportMachineRevealed", isTeleportMachineRevealed());
+		state.put("isHiding", isHiding);
+		state.put("currentHidingSpot", currentHidingSpot);
+		state.put("hasDisguise", hasDisguise);
+		state.put("hasEnergyDrink", hasEnergyDrink);
+		state.put("guardShot", guardShot);
+		state.put("gameOver", gameOver);
+		state.put("ending", ending == null ? null : ending.name());
+		state.put("awaiting", awaiting.name());
+		ArrayList<Boolean> searched = new ArrayList<>();
+		for (int i = 0; i < world.getSearchableCount(); i++) {
+			searched.add(this.state.isSearched(world.getSearchable(i)));
+		}
+		state.put("searched", searched);
+		ArrayList<String> items = new ArrayList<>();
+		for (Item item : inventory) {
+			items.add(item.getName());
+		}
+		state.put("inventory", items);
+		ArrayList<Integer> notes = new ArrayList<>();
+		for (int i = 0; i < world.getRoomCount(); i++) {
+			int left = 0;
+			for (Note note : world.getRoom(i).getNotes()) {
+				if (!this.state.isTaken(note)) {
+					left++;
+				}
+			}
+			notes.add(left);
+		}
+		state.put("notes", notes);
+		state.put("guardRoom", guard.getCurrentRoom().shortDescription());
+		state.put("guardPreviousRoom", guard.getPreviousRoom() == null ? null : guard.getPreviousRoom().shortDescription());
+		return state;
 	}
 }
-
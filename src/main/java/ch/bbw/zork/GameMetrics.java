@@ -0,0 +1,298 @@
+package ch.bbw.zork;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * GameMetrics - what the games of a server did: how long every command
+ * word took (a LatencyHistogram each), how often the guard met a player,
+ * players hid and searched, how games ended, and how many commands every
+ * session sends per second.
+ *
+ * Games record into it when they were given one (Game.setMetrics); a
+ * game without metrics measures nothing. All counters are LongAdders
+ * and the histograms are striped, so the sessions of a server never
+ * wait for each other to record. The metrics can be read over JMX
+ * (registerMBeans) and in the Prometheus text format (MetricsEndpoint).
+ */
+public class GameMetrics implements GameMetricsMXBean {
+
+	// System property naming the port of the metrics endpoint of a server
+	public static final String PORT_PROPERTY = "zork.metrics.port";
+	// The command word lines without a known command are counted under
+	public static final String UNKNOWN_COMMAND = "unknown";
+	public static final String DOMAIN = "ch.bbw.zork";
+
+	private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+	private final LongAdder guardEncounters = new LongAdder();
+	private final LongAdder hides = new LongAdder();
+	private final LongAdder searches = new LongAdder();
+	private final LongAdder[] endings = new LongAdder[Ending.values().length];
+	private final Map<Integer, SessionStats> sessions = new ConcurrentHashMap<>();
+	// Where the latency beans of new command words are registered (if anywhere)
+	private volatile MBeanServer server;
+
+	public GameMetrics() {
+		for (int i = 0; i < endings.length; i++) {
+			endings[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Record that a command took the given time.
+	 *
+	 * @param commandWord the command, or null for a line with no known command
+	 */
+	public void recordCommand(SessionStats session, String commandWord, long nanos) {
+		String word = commandWord == null ? UNKNOWN_COMMAND : commandWord;
+		LatencyHistogram histogram = latencies.get(word);
+		if (histogram == null) {
+			histogram = latencies.computeIfAbsent(word, this::newHistogram);
+		}
+		histogram.record(nanos);
+		if (session != null) {
+			session.commands.increment();
+		}
+	}
+
+	public void recordGuardEncounter() {
+		guardEncounters.increment();
+	}
+
+	public void recordHide() {
+		hides.increment();
+	}
+
+	public void recordSearch() {
+		searches.increment();
+	}
+
+	public void recordEnding(Ending ending) {
+		endings[ending.ordinal()].increment();
+	}
+
+	/**
+	 * Start counting the commands of a session (or continue, if it is
+	 * already counted, e.g. after its game woke up from hibernation).
+	 */
+	public SessionStats openSession(int sessionId) {
+		return sessions.computeIfAbsent(sessionId, id -> new SessionStats(System.nanoTime()));
+	}
+
+	/**
+	 * Stop counting the commands of a session (the player left).
+	 */
+	public void closeSession(int sessionId) {
+		sessions.remove(sessionId);
+	}
+
+	/**
+	 * The latency of every command word seen so far, by word.
+	 */
+	public Map<String, LatencyHistogram> getLatencies() {
+		return Collections.unmodifiableMap(new TreeMap<>(latencies));
+	}
+
+	@Override
+	public long getCommands() {
+		long commands = 0;
+		for (LatencyHistogram histogram : latencies.values()) {
+			commands += histogram.getCount();
+		}
+		return commands;
+	}
+
+	@Override
+	public long getGuardEncounters() {
+		return guardEncounters.sum();
+	}
+
+	@Override
+	public long getHides() {
+		return hides.sum();
+	}
+
+	@Override
+	public long getSearches() {
+		return searches.sum();
+	}
+
+	public long getEndingCount(Ending ending) {
+		return endings[ending.ordinal()].sum();
+	}
+
+	@Override
+	public long getEscapes() {
+		long escapes = 0;
+		for (Ending ending : Ending.values()) {
+			if (ending.isEscape()) {
+				escapes += getEndingCount(ending);
+			}
+		}
+		return escapes;
+	}
+
+	@Override
+	public long getCatches() {
+		return getEndingCount(Ending.CAUGHT);
+	}
+
+	@Override
+	public Map<String, Long> getEndings() {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		for (Ending ending : Ending.values()) {
+			counts.put(ending.name().toLowerCase(Locale.ROOT), getEndingCount(ending));
+		}
+		return counts;
+	}
+
+	@Override
+	public int getActiveSessions() {
+		return sessions.size();
+	}
+
+	/**
+	 * The counts of every active session, by session id.
+	 */
+	public Map<Integer, SessionStats> getSessions() {
+		return Collections.unmodifiableMap(new TreeMap<>(sessions));
+	}
+
+	@Override
+	public Map<String, Double> getSessionCommandRates() {
+		Map<String, Double> rates = new TreeMap<>();
+		long now = System.nanoTime();
+		for (Map.Entry<Integer, SessionStats> entry : sessions.entrySet()) {
+			rates.put(entry.getKey().toString(), entry.getValue().getCommandRate(now));
+		}
+		return rates;
+	}
+
+	/**
+	 * Show these metrics over JMX: ch.bbw.zork:type=GameMetrics, and one
+	 * ch.bbw.zork:type=CommandLatency bean per command word (also for
+	 * command words first used later).
+	 */
+	public void registerMBeans(MBeanServer server) throws JMException {
+		server.registerMBean(this, new ObjectName(DOMAIN + ":type=GameMetrics"));
+		this.server = server;
+		for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+			registerLatency(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Same as registerMBeans, on the platform MBean server (the one
+	 * JConsole and VisualVM show).
+	 */
+	public void registerMBeans() throws JMException {
+		registerMBeans(ManagementFactory.getPlatformMBeanServer());
+	}
+
+	private LatencyHistogram newHistogram(String word) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		if (server != null) {
+			registerLatency(word, histogram);
+		}
+		return histogram;
+	}
+
+	private void registerLatency(String word, LatencyHistogram histogram) {
+		try {
+			ObjectName name = new ObjectName(DOMAIN + ":type=CommandLatency,command=" + ObjectName.quote(word));
+			if (!server.isRegistered(name)) {
+				server.registerMBean(new CommandLatency(word, histogram), name);
+			}
+		} catch (JMException e) {
+			// the latency is still recorded, it is just not shown over JMX
+		}
+	}
+
+	/**
+	 * The commands of one session.
+	 */
+	public static final class SessionStats {
+
+		private final long startNanos;
+		private final LongAdder commands = new LongAdder();
+
+		private SessionStats(long startNanos) {
+			this.startNanos = startNanos;
+		}
+
+		public long getCommands() {
+			return commands.sum();
+		}
+
+		/**
+		 * Commands per second since the session started.
+		 */
+		public double getCommandRate(long nowNanos) {
+			long elapsed = nowNanos - startNanos;
+			return elapsed <= 0 ? 0 : commands.sum() * 1e9 / elapsed;
+		}
+	}
+
+	/**
+	 * The JMX view of one command's histogram.
+	 */
+	private static final class CommandLatency implements CommandLatencyMXBean {
+
+		private final String command;
+		private final LatencyHistogram histogram;
+
+		CommandLatency(String command, LatencyHistogram histogram) {
+			this.command = command;
+			this.histogram = histogram;
+		}
+
+		@Override
+		public String getCommand() {
+			return command;
+		}
+
+		@Override
+		public long getCount() {
+			return histogram.getCount();
+		}
+
+		@Override
+		public double getMeanMicros() {
+			return histogram.snapshot().getMean() / 1000.0;
+		}
+
+		@Override
+		public double getP50Micros() {
+			return micros(histogram.snapshot().getPercentile(0.50));
+		}
+
+		@Override
+		public double getP99Micros() {
+			return micros(histogram.snapshot().getPercentile(0.99));
+		}
+
+		@Override
+		public double getP999Micros() {
+			return micros(histogram.snapshot().getPercentile(0.999));
+		}
+
+		@Override
+		public double getMaxMicros() {
+			return micros(histogram.snapshot().getMax());
+		}
+
+		private static double micros(long nanos) {
+			return nanos / 1000.0;
+		}
+	}
+}
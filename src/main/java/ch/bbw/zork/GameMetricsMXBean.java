@@ -0,0 +1,36 @@
+package ch.bbw.zork;
+
+import java.util.Map;
+
+/**
+ * GameMetricsMXBean - what GameMetrics shows over JMX (as
+ * ch.bbw.zork:type=GameMetrics). The latency of every command is a
+ * CommandLatencyMXBean of its own.
+ */
+public interface GameMetricsMXBean {
+
+	long getCommands();
+
+	long getGuardEncounters();
+
+	long getHides();
+
+	long getSearches();
+
+	long getEscapes();
+
+	long getCatches();
+
+	/**
+	 * The number of games by how they ended (gate, roof, teleport, ...).
+	 */
+	Map<String, Long> getEndings();
+
+	int getActiveSessions();
+
+	/**
+	 * Commands per second of every active session since it started, by
+	 * session id.
+	 */
+	Map<String, Double> getSessionCommandRates();
+}
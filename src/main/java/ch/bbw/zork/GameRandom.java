@@ -0,0 +1,57 @@
+package ch.bbw.zork;
+
+import java.util.Random;
+
+/**
+ * GameRandom - the random generator of a game, whose state can be read
+ * and set again without drawing from it.
+ *
+ * It gives exactly the numbers of a java.util.Random with the same seed
+ * (the same 48-bit linear congruential generator), but keeps the state
+ * in a plain field: a snapshot stores the state as it is (see
+ * Game.writeSnapshot), so taking one changes nothing in the game it is
+ * taken from. A game is only ever used by one thread at a time, so the
+ * generator is not thread-safe.
+ */
+final class GameRandom extends Random {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+
+	// Set by setSeed, which Random's constructor calls
+	private long state;
+
+	GameRandom(long seed) {
+		super(seed);
+	}
+
+	@Override
+	public synchronized void setSeed(long seed) {
+		state = (seed ^ MULTIPLIER) & MASK;
+		// Lets Random forget a buffered nextGaussian
+		super.setSeed(seed);
+	}
+
+	@Override
+	protected int next(int bits) {
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+		return (int) (state >>> (48 - bits));
+	}
+
+	/**
+	 * The state of the generator, for setState.
+	 */
+	long getState() {
+		return state;
+	}
+
+	/**
+	 * Continue with the numbers that followed getState.
+	 */
+	void setState(long state) {
+		this.state = state & MASK;
+	}
+}
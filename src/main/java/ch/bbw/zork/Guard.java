@@ -8,7 +8,9 @@ import java.util.Random;
  * Guard - a simple moving enemy that patrols the building.
  *
  * The guard can either follow a predefined patrol route or move
- * randomly between adjacent rooms. Some rooms can be marked as
+ * randomly between adjacent rooms. A guard given a NoiseField hunts:
+ * while he hears the player he walks towards the noise instead. Some
+ * rooms can be marked as
  * forbidden (the guard will not enter them). To make movement feel
  * more natural we remember the previous room and avoid immediately
  * stepping back when other options are available.
@@ -21,6 +23,8 @@ public class Guard {
 	private Room currentRoom;
 	// Random number generator used for random movement
 	private Random random;
+	// The game's changes to the world (opened doors); null for none
+	private WorldState state;
 	// Optional patrol route: if populated the guard follows these rooms
 	private ArrayList<Room> patrolRoute;
 	// Index into the patrol route (when used)
@@ -29,11 +33,34 @@ public class Guard {
 	private ArrayList<Room> forbiddenRooms; // Rooms the guard cannot enter
 	// Remember the last room to reduce immediate backtracking
 	private Room previousRoom; // remember last room to avoid immediate backtracking
+	// The noise the guard hunts, or null if he does not hunt
+	private NoiseField noise;
+	// True if the last move followed the noise
+	private boolean hunted;
+	// Scratch space for the rooms the guard can move to
+	private final Room[] candidates = new Room[Direction.COUNT];
 	
 	public Guard(String name, Room startRoom) {
+		this(name, startRoom, new Random());
+	}
+	
+	/**
+	 * Create a guard that takes its random decisions from the given
+	 * generator, so a seeded game plays out the same way every time.
+	 */
+	public Guard(String name, Room startRoom, Random random) {
+		this(name, startRoom, random, null);
+	}
+	
+	/**
+	 * Create a guard that only uses the exits the game's WorldState has
+	 * opened (locked doors stay closed for him too).
+	 */
+	public Guard(String name, Room startRoom, Random random, WorldState state) {
 		this.name = name;
+		this.state = state;
 		this.currentRoom = startRoom;
-		this.random = new Random();
+		this.random = random;
 		this.patrolRoute = new ArrayList<>();
 		this.patrolIndex = 0;
 		this.forbiddenRooms = new ArrayList<>();
@@ -48,19 +75,81 @@ public class Guard {
 		return currentRoom;
 	}
 	
+	public Room getPreviousRoom() {
+		return previousRoom;
+	}
+	
+	public int getPatrolIndex() {
+		return patrolIndex;
+	}
+	
+	/**
+	 * Put the guard back to a saved position (used when a game is restored).
+	 */
+	public void restorePosition(Room currentRoom, Room previousRoom, int patrolIndex) {
+		this.currentRoom = currentRoom;
+		this.previousRoom = previousRoom;
+		this.patrolIndex = patrolIndex;
+	}
+	
 	public void setPatrolRoute(ArrayList<Room> route) {
 		this.patrolRoute = route;
 		this.patrolIndex = 0;
 	}
 	
+	public boolean hasPatrolRoute() {
+		return !patrolRoute.isEmpty();
+	}
+
 	public void setForbiddenRoom(Room room) {
 		this.forbiddenRooms.add(room);
 	}
+
+	/**
+	 * Let the guard hunt: whenever he hears the noise of the field he
+	 * walks one room closer to it, otherwise he moves as before. Many
+	 * guards can share one field. Pass null to stop hunting.
+	 */
+	public void setNoiseField(NoiseField noise) {
+		this.noise = noise;
+	}
+
+	public NoiseField getNoiseField() {
+		return noise;
+	}
 	
 	/**
 	 * Move the guard to the next room in patrol route, or randomly if no route set
 	 */
 	public void move() {
+		move(0, null);
+	}
+
+	/**
+	 * Same as move(), recording a GuardMove event for the given session
+	 * and command when a flight recording asks for one.
+	 */
+	void move(int sessionId, String command) {
+		if (!EngineEvents.guardMoveEnabled()) {
+			step();
+			return;
+		}
+		EngineEvents.GuardMove event = new EngineEvents.GuardMove();
+		event.begin();
+		Room from = currentRoom;
+		step();
+		event.set(sessionId, command, currentRoom);
+		event.from = from.shortDescription();
+		event.patrol = !patrolRoute.isEmpty();
+		event.hunting = hunted;
+		event.commit();
+	}
+
+	private void step() {
+		hunted = noise != null && noise.isHeardIn(currentRoom) && moveTowardsNoise();
+		if (hunted) {
+			return;
+		}
 		if (!patrolRoute.isEmpty()) {
 			// Follow patrol route
 			patrolIndex = (patrolIndex + 1) % patrolRoute.size();
@@ -73,29 +162,75 @@ public class Guard {
 	}
 	
 	private void moveRandomly() {
-		// Get all possible exits from current room
-		ArrayList<Room> possibleRooms = new ArrayList<>();
-		
-		Room north = currentRoom.nextRoom("north");
-		Room east = currentRoom.nextRoom("east");
-		Room south = currentRoom.nextRoom("south");
-		Room west = currentRoom.nextRoom("west");
-		
-		if (north != null && !forbiddenRooms.contains(north)) possibleRooms.add(north);
-		if (east != null && !forbiddenRooms.contains(east)) possibleRooms.add(east);
-		if (south != null && !forbiddenRooms.contains(south)) possibleRooms.add(south);
-		if (west != null && !forbiddenRooms.contains(west)) possibleRooms.add(west);
+		// Collect the possible exits (north, east, south, west) into a
+		// reused array, so moving allocates nothing
+		Room[] possibleRooms = candidates;
+		int count = 0;
+		for (int d = 0; d < Direction.COUNT; d++) {
+			Room next = nextRoom(Direction.get(d));
+			if (next != null && !forbiddenRooms.contains(next)) {
+				possibleRooms[count++] = next;
+			}
+		}
 		
 		// Move to a random adjacent room
-		if (!possibleRooms.isEmpty()) {
+		if (count > 0) {
 			// Avoid immediately moving back to the previous room when possible
-			if (previousRoom != null && possibleRooms.size() > 1) {
-				possibleRooms.remove(previousRoom);
+			if (previousRoom != null && count > 1) {
+				count = remove(possibleRooms, count, previousRoom);
 			}
-			int randomIndex = random.nextInt(possibleRooms.size());
+			int randomIndex = random.nextInt(count);
 			previousRoom = currentRoom;
-			currentRoom = possibleRooms.get(randomIndex);
+			currentRoom = possibleRooms[randomIndex];
+		}
+	}
+	
+	/**
+	 * Walk to the neighbouring room closest to the noise, if one is
+	 * closer than this one. Ties go to the first direction, so hunting
+	 * takes nothing from the random generator.
+	 *
+	 * @return true if the guard moved
+	 */
+	private boolean moveTowardsNoise() {
+		Room closest = null;
+		int closestDistance = noise.getDistance(currentRoom);
+		for (int d = 0; d < Direction.COUNT; d++) {
+			Room next = nextRoom(Direction.get(d));
+			if (next == null || forbiddenRooms.contains(next)) {
+				continue;
+			}
+			int distance = noise.getDistance(next);
+			if (distance >= 0 && distance < closestDistance) {
+				closest = next;
+				closestDistance = distance;
+			}
 		}
+		if (closest == null) {
+			return false;
+		}
+		previousRoom = currentRoom;
+		currentRoom = closest;
+		return true;
+	}
+
+	/**
+	 * Remove the first occurrence of a room from the first count entries.
+	 *
+	 * @return the new count
+	 */
+	private static int remove(Room[] rooms, int count, Room room) {
+		for (int i = 0; i < count; i++) {
+			if (rooms[i] == room) {
+				System.arraycopy(rooms, i + 1, rooms, i, count - i - 1);
+				return count - 1;
+			}
+		}
+		return count;
+	}
+	
+	private Room nextRoom(Direction direction) {
+		return state == null ? currentRoom.nextRoom(direction) : state.nextRoom(currentRoom, direction);
 	}
 	
 	public String getLocationDescription() {
@@ -0,0 +1,171 @@
+package ch.bbw.zork;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * Inventory - the items a player is carrying.
+ *
+ * The inventory is a bitset over the World's item types (see
+ * World.getItemType), so "has the player a crowbar?" or "a pistol and
+ * bullets?" is a single mask operation: one long for up to 64 item
+ * names, an array of longs for larger worlds. Ask the World for the
+ * masks (getItemMask, getRequiredItems) once and keep them.
+ *
+ * Which items are carried is kept as a second bitset over item ids,
+ * and the ids in pickup order for listing them.
+ */
+public class Inventory implements Iterable<Item> {
+
+	private final World world;
+	// Bits of the carried item types and of the carried item ids
+	private final long[] types;
+	private final long[] carried;
+	// Ids of the carried items in pickup order
+	private int[] order = new int[8];
+	private int count;
+
+	public Inventory(World world) {
+		this.world = world;
+		// One bit more than there are types (see World.getItemMask)
+		this.types = new long[world.getItemTypeCount() / 64 + 1];
+		this.carried = new long[Math.max(1, (world.getItemCount() + 63) / 64)];
+	}
+
+	/**
+	 * Add an item. Adding an item that is already carried does nothing.
+	 */
+	public void add(Item item) {
+		int id = item.getId();
+		if (isSet(carried, id)) {
+			return;
+		}
+		carried[id >>> 6] |= 1L << id;
+		types[item.getTypeId() >>> 6] |= 1L << item.getTypeId();
+		if (count == order.length) {
+			order = Arrays.copyOf(order, count * 2);
+		}
+		order[count++] = id;
+	}
+
+	/**
+	 * Remove an item (e.g. after it was used up).
+	 */
+	public void remove(Item item) {
+		int id = item.getId();
+		if (!isSet(carried, id)) {
+			return;
+		}
+		carried[id >>> 6] &= ~(1L << id);
+		boolean sameType = false;
+		for (int i = 0, j = 0; i < count; i++) {
+			if (order[i] != id) {
+				sameType |= world.getItem(order[i]).getTypeId() == item.getTypeId();
+				order[j++] = order[i];
+			}
+		}
+		count--;
+		if (!sameType) {
+			types[item.getTypeId() >>> 6] &= ~(1L << item.getTypeId());
+		}
+	}
+
+	/**
+	 * True if the player carries an item of any type in the mask.
+	 */
+	public boolean hasAny(long[] mask) {
+		int words = Math.min(mask.length, types.length);
+		for (int i = 0; i < words; i++) {
+			if ((types[i] & mask[i]) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * True if the player carries an item of every type in the mask.
+	 */
+	public boolean hasAll(long[] mask) {
+		for (int i = 0; i < mask.length; i++) {
+			long word = i < types.length ? types[i] : 0;
+			if ((word & mask[i]) != mask[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean has(String name) {
+		int type = world.getItemType(name);
+		return type >= 0 && isSet(types, type);
+	}
+
+	/**
+	 * The first carried item with the given name (ignoring case), or null.
+	 */
+	public Item get(String name) {
+		int type = world.getItemType(name);
+		if (type < 0 || !isSet(types, type)) {
+			return null;
+		}
+		for (int i = 0; i < count; i++) {
+			Item item = world.getItem(order[i]);
+			if (item.getTypeId() == type) {
+				return item;
+			}
+		}
+		return null;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * The ids of the carried items (e.g. for a snapshot).
+	 */
+	public BitSet toBitSet() {
+		return BitSet.valueOf(carried);
+	}
+
+	/**
+	 * The carried items in pickup order.
+	 */
+	@Override
+	public Iterator<Item> iterator() {
+		return new Iterator<Item>() {
+			private int next;
+
+			@Override
+			public boolean hasNext() {
+				return next < count;
+			}
+
+			@Override
+			public Item next() {
+				if (next >= count) {
+					throw new NoSuchElementException();
+				}
+				return world.getItem(order[next++]);
+			}
+		};
+	}
+
+	private static boolean isSet(long[] bits, int index) {
+		return (bits[index >>> 6] & (1L << index)) != 0;
+	}
+
+	// Names are compared in lower case. Lower-case names (like all
+	// names of the standard building) are returned without a copy.
+	static String key(String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+}
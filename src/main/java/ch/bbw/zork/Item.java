@@ -8,6 +8,8 @@ package ch.bbw.zork;
  */
 public class Item {
     
+    private int id;
+    private int typeId;
     private String name;
     private String description;
     
@@ -16,6 +18,25 @@ public class Item {
         this.description = description;
     }
     
+    public int getId() {
+        // Number of this object in its World
+        return id;
+    }
+    
+    void setId(int id) {
+        this.id = id;
+    }
+    
+    public int getTypeId() {
+        // Number of this item's name in its World; items of the same
+        // name share it (see Inventory)
+        return typeId;
+    }
+    
+    void setTypeId(int typeId) {
+        this.typeId = typeId;
+    }
+    
     public String getName() {
         // Return the machine-friendly name used in commands
         return name;
@@ -0,0 +1,100 @@
+package ch.bbw.zork;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * JournalReader - scans the segment files written by SessionJournal.
+ *
+ * Segments are mapped read-only and every record is handed out as a
+ * slice of the mapping, so scanning millions of games copies nothing
+ * onto the heap. A handler that wants to keep a payload after its call
+ * has to copy it, because the slice is only valid during the scan.
+ *
+ * SessionJournal moves the segments no open session needs any more to
+ * an archive directory: scan reads the segments recovery needs,
+ * scanHistory every record ever written (e.g. for analytics).
+ */
+public class JournalReader {
+
+	/**
+	 * Receives the records of a journal in the order they were written.
+	 */
+	public interface RecordHandler {
+		/**
+		 * @param key     the session the record belongs to (see SessionJournal.key)
+		 * @param type    SessionJournal.SNAPSHOT, LINE, END, RESUME or DETACH
+		 * @param payload the record's bytes (position 0 to limit)
+		 */
+		void record(long key, byte type, ByteBuffer payload);
+	}
+
+	/**
+	 * Hand every record of every live segment in the directory to the
+	 * handler.
+	 */
+	public static void scan(File directory, RecordHandler handler) throws IOException {
+		scan(segments(directory), handler);
+	}
+
+	/**
+	 * Hand every record of the journal to the handler: the archived
+	 * segments first, then the live ones.
+	 */
+	public static void scanHistory(File directory, RecordHandler handler) throws IOException {
+		scan(segments(new File(directory, SessionJournal.ARCHIVE_DIRECTORY)), handler);
+		scan(segments(directory), handler);
+	}
+
+	private static void scan(File[] files, RecordHandler handler) throws IOException {
+		for (File file : files) {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				int position = 0;
+				while (position + SessionJournal.HEADER_SIZE <= segment.limit()) {
+					byte type = segment.get(position);
+					if (type == 0) {
+						break; // nothing (complete) written after this point
+					}
+					long key = segment.getLong(position + 1);
+					int length = segment.getInt(position + 9);
+					int start = position + SessionJournal.HEADER_SIZE;
+
+					ByteBuffer payload = segment.duplicate();
+					payload.limit(start + length).position(start);
+					handler.record(key, type, payload.slice());
+					position = start + length;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The segment files of a journal directory, oldest first.
+	 */
+	static File[] segments(File directory) {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(SessionJournal.SEGMENT_SUFFIX));
+		if (files == null) {
+			return new File[0];
+		}
+		// Names are zero-padded numbers, so name order is write order
+		Arrays.sort(files);
+		return files;
+	}
+
+	/**
+	 * Position right behind the last complete record of a segment.
+	 */
+	static int endOfRecords(ByteBuffer segment) {
+		int position = 0;
+		while (position + SessionJournal.HEADER_SIZE <= segment.limit() && segment.get(position) != 0) {
+			position += SessionJournal.HEADER_SIZE + segment.getInt(position + 9);
+		}
+		return position;
+	}
+}
@@ -0,0 +1,154 @@
+package ch.bbw.zork;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram - counts durations (in nanoseconds) in buckets, so
+ * percentiles like p50, p99 and p999 can be read at any time.
+ *
+ * The buckets are log-linear like those of an HDR histogram: values
+ * below 16 get a bucket each, and every power of two above is split
+ * into 16 buckets, so a bucket is never wider than 1/16 of its values
+ * and a percentile is off by at most 6.25%. Values up to 2^40 ns (about
+ * 18 minutes) fit; longer ones land in the last bucket.
+ *
+ * Recording takes no lock. The counts are striped over several arrays
+ * picked by thread, so sessions on different cores rarely touch the
+ * same counter; reading adds the stripes up.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 4;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int MAX_SHIFT = 40 - SUB_BITS;
+	static final int BUCKETS = (MAX_SHIFT + 2) * SUB_COUNT;
+	// A power of two of at least the number of cores (at most 64)
+	private static final int STRIPES = Integer.highestOneBit(Math.min(64, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+
+	private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	public LatencyHistogram() {
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new AtomicLongArray(BUCKETS);
+		}
+	}
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		stripes[stripe()].incrementAndGet(bucketOf(nanos));
+		count.increment();
+		sum.add(nanos);
+		max.accumulate(nanos);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * The counts as they are now. Values recorded while the snapshot is
+	 * taken may or may not be part of it.
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		for (AtomicLongArray stripe : stripes) {
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] += stripe.get(i);
+			}
+		}
+		long total = 0;
+		for (long c : counts) {
+			total += c;
+		}
+		return new Snapshot(counts, total, sum.sum(), max.get());
+	}
+
+	// Spread thread ids over the stripes (ids are often consecutive)
+	private static int stripe() {
+		return (int) ((Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) >>> 58) & (STRIPES - 1);
+	}
+
+	static int bucketOf(long nanos) {
+		if (nanos < SUB_COUNT) {
+			return (int) nanos;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BITS;
+		if (shift > MAX_SHIFT) {
+			return BUCKETS - 1;
+		}
+		return (shift + 1) * SUB_COUNT + (int) (nanos >>> shift) - SUB_COUNT;
+	}
+
+	// The largest value that falls into the bucket
+	static long highestValueOf(int bucket) {
+		if (bucket < SUB_COUNT) {
+			return bucket;
+		}
+		int shift = bucket / SUB_COUNT - 1;
+		long lowest = (long) (SUB_COUNT + bucket % SUB_COUNT) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * The counts of a histogram at one point in time.
+	 */
+	public static final class Snapshot {
+
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		private Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * The sum of all values, in nanoseconds.
+		 */
+		public long getSum() {
+			return sum;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		public double getMean() {
+			return count == 0 ? 0 : sum / (double) count;
+		}
+
+		/**
+		 * The value below which the given fraction of the values lie
+		 * (e.g. 0.99 for p99), in nanoseconds; 0 when nothing was recorded.
+		 */
+		public long getPercentile(double fraction) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(fraction * count));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(highestValueOf(i), max);
+				}
+			}
+			return max;
+		}
+	}
+}
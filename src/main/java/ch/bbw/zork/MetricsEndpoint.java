@@ -0,0 +1,138 @@
+package ch.bbw.zork;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * MetricsEndpoint - serves GameMetrics over HTTP in the Prometheus text
+ * format, on the JDK's built-in HttpServer:
+ *
+ *   curl http://localhost:9400/metrics
+ *
+ * Command latencies are summaries (p50, p99 and p999 plus sum and count,
+ * in seconds), the game events are counters and the sessions' command
+ * rates are gauges. Every request renders the metrics as they are at
+ * that moment; nothing is kept between requests.
+ */
+public class MetricsEndpoint {
+
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+
+	private final GameMetrics metrics;
+	private final HttpServer server;
+
+	/**
+	 * Listen on the given port (0 picks a free one) of the local host.
+	 * Call start() to serve requests.
+	 */
+	public MetricsEndpoint(GameMetrics metrics, int port) throws IOException {
+		this.metrics = metrics;
+		this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		server.createContext("/metrics", this::handle);
+	}
+
+	/**
+	 * Serve requests on a thread of the HttpServer's own.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equals("GET")) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			byte[] body = format(metrics).getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * The metrics in the Prometheus text format.
+	 */
+	public static String format(GameMetrics metrics) {
+		StringBuilder text = new StringBuilder();
+
+		header(text, "zork_command_latency_seconds", "summary", "Time the game needed to handle a command.");
+		for (Map.Entry<String, LatencyHistogram> entry : metrics.getLatencies().entrySet()) {
+			String command = "command=\"" + escape(entry.getKey()) + "\"";
+			LatencyHistogram.Snapshot snapshot = entry.getValue().snapshot();
+			for (double quantile : QUANTILES) {
+				sample(text, "zork_command_latency_seconds{" + command + ",quantile=\"" + quantile + "\"}",
+						seconds(snapshot.getPercentile(quantile)));
+			}
+			sample(text, "zork_command_latency_seconds_sum{" + command + "}", seconds(snapshot.getSum()));
+			sample(text, "zork_command_latency_seconds_count{" + command + "}", snapshot.getCount());
+		}
+
+		header(text, "zork_guard_encounters_total", "counter", "Times the guard entered the player's room.");
+		sample(text, "zork_guard_encounters_total", metrics.getGuardEncounters());
+		header(text, "zork_hides_total", "counter", "Times a player hid.");
+		sample(text, "zork_hides_total", metrics.getHides());
+		header(text, "zork_searches_total", "counter", "Times a player searched an object.");
+		sample(text, "zork_searches_total", metrics.getSearches());
+		header(text, "zork_games_ended_total", "counter", "Games by how they ended (escape routes, caught, quit).");
+		for (Map.Entry<String, Long> entry : metrics.getEndings().entrySet()) {
+			sample(text, "zork_games_ended_total{ending=\"" + entry.getKey() + "\"}", entry.getValue());
+		}
+
+		header(text, "zork_active_sessions", "gauge", "Sessions being counted.");
+		sample(text, "zork_active_sessions", metrics.getActiveSessions());
+		header(text, "zork_session_commands_total", "counter", "Commands of every active session.");
+		long now = System.nanoTime();
+		Map<Integer, GameMetrics.SessionStats> sessions = metrics.getSessions();
+		for (Map.Entry<Integer, GameMetrics.SessionStats> entry : sessions.entrySet()) {
+			sample(text, "zork_session_commands_total{session=\"" + entry.getKey() + "\"}", entry.getValue().getCommands());
+		}
+		header(text, "zork_session_command_rate", "gauge", "Commands per second of every active session since it started.");
+		for (Map.Entry<Integer, GameMetrics.SessionStats> entry : sessions.entrySet()) {
+			sample(text, "zork_session_command_rate{session=\"" + entry.getKey() + "\"}", entry.getValue().getCommandRate(now));
+		}
+		return text.toString();
+	}
+
+	private static void header(StringBuilder text, String name, String type, String help) {
+		text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void sample(StringBuilder text, String name, long value) {
+		text.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static void sample(StringBuilder text, String name, double value) {
+		text.append(name).append(' ').append(Double.toString(value)).append('\n');
+	}
+
+	private static double seconds(long nanos) {
+		return nanos / 1e9;
+	}
+
+	// Label values escape backslashes, quotes and line breaks
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
@@ -0,0 +1,224 @@
+package ch.bbw.zork;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * NameTrie - finds names by what the player typed, including
+ * abbreviations ("inv" for inventory, "dra" for drawer).
+ *
+ * Names are stored case-folded in a trie. A word resolves to the name it
+ * spells exactly, or else to the only name starting with it. When
+ * several names start with the word, the result is ambiguous and lists
+ * them. Resolving takes time proportional to the length of the name and
+ * allocates nothing unless the word is ambiguous.
+ *
+ * A trie is filled once (e.g. when a World is built) and then only read,
+ * so one instance can be shared by all games.
+ */
+public class NameTrie<T> {
+
+	private final Node<T> root = new Node<>();
+	private int size;
+
+	/**
+	 * Add a name. If the name is already present (ignoring case) the
+	 * first value is kept.
+	 */
+	public void add(String name, T value) {
+		Node<T> node = root;
+		for (int i = 0; i < name.length(); i++) {
+			node = node.child(Character.toLowerCase(name.charAt(i)), true);
+		}
+		if (node.match != null) {
+			return;
+		}
+		node.match = new Match<>(name, value, null, null);
+		node.order = size++;
+		// Count the new name in every node on its path
+		node = root;
+		node.count++;
+		for (int i = 0; i < name.length(); i++) {
+			node = node.child(Character.toLowerCase(name.charAt(i)), false);
+			node.count++;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Resolve a whole word.
+	 */
+	public Match<T> resolve(String word) {
+		return resolve(word, 0, word.length());
+	}
+
+	/**
+	 * Resolve characters start to end of a line, without copying them.
+	 */
+	public Match<T> resolve(String line, int start, int end) {
+		if (start >= end) {
+			return none();
+		}
+		Node<T> node = root;
+		for (int i = start; i < end && node != null; i++) {
+			node = node.child(Character.toLowerCase(line.charAt(i)), false);
+		}
+		if (node == null || node.count == 0) {
+			return none();
+		}
+		if (node.match != null) {
+			return node.match; // the exact name wins over longer ones
+		}
+		if (node.count == 1) {
+			while (node.match == null) {
+				node = node.only();
+			}
+			return node.match;
+		}
+		List<Node<T>> found = new ArrayList<>();
+		collect(node, found);
+		Collections.sort(found, (a, b) -> a.order - b.order);
+		List<String> names = new ArrayList<>(found.size());
+		List<T> values = new ArrayList<>(found.size());
+		for (Node<T> candidate : found) {
+			names.add(candidate.match.name);
+			values.add(candidate.match.value);
+		}
+		return new Match<>(null, null, Collections.unmodifiableList(names), Collections.unmodifiableList(values));
+	}
+
+	private static <T> void collect(Node<T> node, List<Node<T>> found) {
+		if (node.match != null) {
+			found.add(node);
+		}
+		for (int i = 0; i < node.childCount; i++) {
+			collect(node.children[i], found);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> Match<T> none() {
+		return (Match<T>) Match.NONE;
+	}
+
+	/**
+	 * What a word resolved to: one name, several (ambiguous) or none.
+	 */
+	public static final class Match<T> {
+
+		private static final Match<Object> NONE = new Match<>(null, null, null, null);
+
+		private final String name;
+		private final T value;
+		private final List<String> candidateNames;
+		private final List<T> candidates;
+
+		private Match(String name, T value, List<String> candidateNames, List<T> candidates) {
+			this.name = name;
+			this.value = value;
+			this.candidateNames = candidateNames;
+			this.candidates = candidates;
+		}
+
+		/**
+		 * A match for one name (e.g. after filtering ambiguous candidates).
+		 */
+		public static <T> Match<T> of(String name, T value) {
+			return new Match<>(name, value, null, null);
+		}
+
+		/**
+		 * An ambiguous match over the given candidates, one name per value.
+		 */
+		public static <T> Match<T> ambiguous(List<String> names, List<T> values) {
+			return new Match<>(null, null, names, values);
+		}
+
+		public boolean isFound() {
+			return name != null;
+		}
+
+		public boolean isAmbiguous() {
+			return candidates != null;
+		}
+
+		/**
+		 * The full name that was found, or null.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * The value of the name that was found, or null.
+		 */
+		public T getValue() {
+			return value;
+		}
+
+		/**
+		 * The names the word could mean when it is ambiguous, in the order
+		 * they were added; otherwise null.
+		 */
+		public List<String> getCandidateNames() {
+			return candidateNames;
+		}
+
+		public List<T> getCandidates() {
+			return candidates;
+		}
+	}
+
+	private static final class Node<T> {
+		private char[] keys = new char[0];
+		private Node<T>[] children = newArray(0);
+		private int childCount;
+		// Number of names in this subtree
+		private int count;
+		// The name ending here (if any) and when it was added
+		private Match<T> match;
+		private int order;
+
+		Node<T> child(char key, boolean create) {
+			for (int i = 0; i < childCount; i++) {
+				if (keys[i] == key) {
+					return children[i];
+				}
+			}
+			if (!create) {
+				return null;
+			}
+			if (childCount == keys.length) {
+				int capacity = Math.max(2, childCount * 2);
+				keys = Arrays.copyOf(keys, capacity);
+				children = Arrays.copyOf(children, capacity);
+			}
+			Node<T> child = new Node<>();
+			keys[childCount] = key;
+			children[childCount++] = child;
+			return child;
+		}
+
+		// Java has no arrays of a generic type; the casts are safe because
+		// only Node<T> are ever stored
+		@SuppressWarnings("unchecked")
+		private static <T> Node<T>[] newArray(int length) {
+			return (Node<T>[]) new Node<?>[length];
+		}
+
+		// The child holding names, when this subtree holds exactly one
+		Node<T> only() {
+			for (int i = 0; i < childCount; i++) {
+				if (children[i].count > 0) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package ch.bbw.zork;
+
+import java.util.Arrays;
+
+/**
+ * NoiseField - how far every room is from the noise the player makes,
+ * for guards that hunt: a guard who hears the noise walks to the
+ * neighbouring room that is closer to it (see Guard.setNoiseField).
+ *
+ * Distances are counted in steps along the exits towards the source
+ * (the room the player is in), up to RANGE; rooms farther away hear
+ * nothing. When the source moves only the rooms whose distance changes
+ * are visited: first the rooms the new source brought closer are
+ * lowered outwards from it, then the rooms that only had a way to the
+ * old source are raised again (the dynamic shortest paths of Ramalingam
+ * and Reps, for exits of length one). An update never visits more than
+ * the rooms within RANGE of the old and the new source, however large
+ * the world is, and any number of guards read the field for free.
+ *
+ * How loud the noise is (the level) is kept apart from the distances:
+ * noises raise it, every round lowers it by one, and a room hears the
+ * noise while its distance is at most the level. Locks are ignored like
+ * in World.getExit; guards only walk through open doors.
+ */
+public class NoiseField {
+
+	// The farthest a noise carries, in rooms
+	public static final int RANGE = 8;
+	private static final int FAR = Integer.MAX_VALUE;
+
+	private final World world;
+	// distance[room] in steps to the source, FAR beyond RANGE
+	private final int[] distance;
+	private int source = -1;
+	private int level;
+	// Scratch space of the updates: the rooms to look at, the affected
+	// ones and the state of every room (QUEUED or AFFECTED)
+	private final int[] queue;
+	private final int[] changed;
+	private final byte[] marks;
+	private static final byte QUEUED = 1;
+	private static final byte AFFECTED = 2;
+
+	public NoiseField(World world) {
+		this.world = world;
+		this.distance = new int[world.getRoomCount()];
+		this.queue = new int[world.getRoomCount()];
+		this.changed = new int[world.getRoomCount()];
+		this.marks = new byte[world.getRoomCount()];
+		Arrays.fill(distance, FAR);
+	}
+
+	/**
+	 * The room the noise comes from, or null before it was set.
+	 */
+	public Room getSource() {
+		return source < 0 ? null : world.getRoom(source);
+	}
+
+	/**
+	 * Let the noise come from the given room (the player's room).
+	 */
+	public void moveSource(Room room) {
+		int previous = source;
+		if (room.getId() == previous) {
+			return;
+		}
+		source = room.getId();
+		lower(source);
+		if (previous >= 0) {
+			raise(previous);
+		}
+	}
+
+	/**
+	 * The number of steps from a room to the source, or -1 if it is
+	 * farther than RANGE (or has no way there).
+	 */
+	public int getDistance(Room room) {
+		int steps = distance[room.getId()];
+		return steps == FAR ? -1 : steps;
+	}
+
+	/**
+	 * Make a noise that carries the given number of rooms. A quieter
+	 * noise than the one still heard changes nothing.
+	 */
+	public void makeNoise(int loudness) {
+		level = Math.max(level, Math.min(loudness, RANGE));
+	}
+
+	/**
+	 * Let the noise die down by one room (once a round).
+	 */
+	public void fade() {
+		if (level > 0) {
+			level--;
+		}
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * True if the noise can be heard in the given room.
+	 */
+	public boolean isHeardIn(Room room) {
+		int steps = distance[room.getId()];
+		return steps != FAR && steps <= level;
+	}
+
+	/**
+	 * About how many heap bytes the field takes: four arrays of one
+	 * entry per room.
+	 */
+	public long getFootprint() {
+		return 64 + 13L * distance.length;
+	}
+
+	/**
+	 * Make a room a source: lower the rooms that are now closer, in
+	 * breadth-first order from it.
+	 */
+	private void lower(int room) {
+		distance[room] = 0;
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = room;
+		while (head < tail) {
+			int next = queue[head++];
+			int steps = distance[next] + 1;
+			if (steps > RANGE) {
+				continue;
+			}
+			for (int i = world.getEntranceStart(next); i < world.getEntranceStart(next + 1); i++) {
+				int from = world.getEntrance(i) / Direction.COUNT;
+				if (steps < distance[from]) {
+					distance[from] = steps;
+					queue[tail++] = from;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A room stopped being a source: find the rooms whose every shortest
+	 * way led there (the affected rooms), then give them their new
+	 * distances from the rooms around them.
+	 */
+	private void raise(int room) {
+		// Rooms are taken in the order of their old distance, so whether
+		// a room one step closer is affected is known when it is asked
+		int head = 0;
+		int tail = 0;
+		int count = 0;
+		queue[tail++] = room;
+		marks[room] = QUEUED;
+		while (head < tail) {
+			int next = queue[head++];
+			if (hasShortestExit(next)) {
+				continue;
+			}
+			marks[next] = AFFECTED;
+			changed[count++] = next;
+			int steps = distance[next] + 1;
+			for (int i = world.getEntranceStart(next); i < world.getEntranceStart(next + 1); i++) {
+				int from = world.getEntrance(i) / Direction.COUNT;
+				if (distance[from] == steps && marks[from] == 0) {
+					marks[from] = QUEUED;
+					queue[tail++] = from;
+				}
+			}
+		}
+
+		// Start from the best exit to a room that kept its distance ...
+		for (int i = 0; i < count; i++) {
+			int next = changed[i];
+			int best = FAR;
+			for (int d = 0; d < Direction.COUNT; d++) {
+				int to = world.getExit(next, Direction.get(d));
+				if (to >= 0 && marks[to] != AFFECTED && distance[to] < RANGE) {
+					best = Math.min(best, distance[to] + 1);
+				}
+			}
+			distance[next] = best;
+		}
+		// ... and spread the new distances among the affected rooms,
+		// nearest first (there are only RANGE distances)
+		for (int steps = 1; steps < RANGE; steps++) {
+			for (int i = 0; i < count; i++) {
+				int next = changed[i];
+				if (distance[next] != steps) {
+					continue;
+				}
+				for (int e = world.getEntranceStart(next); e < world.getEntranceStart(next + 1); e++) {
+					int from = world.getEntrance(e) / Direction.COUNT;
+					if (marks[from] == AFFECTED && distance[from] > steps + 1) {
+						distance[from] = steps + 1;
+					}
+				}
+			}
+		}
+		for (int i = 0; i < tail; i++) {
+			marks[queue[i]] = 0;
+		}
+	}
+
+	/**
+	 * True if the room is the source or still has an exit to a room one
+	 * step closer to it.
+	 */
+	private boolean hasShortestExit(int room) {
+		if (room == source) {
+			return true;
+		}
+		int steps = distance[room];
+		for (int d = 0; d < Direction.COUNT; d++) {
+			int to = world.getExit(room, Direction.get(d));
+			if (to >= 0 && marks[to] != AFFECTED && distance[to] == steps - 1) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -6,6 +6,7 @@ package ch.bbw.zork;
  */
 public class Note {
     
+    private int id;
     private String name;
     private String text;
     
@@ -14,6 +15,15 @@ public class Note {
         this.text = text;
     }
     
+    public int getId() {
+        // Number of this object in its World
+        return id;
+    }
+    
+    void setId(int id) {
+        this.id = id;
+    }
+    
     public String getName() {
         // The identifier used to pick up the note (e.g. "note")
         return name;
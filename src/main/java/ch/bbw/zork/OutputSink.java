@@ -0,0 +1,42 @@
+package ch.bbw.zork;
+
+import java.nio.ByteBuffer;
+
+/**
+ * OutputSink - where a session's game text goes.
+ *
+ * A game writes the bytes of its response (UTF-8) and calls flush()
+ * once when the response is complete, i.e. after the prompt. Sinks
+ * buffer everything in between, so the text of a response reaches the
+ * console or socket in one piece instead of one write per line. A sink
+ * belongs to one session and is not thread-safe.
+ *
+ * Games print to a SinkPrintStream wrapped around their sink. Sinks:
+ * StreamSink (any OutputStream, e.g. a blocking socket), CaptureSink
+ * (in memory, for tests and tools) and ChannelSink (non-blocking
+ * socket channels).
+ */
+public interface OutputSink {
+
+	/**
+	 * Add bytes to the current response.
+	 */
+	void write(byte[] bytes, int offset, int length);
+
+	/**
+	 * Add bytes that never change (e.g. a Screen) to the current
+	 * response. A sink may keep the buffer instead of copying it, so the
+	 * caller must not use it afterwards; the default copies its
+	 * remaining bytes.
+	 */
+	default void write(ByteBuffer bytes) {
+		byte[] copy = new byte[bytes.remaining()];
+		bytes.get(copy);
+		write(copy, 0, copy.length);
+	}
+
+	/**
+	 * The current response is complete: pass it on.
+	 */
+	void flush();
+}
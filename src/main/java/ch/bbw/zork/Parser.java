@@ -5,81 +5,207 @@ package ch.bbw.zork;
  */
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 
 
 public class Parser {
 
 	// Helper that knows which words are valid commands
 	private CommandWords validCommandWords;
-	// Input stream the parser reads from (usually System.in)
-	private InputStream inputStream;
+	// Reader over the session's input (usually System.in). One reader is
+	// kept for the whole session so buffered input is never lost between
+	// commands and the hiding/safe prompts.
+	private BufferedReader reader;
+	// Where the prompt is printed (usually System.out)
+	private PrintStream out;
+	// The command returned by parse(), reused for every line
+	private final Command command = new Command(null);
+	// Second words (object names, directions) seen recently, by hash
+	private static final int WORD_CACHE_SIZE = 256;
+	private final String[] wordCache = new String[WORD_CACHE_SIZE];
 
 	/**
 	 * Create a parser that reads commands from the given input stream.
 	 * This keeps the parser testable (we can provide any InputStream).
 	 */
 	public Parser(InputStream inputStream) {
-		this.inputStream = inputStream;
-		this.validCommandWords = new CommandWords();
+		this(inputStream, System.out);
 	}
 
 	/**
-	 * Read a line from the input, split it into words and return a
-	 * Command object. If the first word is not a known command we return
-	 * a Command with a null command word so the game can handle it as
-	 * an unknown command.
+	 * Create a parser that reads from the given input and prints its
+	 * prompt to the given output, so every session can have its own console.
+	 * The input may be null when lines are handed to parse() directly.
 	 */
-	public Command getCommand() {
-		String inputLine;
+	public Parser(InputStream inputStream, PrintStream out) {
+		this(inputStream, out, new CommandWords());
+	}
+
+	/**
+	 * Same as Parser(InputStream, PrintStream), recognizing the given commands.
+	 */
+	public Parser(InputStream inputStream, PrintStream out, CommandWords commandWords) {
+		this.reader = inputStream == null ? null : new BufferedReader(new InputStreamReader(inputStream));
+		this.out = out;
+		this.validCommandWords = commandWords;
+	}
+
+	/**
+	 * Read from the given input from now on (e.g. a restored game that
+	 * gets a player again).
+	 */
+	void setInput(InputStream inputStream) {
+		this.reader = new BufferedReader(new InputStreamReader(inputStream));
+	}
 
-		System.out.print("> "); // prompt
+	/**
+	 * Recognize the given commands from now on.
+	 */
+	public void setCommandWords(CommandWords commandWords) {
+		this.validCommandWords = commandWords;
+	}
+
+	/**
+	 * Print the prompt, read a line from the input and parse it into a
+	 * Command. Returns null when the input has ended.
+	 */
+	public Command getCommand() {
+		out.print("> "); // prompt
+		out.flush(); // the prompt ends the response
 
-		BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(this.inputStream));
 		try {
-			inputLine = bufferedReader.readLine();
-			
-			// Handle null input (EOF)
+			String inputLine = readLine();
+
+			// Handle null input (EOF): the session is over
 			if (inputLine == null) {
-				return new Command(null);
-			}
-			
-			// Trim whitespace and handle empty input
-			inputLine = inputLine.trim();
-			if (inputLine.isEmpty()) {
-				return new Command(null);
+				return null;
 			}
+			return parse(inputLine);
+		} catch (IOException exc) {
+			out.println("There was an error during reading: " + exc.getMessage());
+		}
+		command.set(-1, null, null);
+		return command;
+	}
 
-			String[] tokens = inputLine.split("\\s+");
-			switch(tokens.length) {
-				case 2:
-					// Two words: command + argument
-					if (validCommandWords.isCommand(tokens[0])) {
-						return new Command(tokens[0], tokens[1]);
-					} else {
-						// Unknown first word but we still return the second word
-						return new Command(null, tokens[1]);
-					}
-				case 1:
-					// Single word line
-					if (validCommandWords.isCommand(tokens[0])) {
-						return new Command(tokens[0]);
-					} else {
-						return new Command(null);
-					}
-				default:
-					// More than 2 words: treat first as command and second as argument
-					if (validCommandWords.isCommand(tokens[0])) {
-						return new Command(tokens[0], tokens[1]);
-					} else {
-						return new Command(null);
-					}
-			}
-		} catch (java.io.IOException exc) {
-			System.out.println("There was an error during reading: " + exc.getMessage());
+	/**
+	 * Split a line into words and return a Command object. If the first
+	 * word is not a known command we return a Command with a null command
+	 * word so the game can handle it as an unknown command.
+	 *
+	 * The line is scanned in place: command words come from CommandWords
+	 * and second words from a small cache, and the same Command object is
+	 * returned for every line (it is only valid until the next call).
+	 * Parsing a familiar line therefore creates no garbage.
+	 *
+	 * Command words may be abbreviated ("inv") and a line with just a
+	 * direction ("n") is read as "go north". When an abbreviation fits
+	 * several commands the Command is unknown and lists them (see
+	 * Command.getCandidates).
+	 */
+	public Command parse(String inputLine) {
+		int length = inputLine.length();
+		int firstStart = skipSpace(inputLine, 0);
+		if (firstStart == length) {
+			// Empty input
+			command.set(-1, null, null);
+			return command;
+		}
+		int firstEnd = skipWord(inputLine, firstStart);
+		int secondStart = skipSpace(inputLine, firstEnd);
+		int secondEnd = skipWord(inputLine, secondStart);
+		boolean moreWords = skipSpace(inputLine, secondEnd) < length;
+
+		String secondWord = secondStart < length ? intern(inputLine, secondStart, secondEnd) : null;
+		NameTrie.Match<Integer> match = validCommandWords.resolve(inputLine, firstStart, firstEnd);
+		if (secondWord == null && !CommandWords.isExact(match, firstStart, firstEnd)
+				&& parseDirection(inputLine, firstStart, firstEnd)) {
+			return command;
+		}
+		if (match.isFound()) {
+			// Command with an optional argument; more words are ignored
+			int commandId = match.getValue();
+			command.set(commandId, validCommandWords.getWord(commandId), secondWord);
+		} else if (match.isAmbiguous()) {
+			// "h" could be help or hide: let the game ask which one
+			command.set(-1, null, secondWord);
+			command.setCandidates(match.getCandidateNames());
+		} else if (secondWord != null && !moreWords) {
+			// Unknown first word but we still return the second word
+			command.set(-1, null, secondWord);
+		} else {
+			command.set(-1, null, null);
+		}
+		return command;
+	}
+
+	/**
+	 * A line that is only a direction ("north", "n") means "go" there.
+	 * The caller makes sure the word is no exact command word.
+	 */
+	private boolean parseDirection(String line, int start, int end) {
+		int go = validCommandWords.getGoId();
+		NameTrie.Match<Direction> direction = Direction.resolve(line, start, end);
+		if (!direction.isFound()) {
+			return false;
+		}
+		command.set(go, validCommandWords.getWord(go), direction.getName());
+		return true;
+	}
+
+	private static int skipSpace(String line, int i) {
+		while (i < line.length() && line.charAt(i) <= ' ') {
+			i++;
+		}
+		return i;
+	}
+
+	private static int skipWord(String line, int i) {
+		while (i < line.length() && line.charAt(i) > ' ') {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Return characters start to end of the line as a String, reusing the
+	 * String from an earlier line with the same word when possible.
+	 */
+	private String intern(String line, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + line.charAt(i);
+		}
+		int slot = (hash ^ (hash >>> 16)) & (WORD_CACHE_SIZE - 1);
+		String cached = wordCache[slot];
+		int length = end - start;
+		if (cached != null && cached.length() == length && line.regionMatches(start, cached, 0, length)) {
+			return cached;
+		}
+		String word = line.substring(start, end);
+		wordCache[slot] = word;
+		return word;
+	}
+
+	/**
+	 * True if the parser reads from an input stream (see readLine).
+	 */
+	boolean hasInput() {
+		return reader != null;
+	}
+
+	/**
+	 * Read a raw line (e.g. an answer to a question) from the same input
+	 * the commands come from. Returns null when the input has ended.
+	 */
+	public String readLine() throws IOException {
+		if (reader == null) {
+			throw new IOException("This parser has no input stream");
 		}
-		return new Command(null);
+		return reader.readLine();
 	}
 
 	/**
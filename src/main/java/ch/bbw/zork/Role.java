@@ -0,0 +1,80 @@
+package ch.bbw.zork;
+
+/**
+ * Role - a part a room, item or searchable plays in the game's puzzles.
+ *
+ * The game logic never looks anything up by its key or name: a world
+ * file says which of its rooms is the vault, which item is the crowbar
+ * and so on (see WorldLoader), and the game asks the World for them. A
+ * building that leaves a role out simply has no puzzle built on it.
+ */
+public enum Role {
+
+	/** The room the vent leads into; its exits into vent rooms are sealed without the crowbar. */
+	VAULT("vault", Kind.ROOM),
+	/** The room where hiding often enough reveals the teleport machine. */
+	HIDEOUT("hideout", Kind.ROOM),
+	/** Opens vents and the vault handle, and the sealed side of a vent. */
+	CROWBAR("crowbar", Kind.ITEM),
+	/** Shoots the roof hatch open, and the guard when in disguise. */
+	PISTOL("pistol", Kind.ITEM),
+	/** Needed with the pistol. */
+	BULLETS("bullets", Kind.ITEM),
+	/** Used once to get past the guard. */
+	DISGUISE("disguise", Kind.ITEM),
+	/** Used once for an extra action. */
+	ENERGY_DRINK("energydrink", Kind.ITEM),
+	/** A hidden door in the hideout that ends the game (Ending.TELEPORT). */
+	TELEPORT("teleport", Kind.SEARCHABLE),
+	/** A door in the vault that opens its lock from inside with the crowbar. */
+	VAULT_HANDLE("handle", Kind.SEARCHABLE),
+	/** A gate that is shot open with pistol and bullets (Ending.ROOF). */
+	ROOF_HATCH("hatch", Kind.SEARCHABLE),
+	/** A door whose boards the player pries off (only flavour text). */
+	ATTIC_DOOR("atticdoor", Kind.SEARCHABLE);
+
+	/**
+	 * What a role is given to in a world file.
+	 */
+	public enum Kind {
+		/** role &lt;role&gt; &lt;room&gt; */
+		ROOM,
+		/** role &lt;role&gt; &lt;item&gt; */
+		ITEM,
+		/** role &lt;role&gt; &lt;room&gt; &lt;searchable&gt; */
+		SEARCHABLE
+	}
+
+	private static final Role[] ALL = values();
+
+	private final String name;
+	private final Kind kind;
+
+	Role(String name, Kind kind) {
+		this.name = name;
+		this.kind = kind;
+	}
+
+	/**
+	 * The word for this role in a world file (e.g. "vault").
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * Find the role for a word of a world file, or null if it is none.
+	 */
+	public static Role fromName(String name) {
+		for (Role role : ALL) {
+			if (role.name.equals(name)) {
+				return role;
+			}
+		}
+		return null;
+	}
+}
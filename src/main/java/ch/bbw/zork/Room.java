@@ -4,25 +4,71 @@ package ch.bbw.zork;
  * refactoring: Rinaldo Lanza, September 2020
  */
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
+/**
+ * A room of the World. Rooms are built once and then shared by all
+ * games; what a player changes in a room (searched objects, picked up
+ * notes, opened doors) is kept in the game's WorldState, which is
+ * passed in wherever the answer depends on it.
+ */
 public class Room {
-	
+
+	private int id;
 	private String description;
-	private HashMap<String, Room> exits;
+	// Neighbouring rooms and the lock of each exit (-1 for none), indexed
+	// by Direction. The World compiles them into its adjacency table.
+	private Room[] exits;
+	private int[] exitLocks;
 	private ArrayList<Item> items;
 	private ArrayList<Hideable> hideables;
 	private ArrayList<Searchable> searchables;
 	private ArrayList<Note> notes;
+	// The objects above by lower-case name (see Inventory.key), so exact
+	// names are found without comparing every object. The lists keep
+	// the order for display; the maps hold the first object of a name.
+	private HashMap<String, Item> itemsByName;
+	private HashMap<String, Hideable> hideablesByName;
+	private HashMap<String, Searchable> searchablesByName;
+	private HashMap<String, List<Note>> notesByName;
+	// Names players can type for the objects above, abbreviations
+	// included. Built with the World (see buildNameIndex).
+	private NameTrie<Hideable> hideableNames;
+	private NameTrie<Searchable> searchableNames;
+	private NameTrie<String> noteNames;
+	// Rendered long descriptions, by variant (see describe). Null after
+	// the room was changed; rebuilt on the next call.
+	private Description[] descriptions;
+	// Rooms with more variants than this render every time
+	private static final int MAX_CACHED_VARIANTS = 1024;
 
 	public Room(String description) {
 		this.description = description;
-		this.exits = new HashMap<>();
+		this.exits = new Room[Direction.COUNT];
+		this.exitLocks = new int[] { -1, -1, -1, -1 };
 		this.items = new ArrayList<>();
 		this.hideables = new ArrayList<>();
 		this.searchables = new ArrayList<>();
 		this.notes = new ArrayList<>();
+		this.itemsByName = new HashMap<>();
+		this.hideablesByName = new HashMap<>();
+		this.searchablesByName = new HashMap<>();
+		this.notesByName = new HashMap<>();
+	}
+
+	/**
+	 * The room's number in its World (set when the World is built).
+	 */
+	public int getId() {
+		return id;
+	}
+
+	void setId(int id) {
+		this.id = id;
 	}
 
 	/**
@@ -30,10 +76,35 @@ public class Room {
 	 * null for a direction that doesn't have an exit.
 	 */
 	public void setExits(Room north, Room east, Room south, Room west) {
-		exits.put("north", north);
-		exits.put("east", east);
-		exits.put("south", south);
-		exits.put("west", west);
+		exits[Direction.NORTH.ordinal()] = north;
+		exits[Direction.EAST.ordinal()] = east;
+		exits[Direction.SOUTH.ordinal()] = south;
+		exits[Direction.WEST.ordinal()] = west;
+		descriptions = null;
+	}
+
+	/**
+	 * Define a single exit.
+	 */
+	public void setExit(Direction direction, Room room) {
+		exits[direction.ordinal()] = room;
+		descriptions = null;
+	}
+
+	/**
+	 * Keep the exit in the given direction closed until the game opens
+	 * the given lock (see WorldState.open).
+	 */
+	public void lockExit(Direction direction, int lock) {
+		exitLocks[direction.ordinal()] = lock;
+		descriptions = null;
+	}
+
+	/**
+	 * The lock of the exit in the given direction, or -1 if it is not locked.
+	 */
+	public int getExitLock(Direction direction) {
+		return exitLocks[direction.ordinal()];
 	}
 
 	/**
@@ -43,18 +114,107 @@ public class Room {
 		return description;
 	}
 
+	/**
+	 * The name of the room: its description up to " - " (e.g. "Boss
+	 * Office").
+	 */
+	public String getName() {
+		int end = description.indexOf(" - ");
+		return end < 0 ? description : description.substring(0, end);
+	}
+
 	/**
 	 * A longer description used when the player enters the room. It
 	 * includes visible exits, items, notes and interactive objects.
 	 */
-	public String longDescription() {
+	public String longDescription(WorldState state) {
+		return describe(state).getText();
+	}
+
+	/**
+	 * The long description for the given game, rendered once and then
+	 * shared by all games that see the room the same way.
+	 *
+	 * What a game can change about a room's description is few bits:
+	 * which exits are open, which hidden objects were revealed and how
+	 * many notes are left. Together they make the variant, and every
+	 * variant is rendered (and encoded) only once. Changing the room
+	 * itself (exits, items, notes, objects) drops all variants.
+	 */
+	public Description describe(WorldState state) {
+		Description[] cache = descriptions;
+		if (cache == null) {
+			// Games may race to create the cache; any of the arrays will do
+			cache = new Description[variantCount()];
+			descriptions = cache;
+		}
+		int variant = cache.length == 0 ? 0 : variant(state);
+		if (variant >= cache.length) {
+			return new Description(render(state));
+		}
+		Description description = cache[variant];
+		if (description == null) {
+			description = new Description(render(state));
+			cache[variant] = description;
+		}
+		return description;
+	}
+
+	/**
+	 * Number of different long descriptions this room can have, or 0 if
+	 * there are too many to cache.
+	 */
+	private int variantCount() {
+		int bits = Direction.COUNT;
+		for (Searchable searchable : searchables) {
+			if (searchable.isHidden()) {
+				bits++;
+			}
+		}
+		if (bits >= 20) {
+			return 0;
+		}
+		long count = (long) (notes.size() + 1) << bits;
+		return count > MAX_CACHED_VARIANTS ? 0 : (int) count;
+	}
+
+	/**
+	 * The variant of the description a game sees: the open exits, the
+	 * revealed hidden objects and the notes left, as one number.
+	 */
+	private int variant(WorldState state) {
+		int variant = 0;
+		int bit = 0;
+		for (; bit < Direction.COUNT; bit++) {
+			if (state.nextRoom(this, Direction.get(bit)) != null) {
+				variant |= 1 << bit;
+			}
+		}
+		for (Searchable searchable : searchables) {
+			if (searchable.isHidden()) {
+				if (state.isVisible(searchable)) {
+					variant |= 1 << bit;
+				}
+				bit++;
+			}
+		}
+		int notesLeft = 0;
+		for (Note note : notes) {
+			if (!state.isTaken(note)) {
+				notesLeft++;
+			}
+		}
+		return variant + (notesLeft << bit);
+	}
+
+	private String render(WorldState state) {
 		StringBuilder stringBuilder = new StringBuilder("You are in " + description + ".\n");
-		stringBuilder.append(exitString());
+		stringBuilder.append(exitString(state));
 		String itemsStr = getItemsString();
 		if (!itemsStr.isEmpty()) {
 			stringBuilder.append("\n").append(itemsStr);
 		}
-		String notesStr = getNotesString();
+		String notesStr = getNotesString(state);
 		if (!notesStr.isEmpty()) {
 			stringBuilder.append("\n").append(notesStr);
 		}
@@ -62,7 +222,7 @@ public class Room {
 		if (!hideablesStr.isEmpty()) {
 			stringBuilder.append("\n").append(hideablesStr);
 		}
-		String searchablesStr = getSearchablesString();
+		String searchablesStr = getSearchablesString(state);
 		if (!searchablesStr.isEmpty()) {
 			stringBuilder.append("\n").append(searchablesStr);
 		}
@@ -72,11 +232,12 @@ public class Room {
 	/**
 	 * Build a short string listing the available exits (e.g. "Exits: north east").
 	 */
-	private String exitString() {
+	private String exitString(WorldState state) {
 		StringBuilder exitString = new StringBuilder("Exits:");
-		for (String direction : exits.keySet()) {
-			if (exits.get(direction) != null) {
-				exitString.append(" ").append(direction);
+		for (int i = 0; i < Direction.COUNT; i++) {
+			Direction direction = Direction.get(i);
+			if (state.nextRoom(this, direction) != null) {
+				exitString.append(" ").append(direction.getName());
 			}
 		}
 		return exitString.toString();
@@ -84,46 +245,29 @@ public class Room {
 
 	/**
 	 * Return the room that lies in the given direction, or null if there
-	 * is no exit that way.
+	 * is no exit that way. Locks are not checked here; ask the game's
+	 * WorldState for the exits a player can actually use.
 	 */
-	public Room nextRoom(String direction) {
-		return exits.get(direction);
+	public Room nextRoom(Direction direction) {
+		return exits[direction.ordinal()];
 	}
-	
+
 	/**
 	 * Add an item to this room's ground so the player can pick it up later.
 	 */
 	public void addItem(Item item) {
 		items.add(item);
+		descriptions = null;
+		itemsByName.putIfAbsent(Inventory.key(item.getName()), item);
 	}
-	
-	/**
-	 * Remove and return an item by name (case-insensitive). Returns null
-	 * when the item is not present.
-	 */
-	public Item removeItem(String itemName) {
-		for (int i = 0; i < items.size(); i++) {
-			Item item = items.get(i);
-			if (item.getName().equalsIgnoreCase(itemName)) {
-				items.remove(i);
-				return item;
-			}
-		}
-		return null;
-	}
-	
+
 	/**
 	 * Check whether an item with the given name exists in the room.
 	 */
 	public boolean hasItem(String itemName) {
-		for (Item item : items) {
-			if (item.getName().equalsIgnoreCase(itemName)) {
-				return true;
-			}
-		}
-		return false;
+		return itemsByName.containsKey(Inventory.key(itemName));
 	}
-	
+
 	/**
 	 * Return a human-friendly string listing the items that lie here.
 	 */
@@ -137,26 +281,42 @@ public class Room {
 		}
 		return sb.toString();
 	}
-	
+
 	/**
 	 * Manage places a player can hide in this room.
 	 */
 	public void addHideable(Hideable hideable) {
 		hideables.add(hideable);
+		descriptions = null;
+		hideablesByName.putIfAbsent(Inventory.key(hideable.getName()), hideable);
+		hideableNames = null;
 	}
-	
+
 	/**
 	 * Find a hideable by name (case-insensitive) or return null when not present.
 	 */
 	public Hideable getHideable(String hideableName) {
-		for (Hideable hideable : hideables) {
-			if (hideable.getName().equalsIgnoreCase(hideableName)) {
-				return hideable;
-			}
+		return hideablesByName.get(Inventory.key(hideableName));
+	}
+
+	/**
+	 * Find the hiding spot a player means. The name may be abbreviated
+	 * ("des" for desk); a name that fits several spots is ambiguous.
+	 */
+	public NameTrie.Match<Hideable> findHideable(String hideableName) {
+		if (hideableNames == null) {
+			buildNameIndex();
 		}
-		return null;
+		return hideableNames.resolve(hideableName);
 	}
-	
+
+	/**
+	 * All hiding spots of this room, in the order they were added.
+	 */
+	public List<Hideable> getHideables() {
+		return Collections.unmodifiableList(hideables);
+	}
+
 	/**
 	 * Return a short list of objects the player can hide in.
 	 */
@@ -170,73 +330,195 @@ public class Room {
 		}
 		return sb.toString();
 	}
-	
+
 	/**
 	 * Add an interactive object the player can search (drawers, lockers, vents).
 	 */
 	public void addSearchable(Searchable searchable) {
 		searchables.add(searchable);
+		descriptions = null;
+		searchablesByName.putIfAbsent(Inventory.key(searchable.getName()), searchable);
+		searchableNames = null;
 	}
-	
+
 	/**
-	 * Find a searchable object by name or null if it's not here.
+	 * Find a searchable object the player can see by name, or null if
+	 * it's not here.
 	 */
-	public Searchable getSearchable(String searchableName) {
+	public Searchable getSearchable(String searchableName, WorldState state) {
+		Searchable first = searchablesByName.get(Inventory.key(searchableName));
+		if (first == null || state.isVisible(first)) {
+			return first;
+		}
+		// The first object of this name is hidden; look for a visible one
 		for (Searchable searchable : searchables) {
-			if (searchable.getName().equalsIgnoreCase(searchableName)) {
+			if (searchable.getName().equalsIgnoreCase(searchableName) && state.isVisible(searchable)) {
 				return searchable;
 			}
 		}
 		return null;
 	}
-	
+
+	/**
+	 * Find the searchable object a player means, like getSearchable but
+	 * the name may be abbreviated. Objects the player cannot see are
+	 * never found nor listed as candidates.
+	 */
+	public NameTrie.Match<Searchable> findSearchable(String searchableName, WorldState state) {
+		if (searchableNames == null) {
+			buildNameIndex();
+		}
+		NameTrie.Match<Searchable> match = searchableNames.resolve(searchableName);
+		if (match.isFound()) {
+			return state.isVisible(match.getValue()) ? match : NameTrie.none();
+		}
+		if (!match.isAmbiguous()) {
+			return match;
+		}
+		List<String> names = new ArrayList<>();
+		List<Searchable> visible = new ArrayList<>();
+		for (Searchable searchable : match.getCandidates()) {
+			if (state.isVisible(searchable)) {
+				names.add(searchable.getName());
+				visible.add(searchable);
+			}
+		}
+		if (visible.isEmpty()) {
+			return NameTrie.none();
+		}
+		if (visible.size() == 1) {
+			return NameTrie.Match.of(names.get(0), visible.get(0));
+		}
+		return NameTrie.Match.ambiguous(names, visible);
+	}
+
+	/**
+	 * All searchable objects of this room (including hidden ones), in
+	 * the order they were added.
+	 */
+	public List<Searchable> getSearchables() {
+		return Collections.unmodifiableList(searchables);
+	}
+
 	/**
 	 * Return a short description of searchable objects located in this room.
 	 */
-	public String getSearchablesString() {
-		if (searchables.isEmpty()) {
-			return "";
-		}
+	public String getSearchablesString(WorldState state) {
 		StringBuilder sb = new StringBuilder("You can search:");
+		boolean any = false;
 		for (Searchable searchable : searchables) {
-			sb.append(" ").append(searchable.getName());
+			if (state.isVisible(searchable)) {
+				sb.append(" ").append(searchable.getName());
+				any = true;
+			}
 		}
-		return sb.toString();
+		return any ? sb.toString() : "";
 	}
-	
+
 	/**
-	 * Note management: add or remove a note. Notes can be picked up by the player.
+	 * Note management: notes can be picked up by the player.
 	 */
 	public void addNote(Note note) {
 		notes.add(note);
+		descriptions = null;
+		notesByName.computeIfAbsent(Inventory.key(note.getName()), name -> new ArrayList<>()).add(note);
+		noteNames = null;
 	}
-	
-	public Note removeNote(String noteName) {
-		for (int i = 0; i < notes.size(); i++) {
-			Note note = notes.get(i);
-			if (note.getName().equalsIgnoreCase(noteName)) {
-				notes.remove(i);
+
+	/**
+	 * All notes placed in this room when the world was built.
+	 */
+	public List<Note> getNotes() {
+		return Collections.unmodifiableList(notes);
+	}
+
+	/**
+	 * Find a note by (possibly abbreviated) name that is still lying
+	 * here, or null.
+	 */
+	public Note findNote(String noteName, WorldState state) {
+		if (noteNames == null) {
+			buildNameIndex();
+		}
+		// Notes may share a name, so the trie only completes the name
+		NameTrie.Match<String> match = noteNames.resolve(noteName);
+		if (!match.isFound()) {
+			return null;
+		}
+		for (Note note : notesByName.get(Inventory.key(match.getValue()))) {
+			if (!state.isTaken(note)) {
 				return note;
 			}
 		}
 		return null;
 	}
-	
+
 	/**
 	 * Return a human-friendly description of notes lying here.
 	 */
-	public String getNotesString() {
-		if (notes.isEmpty()) {
+	public String getNotesString(WorldState state) {
+		int count = 0;
+		for (Note note : notes) {
+			if (!state.isTaken(note)) {
+				count++;
+			}
+		}
+		if (count == 0) {
 			return "";
 		}
-		if (notes.size() == 1) {
+		if (count == 1) {
 			return "A note is lying here";
 		}
-		return "There are " + notes.size() + " notes lying here";
+		return "There are " + count + " notes lying here";
 	}
 
-}
+	/**
+	 * Index the names of this room's objects. The World does this once
+	 * when it is built, so the shared rooms are only read afterwards.
+	 */
+	void buildNameIndex() {
+		NameTrie<Hideable> hideableTrie = new NameTrie<>();
+		for (Hideable hideable : hideables) {
+			hideableTrie.add(hideable.getName(), hideable);
+		}
+		NameTrie<Searchable> searchableTrie = new NameTrie<>();
+		for (Searchable searchable : searchables) {
+			searchableTrie.add(searchable.getName(), searchable);
+		}
+		NameTrie<String> noteTrie = new NameTrie<>();
+		for (Note note : notes) {
+			noteTrie.add(note.getName(), note.getName());
+		}
+		hideableNames = hideableTrie;
+		searchableNames = searchableTrie;
+		noteNames = noteTrie;
+	}
+
+	/**
+	 * A rendered long description, with its text also encoded as UTF-8
+	 * and ended by a line separator, ready to be written to a player.
+	 */
+	public static final class Description {
 
+		private final String text;
+		private final byte[] line;
+
+		Description(String text) {
+			this.text = text;
+			this.line = (text + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+		}
 
+		public String getText() {
+			return text;
+		}
 
+		/**
+		 * The text and a line separator as UTF-8. The array is shared and
+		 * must not be changed.
+		 */
+		public byte[] getLine() {
+			return line;
+		}
+	}
 
+}
@@ -0,0 +1,189 @@
+package ch.bbw.zork;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * RoutingTable - the first step of a shortest way from every room of a
+ * World to every other room, so "travel" finds its way in constant time.
+ *
+ * The table is computed once per world (see World.getRoutes) from the
+ * exit graph. Locks are ignored like in World.getExit, because every
+ * game opens other doors; a game checks the way against its own open
+ * doors and searches again when one is closed (see Game.findWay).
+ *
+ * Every entry is the Direction to leave by, in two bits, 32 to a long.
+ * There is one row per target room, so a world of 10,000 rooms needs
+ * 25 MB and one of 30,000 rooms 225 MB. A room that cannot reach the
+ * target is marked by a direction it has no exit in; the few rooms
+ * with an exit in every direction are listed apart (unreachable).
+ *
+ * Each row is one breadth-first search from its target backwards along
+ * the exits. The rows are independent, so they are filled in parallel.
+ */
+public final class RoutingTable {
+
+	private static final int BITS = 2;
+	private static final int PER_WORD = Long.SIZE / BITS;
+	private static final long MASK = (1L << BITS) - 1;
+	// Rows each task of the parallel build fills
+	private static final int BATCH_SIZE = 64;
+
+	private final World world;
+	private final int roomCount;
+	private final int rowWords;
+	// exits[room * Direction.COUNT + direction] like World.getExit
+	private final int[] exits;
+	private final long[] table;
+	// Sorted target * roomCount + room of the rooms with an exit in every
+	// direction that have no way to the target
+	private final long[] unreachable;
+
+	RoutingTable(World world) {
+		this.world = world;
+		this.roomCount = world.getRoomCount();
+		this.rowWords = (roomCount + PER_WORD - 1) / PER_WORD;
+		this.exits = new int[roomCount * Direction.COUNT];
+		for (int room = 0; room < roomCount; room++) {
+			for (int d = 0; d < Direction.COUNT; d++) {
+				exits[room * Direction.COUNT + d] = world.getExit(room, Direction.get(d));
+			}
+		}
+		this.table = new long[Math.multiplyExact(roomCount, rowWords)];
+		this.unreachable = build();
+	}
+
+	/**
+	 * The direction of the first step from one room to another, or -1
+	 * if there is no way (or both are the same room).
+	 */
+	public int nextHop(int from, int to) {
+		if (from == to) {
+			return -1;
+		}
+		long word = table[to * rowWords + from / PER_WORD];
+		int direction = (int) ((word >>> (from % PER_WORD * BITS)) & MASK);
+		if (exits[from * Direction.COUNT + direction] < 0) {
+			return -1;
+		}
+		if (unreachable.length > 0 && Arrays.binarySearch(unreachable, (long) to * roomCount + from) >= 0) {
+			return -1;
+		}
+		return direction;
+	}
+
+	/**
+	 * The direction to leave a room by to get to another one the
+	 * shortest way, or null if there is none.
+	 */
+	public Direction nextHop(Room from, Room to) {
+		int direction = nextHop(from.getId(), to.getId());
+		return direction < 0 ? null : Direction.get(direction);
+	}
+
+	/**
+	 * The number of steps of the shortest way from one room to another,
+	 * or -1 if there is none. Takes time proportional to the distance.
+	 */
+	public int distance(int from, int to) {
+		int steps = 0;
+		for (int room = from; room != to; steps++) {
+			int direction = nextHop(room, to);
+			if (direction < 0) {
+				return -1;
+			}
+			room = exits[room * Direction.COUNT + direction];
+		}
+		return steps;
+	}
+
+	public int getRoomCount() {
+		return roomCount;
+	}
+
+	private long[] build() {
+		int batches = (roomCount + BATCH_SIZE - 1) / BATCH_SIZE;
+		long[][] unreachableByBatch = IntStream.range(0, batches).parallel()
+				.mapToObj(batch -> fillRows(batch * BATCH_SIZE, Math.min(roomCount, (batch + 1) * BATCH_SIZE)))
+				.toArray(long[][]::new);
+		int count = 0;
+		for (long[] rooms : unreachableByBatch) {
+			count += rooms.length;
+		}
+		long[] all = new long[count];
+		count = 0;
+		for (long[] rooms : unreachableByBatch) {
+			System.arraycopy(rooms, 0, all, count, rooms.length);
+			count += rooms.length;
+		}
+		// Batches come in target order and rooms within a row in order
+		return all;
+	}
+
+	/**
+	 * Fill the rows of the targets first to end (exclusive).
+	 *
+	 * @return the entries that go into unreachable, in order
+	 */
+	private long[] fillRows(int first, int end) {
+		int[] queue = new int[roomCount];
+		// seen[room] == target + 1 once the search for target reached room
+		int[] seen = new int[roomCount];
+		long[] unreached = new long[0];
+		int unreachedCount = 0;
+		for (int target = first; target < end; target++) {
+			int row = target * rowWords;
+			int stamp = target + 1;
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = target;
+			seen[target] = stamp;
+			while (head < tail) {
+				int room = queue[head++];
+				for (int i = world.getEntranceStart(room); i < world.getEntranceStart(room + 1); i++) {
+					int entrance = world.getEntrance(i);
+					int from = entrance / Direction.COUNT;
+					if (seen[from] != stamp) {
+						seen[from] = stamp;
+						queue[tail++] = from;
+						set(row, from, entrance % Direction.COUNT);
+					}
+				}
+			}
+			if (tail == roomCount) {
+				continue;
+			}
+			for (int room = 0; room < roomCount; room++) {
+				if (seen[room] == stamp) {
+					continue;
+				}
+				int missing = missingExit(room);
+				if (missing >= 0) {
+					set(row, room, missing);
+				} else {
+					if (unreachedCount == unreached.length) {
+						unreached = Arrays.copyOf(unreached, Math.max(16, unreachedCount * 2));
+					}
+					unreached[unreachedCount++] = (long) target * roomCount + room;
+				}
+			}
+		}
+		return Arrays.copyOf(unreached, unreachedCount);
+	}
+
+	private void set(int row, int room, int direction) {
+		int index = row + room / PER_WORD;
+		int shift = room % PER_WORD * BITS;
+		table[index] = (table[index] & ~(MASK << shift)) | ((long) direction << shift);
+	}
+
+	// A direction the room has no exit in, or -1
+	private int missingExit(int room) {
+		for (int d = 0; d < Direction.COUNT; d++) {
+			if (exits[room * Direction.COUNT + d] < 0) {
+				return d;
+			}
+		}
+		return -1;
+	}
+}
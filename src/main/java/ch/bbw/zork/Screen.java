@@ -0,0 +1,51 @@
+package ch.bbw.zork;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Screen - a block of text the game prints the same way every time (the
+ * welcome screen, the help, the map).
+ *
+ * The lines are joined and encoded as UTF-8 once, when the screen is
+ * created. Printing a screen to a player's sink (see SinkPrintStream,
+ * which is UTF-8) is then a single write of ready bytes instead of one
+ * println (a lock and a charset encode) per line; other streams get the
+ * text, since only they know their charset. The bytes never change, so
+ * one Screen is shared by all games.
+ */
+public final class Screen {
+
+	private final String text;
+	private final byte[] bytes;
+	private final ByteBuffer buffer;
+
+	/**
+	 * A screen of the given lines, each ended by a line separator.
+	 */
+	public Screen(String... lines) {
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines) {
+			sb.append(line).append(System.lineSeparator());
+		}
+		this.text = sb.toString();
+		this.bytes = text.getBytes(StandardCharsets.UTF_8);
+		this.buffer = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * The encoded screen as a read-only buffer with its own position, to
+	 * be written to a channel without copying.
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer.duplicate();
+	}
+
+	public int size() {
+		return bytes.length;
+	}
+}
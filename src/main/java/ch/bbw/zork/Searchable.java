@@ -11,8 +11,12 @@ public class Searchable {
     private String description;
     // Optional item hidden in this searchable object
     private Item item;
-    // Whether this object was already searched
-    private boolean searched;
+    // Number of this object in its World (searched state lives in WorldState)
+    private int id;
+    // Hidden objects only show up after the game reveals them
+    private boolean hidden;
+    // Lock opened by this door, or -1
+    private int opensLock;
     // Special flags used to handle some objects differently
     private boolean isVent;
     private boolean isDoor;
@@ -25,7 +29,7 @@ public class Searchable {
         this.name = name;
         this.description = description;
         this.item = item;
-        this.searched = false;
+        this.opensLock = -1;
         this.isVent = false;
         this.isDoor = false;
         this.requiredItem = null;
@@ -38,7 +42,7 @@ public class Searchable {
         this.name = name;
         this.description = description;
         this.item = item;
-        this.searched = false;
+        this.opensLock = -1;
         this.isVent = isVent;
         this.isDoor = false;
         this.requiredItem = null;
@@ -62,13 +66,34 @@ public class Searchable {
         return item;
     }
     
-    public boolean isSearched() {
-        // True when the player already looked here
-        return searched;
+    public int getId() {
+        return id;
     }
     
-    public void setSearched(boolean searched) {
-        this.searched = searched;
+    void setId(int id) {
+        this.id = id;
+    }
+    
+    public boolean isHidden() {
+        // True when the object only appears once the game reveals it
+        return hidden;
+    }
+    
+    public void setHidden(boolean hidden) {
+        this.hidden = hidden;
+    }
+    
+    public int getOpensLock() {
+        // The lock (see Room.lockExit) this door opens, or -1
+        return opensLock;
+    }
+    
+    public void setOpensLock(int opensLock) {
+        this.opensLock = opensLock;
+    }
+    
+    public void setItem(Item item) {
+        this.item = item;
     }
     
     public boolean isVent() {
@@ -76,6 +101,10 @@ public class Searchable {
         return isVent;
     }
     
+    public void setVent(boolean isVent) {
+        this.isVent = isVent;
+    }
+    
     public boolean isDoor() {
         // True when this searchable represents a locked/interactive door
         return isDoor;
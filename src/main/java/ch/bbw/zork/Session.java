@@ -0,0 +1,75 @@
+package ch.bbw.zork;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+
+/**
+ * Session - one player connected to the server.
+ *
+ * A session owns its own Game world and plays it on its own input and
+ * output channel. When the game ends (escape, capture, quit or closed
+ * input) the session tells its manager so the slot can be reused. A
+ * session can also take up a game recovered after a crash, which then
+ * goes on where the player left off.
+ */
+public class Session implements Runnable {
+
+	private final int id;
+	private final Game game;
+	private final PrintStream out;
+	private final SessionManager manager;
+	// Input of a resumed game, null for a new one (which reads its own)
+	private final InputStream resumedInput;
+	private volatile boolean finished;
+
+	public Session(int id, InputStream in, PrintStream out, SessionManager manager) {
+		this.id = id;
+		this.out = out;
+		this.manager = manager;
+		this.game = new Game(in, out);
+		this.resumedInput = null;
+	}
+
+	/**
+	 * A session that plays on with a restored game (see
+	 * SessionJournal.recover).
+	 */
+	public Session(int id, Game game, InputStream in, PrintStream out, SessionManager manager) {
+		this.id = id;
+		this.out = out;
+		this.manager = manager;
+		this.game = game;
+		this.resumedInput = in;
+		game.setOutput(out);
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public Game getGame() {
+		return game;
+	}
+
+	public boolean isFinished() {
+		// True once the play loop returned
+		return finished;
+	}
+
+	/**
+	 * Play the game until it ends, then release the session slot.
+	 */
+	public void run() {
+		try {
+			if (resumedInput != null) {
+				game.resumePlay(resumedInput);
+			} else {
+				game.play();
+			}
+		} finally {
+			finished = true;
+			out.flush();
+			manager.sessionEnded(this);
+		}
+	}
+}
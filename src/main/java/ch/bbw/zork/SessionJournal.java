@@ -0,0 +1,578 @@
+package ch.bbw.zork;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SessionJournal - an append-only log of game sessions used to rebuild
+ * them after a crash.
+ *
+ * Every line a player types is appended to the journal, and every few
+ * lines a snapshot of the whole game is written as well. A game's
+ * random decisions (vault code, guard moves) come from a seeded
+ * generator whose state is part of the snapshot, so replaying the lines
+ * typed after the latest snapshot gives back exactly the same game.
+ *
+ * The journal is a directory of fixed-size segment files. The current
+ * segment is memory-mapped, so an append is a plain memory copy into
+ * the page cache - no system call per record. When a record does not
+ * fit any more, the next segment is created. A background thread
+ * forces the written pages to disk every few milliseconds, so one sync
+ * covers all commands of all sessions in that batch (group commit).
+ * Segments older than the latest snapshot of every open session are
+ * moved to the "archive" directory after a new segment was started, so
+ * recovery only reads what it needs (see JournalReader.scanHistory for
+ * the whole history).
+ *
+ * Session ids start at 1 in every run of a server, so every opening of
+ * the journal is a new epoch (counted in the file "epoch" next to the
+ * segments), and records are keyed by epoch and session id together
+ * (see key). A new run's session 1 is then a different session than
+ * the crashed run's session 1. A recovered game that a player takes up
+ * again is journaled under the new run's key; its RESUME record ends
+ * the old key in the same write.
+ *
+ * A player who leaves before the game is over can take it up again
+ * with the token for a while (see recordDetach). The journal keeps the
+ * snapshots of these detached games - and of the games a crash
+ * interrupted, once recover() found them - until they are resumed or
+ * their time is up.
+ *
+ * Record layout (see JournalReader): type (byte), key (long), length
+ * (int), payload. The type byte is written last, so a record cut off by
+ * a crash reads as the end of the segment.
+ */
+public class SessionJournal implements Closeable {
+
+	public static final byte SNAPSHOT = 1;
+	public static final byte LINE = 2;
+	public static final byte END = 3;
+	// A snapshot under a new key that ends the (recovered) session whose
+	// key is in front of the snapshot
+	public static final byte RESUME = 4;
+	// A snapshot of a game its player left, behind the time (epoch
+	// millis) until which it may be resumed
+	public static final byte DETACH = 5;
+	// Type, key and length in front of every payload
+	static final int HEADER_SIZE = 13;
+	static final String SEGMENT_SUFFIX = ".seg";
+	static final String EPOCH_FILE = "epoch";
+	static final String ARCHIVE_DIRECTORY = "archive";
+
+	private final File directory;
+	private final int segmentSize;
+	// Lines between two snapshots of the same session
+	private final int snapshotInterval;
+	private final long commitIntervalMillis;
+	// How long a game its player left can be resumed
+	private final long detachTimeoutMillis;
+	// The run of the server that opened the journal (see key)
+	private final int epoch;
+	private final Thread committer;
+	private volatile boolean closed;
+
+	// The segment records are appended to (guarded by "this")
+	private int segmentNumber;
+	private MappedByteBuffer segment;
+	private boolean dirty;
+	// Full segments that still need to be forced to disk
+	private final List<MappedByteBuffer> unforced = new ArrayList<>();
+	private long commits;
+	// Lowest segment number still in the directory, and the one this run
+	// started in: segments of earlier runs stay until recover() ran
+	private int firstSegment;
+	private final int runSegment;
+	private boolean recovered;
+	// Set when a segment was started, so commit() retires old ones
+	private boolean rolledOver;
+	// The segment holding the latest snapshot of every open session
+	private final Map<Long, Integer> snapshotSegments = new HashMap<>();
+	// Games that can be resumed (see recordDetach), by key
+	private final Map<Long, Detached> detached = new LinkedHashMap<>();
+
+	/**
+	 * Open (or create) a journal in the given directory with 16 MB
+	 * segments that snapshots every 64 lines, commits every 10
+	 * milliseconds and keeps left games for a day.
+	 */
+	public SessionJournal(File directory) throws IOException {
+		this(directory, 64, 10, 16 * 1024 * 1024);
+	}
+
+	public SessionJournal(File directory, int snapshotInterval, long commitIntervalMillis, int segmentSize) throws IOException {
+		this(directory, snapshotInterval, commitIntervalMillis, segmentSize, 24 * 60 * 60 * 1000L);
+	}
+
+	public SessionJournal(File directory, int snapshotInterval, long commitIntervalMillis, int segmentSize,
+			long detachTimeoutMillis) throws IOException {
+		this.directory = directory;
+		this.snapshotInterval = snapshotInterval;
+		this.commitIntervalMillis = commitIntervalMillis;
+		this.segmentSize = segmentSize;
+		this.detachTimeoutMillis = detachTimeoutMillis;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create journal directory " + directory);
+		}
+		this.epoch = nextEpoch(directory);
+
+		// Continue in the last segment, behind its last complete record
+		File[] existing = JournalReader.segments(directory);
+		if (existing.length > 0) {
+			firstSegment = number(existing[0]);
+			segmentNumber = number(existing[existing.length - 1]);
+			segment = map(segmentNumber);
+			segment.position(JournalReader.endOfRecords(segment));
+		} else {
+			segment = map(0);
+			recovered = true; // no earlier runs
+		}
+		runSegment = segmentNumber;
+
+		committer = new Thread(this::commitLoop, "zork-journal-commit");
+		committer.setDaemon(true);
+		committer.start();
+	}
+
+	public int getSnapshotInterval() {
+		return snapshotInterval;
+	}
+
+	/**
+	 * The number of this run of the journal: one more than the run that
+	 * opened the directory before.
+	 */
+	public int getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * The key the records of a session of this run are written under.
+	 */
+	public long key(int sessionId) {
+		return key(epoch, sessionId);
+	}
+
+	public static long key(int epoch, int sessionId) {
+		return ((long) epoch << 32) | (sessionId & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * The key as a player types it to take a recovered game up again,
+	 * e.g. "3-17" for session 17 of the third run.
+	 */
+	public static String token(long key) {
+		return (key >>> 32) + "-" + (int) key;
+	}
+
+	/**
+	 * The key of a token made by token().
+	 *
+	 * @throws IllegalArgumentException if it is not a token
+	 */
+	public static long parseToken(String token) {
+		int dash = token.indexOf('-');
+		if (dash <= 0) {
+			throw new IllegalArgumentException("Not a session token: " + token);
+		}
+		return key(Integer.parseInt(token.substring(0, dash)), Integer.parseInt(token.substring(dash + 1)));
+	}
+
+	/**
+	 * Number of batches forced to disk so far.
+	 */
+	public synchronized long getCommitCount() {
+		return commits;
+	}
+
+	public void recordLine(long key, String line) {
+		append(key, LINE, line.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public void recordSnapshot(long key, Game game) {
+		byte[] snapshot = game.writeSnapshot();
+		synchronized (this) {
+			append(key, SNAPSHOT, snapshot);
+			snapshotSegments.put(key, segmentNumber);
+		}
+	}
+
+	/**
+	 * Mark a session as finished, so recovery does not bring it back.
+	 */
+	public synchronized void recordEnd(long key) {
+		append(key, END, new byte[0]);
+		snapshotSegments.remove(key);
+		detached.remove(key);
+	}
+
+	/**
+	 * Journal a recovered game under a new key: one record that holds
+	 * its snapshot and ends the key it was recovered under, so a crash
+	 * never finds the game twice or not at all.
+	 */
+	public void recordResume(long key, long previousKey, Game game) {
+		byte[] snapshot = game.writeSnapshot();
+		synchronized (this) {
+			append(key, RESUME, ByteBuffer.allocate(Long.BYTES + snapshot.length).putLong(previousKey).put(snapshot).array());
+			snapshotSegments.remove(previousKey);
+			detached.remove(previousKey);
+			snapshotSegments.put(key, segmentNumber);
+		}
+	}
+
+	/**
+	 * Mark a session whose player left before the game was over: its
+	 * game can be taken up again with the session's token (see
+	 * takeDetached) until the detach timeout is over, in this run or a
+	 * later one. Then recovery forgets it.
+	 */
+	public void recordDetach(long key, Game game) {
+		recordDetach(key, game.writeSnapshot());
+	}
+
+	void recordDetach(long key, byte[] snapshot) {
+		recordDetach(key, snapshot, System.currentTimeMillis() + detachTimeoutMillis);
+	}
+
+	private synchronized void recordDetach(long key, byte[] snapshot, long deadline) {
+		append(key, DETACH, ByteBuffer.allocate(Long.BYTES + snapshot.length).putLong(deadline).put(snapshot).array());
+		snapshotSegments.put(key, segmentNumber);
+		detached.put(key, new Detached(snapshot, deadline));
+	}
+
+	/**
+	 * The keys of the games that can be resumed now (see recordDetach
+	 * and recover), oldest first.
+	 */
+	public synchronized List<Long> getDetachedKeys() {
+		forgetExpired(System.currentTimeMillis());
+		return new ArrayList<>(detached.keySet());
+	}
+
+	/**
+	 * Take the detached game of the given key to play it on. The caller
+	 * journals it under its new session with Game.resumeJournal, which
+	 * ends the old key. The game prints nothing until it gets an output
+	 * with setOutput().
+	 *
+	 * @return the game, or null when there is none under the key (any
+	 *         more)
+	 */
+	public Game takeDetached(long key) {
+		Detached game;
+		synchronized (this) {
+			game = detached.remove(key);
+		}
+		if (game == null || game.deadline < System.currentTimeMillis()) {
+			return null;
+		}
+		try {
+			return Game.restoreSnapshot(game.snapshot, silent());
+		} catch (IOException e) {
+			throw new IllegalStateException("Damaged snapshot of session " + token(key), e);
+		}
+	}
+
+	private synchronized void append(long key, byte type, byte[] payload) {
+		if (closed) {
+			throw new IllegalStateException("Journal is closed");
+		}
+		int size = HEADER_SIZE + payload.length;
+		if (size > segmentSize) {
+			throw new IllegalArgumentException("Record of " + size + " bytes does not fit into a segment");
+		}
+		try {
+			if (segment.remaining() < size) {
+				unforced.add(segment);
+				segment = map(++segmentNumber);
+				rolledOver = true;
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not create journal segment", e);
+		}
+		int start = segment.position();
+		segment.putLong(start + 1, key);
+		segment.putInt(start + 9, payload.length);
+		segment.position(start + HEADER_SIZE);
+		segment.put(payload);
+		// Written last: the record only becomes visible once it is complete
+		segment.put(start, type);
+		dirty = true;
+	}
+
+	/**
+	 * Force all records appended so far to disk.
+	 */
+	public void commit() {
+		List<MappedByteBuffer> toForce;
+		synchronized (this) {
+			if (!dirty && unforced.isEmpty()) {
+				return;
+			}
+			toForce = new ArrayList<>(unforced);
+			unforced.clear();
+			if (dirty) {
+				toForce.add(segment);
+				dirty = false;
+			}
+		}
+		// Forcing happens outside the lock so sessions keep appending
+		for (MappedByteBuffer buffer : toForce) {
+			buffer.force();
+		}
+		synchronized (this) {
+			commits++;
+			if (rolledOver) {
+				rolledOver = false;
+				retireSegments();
+			}
+		}
+	}
+
+	/**
+	 * Move the segments no open session needs any more (all records
+	 * before the oldest latest snapshot) to the archive directory. Games
+	 * whose detach timeout is over no longer hold theirs.
+	 */
+	private synchronized void retireSegments() {
+		forgetExpired(System.currentTimeMillis());
+		// Until recover() ran, the segments of earlier runs may hold games
+		// nobody rebuilt yet
+		int keep = recovered ? segmentNumber : Math.min(runSegment, segmentNumber);
+		for (int number : snapshotSegments.values()) {
+			keep = Math.min(keep, number);
+		}
+		File archive = new File(directory, ARCHIVE_DIRECTORY);
+		while (firstSegment < keep) {
+			File file = segmentFile(firstSegment);
+			try {
+				Files.createDirectories(archive.toPath());
+				Files.move(file.toPath(), new File(archive, file.getName()).toPath());
+			} catch (IOException e) {
+				// Tried again after the next segment; recovery only reads more
+				return;
+			}
+			firstSegment++;
+		}
+	}
+
+	/**
+	 * Drop the detached games that can no longer be resumed.
+	 */
+	private void forgetExpired(long now) {
+		Iterator<Map.Entry<Long, Detached>> entries = detached.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<Long, Detached> entry = entries.next();
+			if (entry.getValue().deadline < now) {
+				entries.remove();
+				snapshotSegments.remove(entry.getKey());
+			}
+		}
+	}
+
+	private void commitLoop() {
+		while (!closed) {
+			try {
+				Thread.sleep(commitIntervalMillis);
+			} catch (InterruptedException e) {
+				return;
+			}
+			commit();
+		}
+	}
+
+	/**
+	 * Force what is left to disk and stop the commit thread.
+	 */
+	public void close() {
+		synchronized (this) {
+			closed = true;
+		}
+		committer.interrupt();
+		commit();
+	}
+
+	/**
+	 * Count the run up in the directory's epoch file and return it.
+	 */
+	private static int nextEpoch(File directory) throws IOException {
+		Path file = new File(directory, EPOCH_FILE).toPath();
+		int epoch = 1;
+		if (Files.exists(file)) {
+			try {
+				epoch = Integer.parseInt(new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim()) + 1;
+			} catch (NumberFormatException e) {
+				throw new IOException("Damaged journal epoch file " + file, e);
+			}
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			channel.write(ByteBuffer.wrap(Integer.toString(epoch).getBytes(StandardCharsets.US_ASCII)));
+			// Two runs must never share an epoch, even after a power loss
+			channel.force(true);
+		}
+		return epoch;
+	}
+
+	private MappedByteBuffer map(int number) throws IOException {
+		File file = segmentFile(number);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			// The mapping stays valid after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		}
+	}
+
+	private File segmentFile(int number) {
+		return new File(directory, String.format("%08d", number) + SEGMENT_SUFFIX);
+	}
+
+	private static int number(File segment) {
+		String name = segment.getName();
+		return Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	/**
+	 * Rebuild the unfinished sessions of the runs before this one (see
+	 * recover(File)) and keep them as detached games, so their players
+	 * can take them up with their tokens (see takeDetached) until the
+	 * detach timeout is over. The segments they were rebuilt from are
+	 * archived afterwards. Call it before this run journals any session.
+	 *
+	 * @return the number of rebuilt games
+	 */
+	public int recover() throws IOException {
+		long deadline = System.currentTimeMillis() + detachTimeoutMillis;
+		int[] count = new int[1];
+		replay(directory, (key, game, detachedUntil) -> {
+			if ((int) (key >>> 32) != epoch) {
+				// Journaled again in this run, so the old segments can go
+				recordDetach(key, game.writeSnapshot(), detachedUntil != 0 ? detachedUntil : deadline);
+				count[0]++;
+			}
+		});
+		synchronized (this) {
+			recovered = true;
+			retireSegments();
+		}
+		return count[0];
+	}
+
+	/**
+	 * Rebuild all unfinished sessions from a journal directory: each
+	 * session is restored from its latest snapshot and the lines typed
+	 * after it are played again. Games whose player left and whose
+	 * detach timeout is over are not rebuilt. The games print nothing;
+	 * give them an output with setOutput() before handing them back to
+	 * a player.
+	 *
+	 * @return the rebuilt games by key (see key)
+	 */
+	public static Map<Long, Game> recover(File directory) throws IOException {
+		Map<Long, Game> games = new LinkedHashMap<>();
+		replay(directory, (key, game, detachedUntil) -> games.put(key, game));
+		return games;
+	}
+
+	/**
+	 * Receives the sessions rebuilt by replay.
+	 */
+	private interface ReplayHandler {
+		/**
+		 * @param detachedUntil the detach timeout of a game its player
+		 *                      left, 0 for a game a crash interrupted
+		 */
+		void session(long key, Game game, long detachedUntil);
+	}
+
+	/**
+	 * Rebuild the unfinished sessions of the live segments one at a time.
+	 */
+	private static void replay(File directory, ReplayHandler handler) throws IOException {
+		Map<Long, byte[]> snapshots = new HashMap<>();
+		Map<Long, List<String>> tails = new LinkedHashMap<>();
+		Map<Long, Long> deadlines = new HashMap<>();
+
+		JournalReader.scan(directory, (key, type, payload) -> {
+			if (type == SNAPSHOT || type == RESUME || type == DETACH) {
+				if (type == RESUME) {
+					long previousKey = payload.getLong();
+					snapshots.remove(previousKey);
+					tails.remove(previousKey);
+					deadlines.remove(previousKey);
+				}
+				if (type == DETACH) {
+					deadlines.put(key, payload.getLong());
+				} else {
+					deadlines.remove(key);
+				}
+				byte[] snapshot = new byte[payload.remaining()];
+				payload.get(snapshot);
+				snapshots.put(key, snapshot);
+				tails.put(key, new ArrayList<>());
+			} else if (type == LINE) {
+				List<String> tail = tails.get(key);
+				if (tail != null) {
+					tail.add(StandardCharsets.UTF_8.decode(payload).toString());
+				}
+			} else if (type == END) {
+				snapshots.remove(key);
+				tails.remove(key);
+				deadlines.remove(key);
+			}
+		});
+
+		long now = System.currentTimeMillis();
+		PrintStream silent = silent();
+		for (Map.Entry<Long, List<String>> entry : tails.entrySet()) {
+			Long deadline = deadlines.get(entry.getKey());
+			if (deadline != null && deadline < now) {
+				continue; // left too long ago
+			}
+			Game game = Game.restoreSnapshot(snapshots.get(entry.getKey()), silent);
+			for (String line : entry.getValue()) {
+				game.handleLine(line);
+			}
+			if (!game.isGameOver()) {
+				handler.session(entry.getKey(), game, deadline != null ? deadline : 0);
+			}
+		}
+	}
+
+	private static PrintStream silent() {
+		return new PrintStream(new OutputStream() {
+			public void write(int b) {
+				// replayed output is not shown to anyone
+			}
+		});
+	}
+
+	/**
+	 * The snapshot of a game that can be resumed until its deadline
+	 * (epoch millis).
+	 */
+	private static final class Detached {
+		final byte[] snapshot;
+		final long deadline;
+
+		Detached(byte[] snapshot, long deadline) {
+			this.snapshot = snapshot;
+			this.deadline = deadline;
+		}
+	}
+}
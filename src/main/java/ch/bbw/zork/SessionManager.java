@@ -0,0 +1,328 @@
+package ch.bbw.zork;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * SessionManager - hosts many independent games in one process.
+ *
+ * Every session gets its own Game world and its own input/output
+ * channel, so players never see each other's text. The number of
+ * sessions is bounded, and so is their memory if a budget is set (see
+ * setMemoryBudget): when either limit is reached new players are turned
+ * away before a game is created for them, instead of letting the
+ * process run out of memory. getMemoryUsage reports what the running
+ * sessions take.
+ *
+ * With a journal, the games a crash interrupted come back on startup
+ * (see recoverSessions), and so do the games of players who left before
+ * the end: a player takes theirs up again with the session token shown
+ * when it started (see resumeSession), until the journal's detach
+ * timeout is over.
+ *
+ * Each session's play loop blocks while waiting for the player, so it
+ * needs a thread of its own. The executor decides which kind: one
+ * platform thread per session (the default) or, on Java 21 and newer,
+ * one virtual thread per session, where a waiting player only parks a
+ * cheap virtual thread instead of holding an OS thread.
+ */
+public class SessionManager {
+
+	private final int maxSessions;
+	private final AtomicInteger nextId = new AtomicInteger(1);
+	private final Map<Integer, Session> sessions = new ConcurrentHashMap<>();
+	// Sessions that passed the capacity check but are still being created
+	private int starting;
+	// Heap bytes all sessions may take together, 0 for no limit
+	private volatile long memoryBudget;
+	// Runs the play loop of every started session
+	private final Executor executor;
+	// Optional crash-recovery journal for all sessions
+	private volatile SessionJournal journal;
+	// Optional metrics of all sessions
+	private volatile GameMetrics metrics;
+
+	/**
+	 * Create a manager that runs every session on its own platform thread.
+	 */
+	public SessionManager(int maxSessions) {
+		this(maxSessions, platformThreads());
+	}
+
+	/**
+	 * Create a manager that runs the play loops on the given executor.
+	 * The executor must give every session its own (possibly virtual)
+	 * thread, because a play loop blocks until the player types.
+	 */
+	public SessionManager(int maxSessions, Executor executor) {
+		if (maxSessions < 1) {
+			throw new IllegalArgumentException("maxSessions must be at least 1");
+		}
+		this.maxSessions = maxSessions;
+		this.executor = executor;
+	}
+
+	/**
+	 * Executor that starts one daemon platform thread per session.
+	 */
+	public static Executor platformThreads() {
+		return session -> {
+			Thread thread = new Thread(session, "zork-session");
+			thread.setDaemon(true);
+			thread.start();
+		};
+	}
+
+	/**
+	 * Executor that starts one virtual thread per session. Blocking reads
+	 * then park the virtual thread and free its carrier thread for other
+	 * sessions.
+	 *
+	 * @throws UnsupportedOperationException when the JVM is older than Java 21
+	 */
+	public static Executor virtualThreads() {
+		try {
+			// Looked up by reflection so the game still builds for Java 8
+			Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (Executor) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("Virtual threads need Java 21 or newer", e);
+		}
+	}
+
+
+	/**
+	 * Record every session created from now on in the given journal.
+	 */
+	public void setJournal(SessionJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Rebuild the games the journal's earlier runs left unfinished, so
+	 * their players can take them up with resumeSession. Call it once
+	 * after setJournal, before sessions are created.
+	 *
+	 * @return the number of recovered games
+	 */
+	public int recoverSessions() throws IOException {
+		if (journal == null) {
+			throw new IllegalStateException("No journal to recover from");
+		}
+		return journal.recover();
+	}
+
+	/**
+	 * The tokens of the games that can be resumed: recovered ones nobody
+	 * took up yet and those of players who left (see
+	 * SessionJournal.getDetachedKeys).
+	 */
+	public List<String> getResumableTokens() {
+		List<String> tokens = new ArrayList<>();
+		SessionJournal journal = this.journal;
+		if (journal != null) {
+			for (Long key : journal.getDetachedKeys()) {
+				tokens.add(SessionJournal.token(key));
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * The token a player gives resumeSession after a crash to get the
+	 * game of a session back, or null without a journal.
+	 */
+	public String getToken(Session session) {
+		SessionJournal journal = this.journal;
+		return journal == null ? null : SessionJournal.token(journal.key(session.getId()));
+	}
+
+	/**
+	 * Limit the heap the sessions may take together. Every session is
+	 * counted with the estimated footprint of a new game (see
+	 * Game.estimateFootprint), so the budget allows a fixed number of
+	 * sessions (see getMaxSessions). 0 removes the limit.
+	 */
+	public void setMemoryBudget(long bytes) {
+		if (bytes < 0) {
+			throw new IllegalArgumentException("The memory budget must not be negative");
+		}
+		this.memoryBudget = bytes;
+	}
+
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * Record the commands and events of every session created from now on
+	 * in the given metrics.
+	 */
+	public void setMetrics(GameMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Create a new session playing on the given channel and start its
+	 * play loop on the manager's executor.
+	 *
+	 * @return the new session
+	 * @throws IllegalStateException when the server is full
+	 */
+	public Session startSession(InputStream in, OutputStream out) {
+		return start(createSession(in, out));
+	}
+
+	/**
+	 * Take up a game that can be resumed (see getResumableTokens) in a
+	 * new session on the given channel and start its play loop. The game
+	 * goes on where the player left off.
+	 *
+	 * @param token the session token of the game (see getToken)
+	 * @return the new session
+	 * @throws IllegalArgumentException when no game can be resumed under the token
+	 * @throws IllegalStateException    when the server is full
+	 */
+	public Session resumeSession(String token, InputStream in, OutputStream out) {
+		SessionJournal journal = this.journal;
+		if (journal == null) {
+			throw new IllegalStateException("No journal to resume from");
+		}
+		long key = SessionJournal.parseToken(token);
+		// Taken after the capacity check, so a full server leaves it there
+		Session session = register(id -> {
+			Game restored = journal.takeDetached(key);
+			if (restored == null) {
+				throw new IllegalArgumentException("No session to resume under " + token);
+			}
+			return new Session(id, restored, in, toPrintStream(out), this);
+		});
+		Game game = session.getGame();
+		game.setSessionId(session.getId());
+		game.resumeJournal(journal, session.getId(), key);
+		if (metrics != null) {
+			game.setMetrics(metrics, session.getId());
+		}
+		return start(session);
+	}
+
+	/**
+	 * Register a new session without starting it. The caller decides
+	 * where its play loop runs (e.g. by calling run() itself).
+	 *
+	 * @throws IllegalStateException when the server is full
+	 */
+	public Session createSession(InputStream in, OutputStream out) {
+		Session session = register(id -> new Session(id, in, toPrintStream(out), this));
+		int id = session.getId();
+		session.getGame().setSessionId(id);
+		if (journal != null) {
+			session.getGame().setJournal(journal, id);
+		}
+		if (metrics != null) {
+			session.getGame().setMetrics(metrics, id);
+		}
+		return session;
+	}
+
+	private Session start(Session session) {
+		try {
+			executor.execute(session);
+		} catch (RejectedExecutionException e) {
+			sessionEnded(session);
+			throw new IllegalStateException("Could not start session " + session.getId(), e);
+		}
+		return session;
+	}
+
+	/**
+	 * Give the next id to a session made by the factory, unless the
+	 * server is full.
+	 */
+	private Session register(IntFunction<Session> factory) {
+		// Check the capacity first, so a full server creates no game
+		int capacity = getMaxSessions();
+		synchronized (sessions) {
+			if (sessions.size() + starting >= capacity) {
+				throw new IllegalStateException("Server full: " + capacity + " sessions running");
+			}
+			starting++;
+		}
+		Session session;
+		try {
+			session = factory.apply(nextId.getAndIncrement());
+		} finally {
+			synchronized (sessions) {
+				starting--;
+			}
+		}
+		synchronized (sessions) {
+			sessions.put(session.getId(), session);
+		}
+		return session;
+	}
+
+	/**
+	 * Called by a session when its game is over.
+	 */
+	void sessionEnded(Session session) {
+		sessions.remove(session.getId());
+		if (metrics != null) {
+			metrics.closeSession(session.getId());
+		}
+	}
+
+	public Session getSession(int id) {
+		return sessions.get(id);
+	}
+
+	public int getActiveSessionCount() {
+		return sessions.size();
+	}
+
+	/**
+	 * The number of sessions that may run at the same time: the limit
+	 * the manager was created with, or less if the memory budget allows
+	 * fewer.
+	 */
+	public int getMaxSessions() {
+		long budget = memoryBudget;
+		if (budget == 0) {
+			return maxSessions;
+		}
+		long perSession = Game.estimateFootprint(World.standard(), true);
+		return (int) Math.min(maxSessions, budget / perSession);
+	}
+
+	/**
+	 * About how many heap bytes the running sessions take (see
+	 * Game.getFootprint).
+	 */
+	public long getMemoryUsage() {
+		long bytes = 0;
+		for (Session session : sessions.values()) {
+			bytes += session.getGame().getFootprint();
+		}
+		return bytes;
+	}
+
+	private static PrintStream toPrintStream(OutputStream out) {
+		if (out instanceof PrintStream) {
+			return (PrintStream) out;
+		}
+		// UTF-8 for the box-drawing characters; the stream is written once
+		// per response instead of once per line
+		return SinkPrintStream.of(new StreamSink(out));
+	}
+}
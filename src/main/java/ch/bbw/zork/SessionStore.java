@@ -0,0 +1,259 @@
+package ch.bbw.zork;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * SessionStore - keeps the games of connected players and puts idle
+ * ones to sleep.
+ *
+ * The games on the heap may take a limited number of bytes (counted
+ * with Game.getFootprint). When they take more, the least recently used
+ * game is hibernated: its snapshot (see Game.writeSnapshot) is copied
+ * into a slot of one big off-heap buffer and the Game object is dropped.
+ * The next time the player types, the game is restored from its slot,
+ * which the player does not notice. Games whose snapshot would lose
+ * something (see Game.isSnapshotComplete) or does not fit a slot stay
+ * on the heap. When no game can make room any more, new games are
+ * turned away (see add) instead of going over the budget.
+ *
+ * Not thread-safe: meant to be used by a single thread such as the
+ * TelnetServer's selector loop.
+ */
+public class SessionStore {
+
+	// Bytes per hibernated game: a 2-byte length and the snapshot
+	private static final int SLOT_SIZE = 128;
+
+	private final long maxLiveBytes;
+	// Live games, least recently used first, and the heap they take (as
+	// charged when they were put, see LiveGame)
+	private final LinkedHashMap<Integer, LiveGame> live = new LinkedHashMap<>(16, 0.75f, true);
+	private long liveBytes;
+	// Slot index of every hibernated game
+	private final Map<Integer, Integer> hibernated = new HashMap<>();
+	private final ByteBuffer slots;
+	private final int[] freeSlots;
+	private int freeCount;
+	// Optional journal and metrics, attached again to games that wake up
+	private SessionJournal journal;
+	private GameMetrics metrics;
+
+	private long hibernations;
+	private long rehydrations;
+
+	/**
+	 * @param maxLiveBytes heap the live games may take before idle ones are
+	 *                     hibernated (Long.MAX_VALUE for no limit)
+	 * @param offHeapBytes size of the off-heap buffer for hibernated games
+	 *                     (0 keeps every game on the heap)
+	 */
+	public SessionStore(long maxLiveBytes, int offHeapBytes) {
+		this.maxLiveBytes = maxLiveBytes;
+		int slotCount = offHeapBytes / SLOT_SIZE;
+		this.slots = ByteBuffer.allocateDirect(slotCount * SLOT_SIZE);
+		this.freeSlots = new int[slotCount];
+		for (int i = 0; i < slotCount; i++) {
+			freeSlots[freeCount++] = slotCount - 1 - i;
+		}
+	}
+
+	/**
+	 * Games that wake up are recorded in this journal again.
+	 */
+	public void setJournal(SessionJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Games that wake up record into these metrics again.
+	 */
+	public void setMetrics(GameMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Add the game of a new session, hibernating idle games to make room
+	 * for it.
+	 *
+	 * @throws IllegalStateException when the live games would take more
+	 *         than the budget and none of them can be hibernated
+	 */
+	public void add(int sessionId, Game game) {
+		long footprint = game.getFootprint();
+		hibernateIdle(footprint);
+		if (liveBytes + footprint > maxLiveBytes) {
+			throw new IllegalStateException("Session store full: " + liveBytes + " of " + maxLiveBytes + " bytes live");
+		}
+		put(sessionId, game);
+	}
+
+	/**
+	 * Return the game of a session, waking it up if it was hibernated.
+	 * The slot it leaves lets another game go to sleep in its place, so
+	 * only games that cannot be hibernated keep the live games above the
+	 * budget for a while.
+	 *
+	 * @param out where a woken-up game prints to
+	 * @return the game, or null for an unknown session
+	 */
+	public Game get(int sessionId, PrintStream out) throws IOException {
+		LiveGame entry = live.get(sessionId); // also marks it as recently used
+		if (entry != null) {
+			return entry.game;
+		}
+		Integer slot = hibernated.get(sessionId);
+		if (slot == null) {
+			return null;
+		}
+		// Restored before the slot is given up, so a failure loses nothing
+		Game game = Game.restoreSnapshot(readSlot(slot), out);
+		hibernated.remove(sessionId);
+		freeSlots[freeCount++] = slot;
+
+		game.setSessionId(sessionId);
+		if (journal != null) {
+			game.setJournal(journal, sessionId);
+		}
+		if (metrics != null) {
+			game.setMetrics(metrics, sessionId);
+		}
+		rehydrations++;
+		hibernateIdle(game.getFootprint());
+		put(sessionId, game);
+		return game;
+	}
+
+	/**
+	 * Forget a session (the player left).
+	 */
+	public void remove(int sessionId) {
+		LiveGame entry = live.remove(sessionId);
+		if (entry != null) {
+			liveBytes -= entry.bytes;
+		} else {
+			Integer slot = hibernated.remove(sessionId);
+			if (slot != null) {
+				freeSlots[freeCount++] = slot;
+			}
+		}
+	}
+
+	/**
+	 * Forget the session of a player who left before the game was over,
+	 * and tell the journal that the game can be resumed (see
+	 * Game.detach).
+	 */
+	public void detach(int sessionId) {
+		LiveGame entry = live.get(sessionId);
+		if (entry != null) {
+			entry.game.detach();
+		} else {
+			Integer slot = hibernated.get(sessionId);
+			if (slot != null && journal != null) {
+				// Only unfinished games are hibernated
+				journal.recordDetach(journal.key(sessionId), readSlot(slot));
+			}
+		}
+		remove(sessionId);
+	}
+
+	public boolean isHibernated(int sessionId) {
+		return hibernated.containsKey(sessionId);
+	}
+
+	public int getLiveCount() {
+		return live.size();
+	}
+
+	/**
+	 * Heap bytes the live games take (see Game.getFootprint).
+	 */
+	public long getLiveBytes() {
+		return liveBytes;
+	}
+
+	public int getHibernatedCount() {
+		return hibernated.size();
+	}
+
+	/**
+	 * Off-heap bytes used by hibernated games.
+	 */
+	public long getHibernatedBytes() {
+		return (long) hibernated.size() * SLOT_SIZE;
+	}
+
+	public long getHibernations() {
+		return hibernations;
+	}
+
+	public long getRehydrations() {
+		return rehydrations;
+	}
+
+	private void put(int sessionId, Game game) {
+		LiveGame entry = new LiveGame(game, game.getFootprint());
+		LiveGame previous = live.put(sessionId, entry);
+		if (previous != null) {
+			liveBytes -= previous.bytes;
+		}
+		liveBytes += entry.bytes;
+	}
+
+	private byte[] readSlot(int slot) {
+		byte[] snapshot = new byte[slots.getShort(slot * SLOT_SIZE)];
+		ByteBuffer source = slots.duplicate();
+		source.position(slot * SLOT_SIZE + 2);
+		source.get(snapshot);
+		return snapshot;
+	}
+
+	/**
+	 * Move the least recently used games off the heap until a game of the
+	 * given footprint fits the budget or the off-heap buffer is full.
+	 */
+	private void hibernateIdle(long needed) {
+		Iterator<Map.Entry<Integer, LiveGame>> eldest = live.entrySet().iterator();
+		while (liveBytes + needed > maxLiveBytes && freeCount > 0 && eldest.hasNext()) {
+			Map.Entry<Integer, LiveGame> entry = eldest.next();
+			Game game = entry.getValue().game;
+			if (!game.isSnapshotComplete()) {
+				continue; // would come back without what the snapshot lacks
+			}
+			byte[] snapshot = game.writeSnapshot();
+			if (snapshot.length > SLOT_SIZE - 2) {
+				continue; // does not fit a slot - stays on the heap
+			}
+			int slot = freeSlots[--freeCount];
+			ByteBuffer target = slots.duplicate();
+			target.position(slot * SLOT_SIZE);
+			target.putShort((short) snapshot.length);
+			target.put(snapshot);
+			hibernated.put(entry.getKey(), slot);
+			eldest.remove();
+			liveBytes -= entry.getValue().bytes;
+			hibernations++;
+		}
+	}
+
+	/**
+	 * A live game and the bytes put charged for it. A game grows while it
+	 * is played (e.g. a guard that starts hunting), so the same bytes must
+	 * come off again when it leaves.
+	 */
+	private static final class LiveGame {
+		final Game game;
+		final long bytes;
+
+		LiveGame(Game game, long bytes) {
+			this.game = game;
+			this.bytes = bytes;
+		}
+	}
+}
@@ -0,0 +1,266 @@
+package ch.bbw.zork;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Simulation - plays games without a player or a console, e.g. to test
+ * the balance of the game over many thousands of playthroughs.
+ *
+ * A run feeds a list of commands to a new game built from a seed and
+ * returns how the game went as a Result. Nothing is printed: the games
+ * write to a stream that drops everything. The same seed and commands
+ * always give the same Result, and runs share nothing but the World,
+ * so they can be spread over all cores (see results).
+ *
+ * Instead of a fixed list of commands a run can be played by a Player,
+ * which picks every line from the state of the game and a generator
+ * seeded from the run (see BalanceAnalyzer).
+ *
+ *   java -cp target/classes ch.bbw.zork.Simulation 1000000 "go west" "go south" ...
+ *
+ * Arguments: number of runs, then the commands of every run (a route to
+ * the teleport machine when there are none).
+ */
+public class Simulation {
+
+	private static final String[] DEFAULT_SCRIPT = { "go west", "go south", "go west", "go south",
+			"hide alcove", "1", "1", "1", "2", "search teleportmachine" };
+
+	private final World world;
+	private final Consumer<Game> setup;
+
+	public Simulation() {
+		this(World.standard());
+	}
+
+	public Simulation(World world) {
+		this(world, game -> { });
+	}
+
+	/**
+	 * A simulation that calls setup on every new game before its first
+	 * command, e.g. to change the guard's rules.
+	 */
+	public Simulation(World world, Consumer<Game> setup) {
+		this.world = world;
+		this.setup = setup;
+	}
+
+	/**
+	 * Play one game: handle the commands in order until the game ends or
+	 * the commands run out.
+	 */
+	public Result run(long seed, String... commands) {
+		return run(seed, Arrays.asList(commands));
+	}
+
+	public Result run(long seed, List<String> commands) {
+		return run(seed, script(commands), commands.size());
+	}
+
+	/**
+	 * Play one game with the given player until the game ends, the player
+	 * has no more lines or maxTurns lines were handled. The player's
+	 * generator is seeded from the run's seed as well.
+	 */
+	public Result run(long seed, Player player, int maxTurns) {
+		Game game = new Game(null, SilentPrintStream.INSTANCE, seed, world);
+		setup.accept(game);
+		Random random = new Random(~seed);
+		int turns = 0;
+		while (turns < maxTurns) {
+			String line = player.nextLine(game, turns, random);
+			if (line == null) {
+				break;
+			}
+			turns++;
+			if (game.handleLine(line)) {
+				break;
+			}
+		}
+		return new Result(seed, game.getEnding(), game.getScore(), turns, game.getCurrentRoom());
+	}
+
+	/**
+	 * A player that types the given commands in order.
+	 */
+	public static Player script(List<String> commands) {
+		return (game, turn, random) -> turn < commands.size() ? commands.get(turn) : null;
+	}
+
+	/**
+	 * Play one game per seed from firstSeed to firstSeed + runs - 1, all
+	 * with the same commands. The stream is parallel, so the runs are
+	 * spread over the common fork/join pool; collect or reduce it rather
+	 * than keeping every Result when there are millions of runs.
+	 */
+	public Stream<Result> results(long firstSeed, int runs, List<String> commands) {
+		return LongStream.range(firstSeed, firstSeed + runs).parallel().mapToObj(seed -> run(seed, commands));
+	}
+
+	public static void main(String[] args) {
+		int runs = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		List<String> commands = Arrays.asList(args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : DEFAULT_SCRIPT);
+		Simulation simulation = new Simulation();
+
+		long start = System.nanoTime();
+		long[] totals = simulation.results(0, runs, commands).collect(() -> new long[Ending.values().length + 3],
+				(sums, result) -> {
+					sums[result.getEnding() == null ? Ending.values().length : result.getEnding().ordinal()]++;
+					sums[sums.length - 2] += result.getScore();
+					sums[sums.length - 1] += result.getTurns();
+				}, (a, b) -> {
+					for (int i = 0; i < a.length; i++) {
+						a[i] += b[i];
+					}
+				});
+		long elapsed = System.nanoTime() - start;
+
+		System.out.println("Runs:         " + runs);
+		System.out.println("Commands:     " + commands.size() + " per run");
+		for (Ending ending : Ending.values()) {
+			System.out.println(String.format(Locale.ROOT, "%-13s %d", ending.name().toLowerCase(Locale.ROOT) + ":", totals[ending.ordinal()]));
+		}
+		System.out.println("unfinished:   " + totals[Ending.values().length]);
+		System.out.println(String.format(Locale.ROOT, "Mean score:   %.1f", totals[totals.length - 2] / (double) runs));
+		System.out.println(String.format(Locale.ROOT, "Mean turns:   %.1f", totals[totals.length - 1] / (double) runs));
+		System.out.println("Elapsed:      " + elapsed / 1000000 + " ms");
+		System.out.println("Throughput:   " + (long) (runs / (elapsed / 1e9) * 60) + " runs/min");
+	}
+
+	/**
+	 * Plays a simulated game by choosing the lines to type. A Player is
+	 * shared by all runs (and threads), so it keeps no state of its own:
+	 * everything it needs is the game, the turn and the run's generator.
+	 */
+	public interface Player {
+
+		/**
+		 * The next line to type, or null to stop.
+		 *
+		 * @param turn the number of lines typed so far
+		 */
+		String nextLine(Game game, int turn, Random random);
+	}
+
+	/**
+	 * How one simulated game went.
+	 */
+	public static final class Result {
+
+		private final long seed;
+		private final Ending ending;
+		private final int score;
+		private final int turns;
+		private final Room room;
+
+		Result(long seed, Ending ending, int score, int turns, Room room) {
+			this.seed = seed;
+			this.ending = ending;
+			this.score = score;
+			this.turns = turns;
+			this.room = room;
+		}
+
+		public long getSeed() {
+			return seed;
+		}
+
+		/**
+		 * How the game ended (the escape route, if any), or null if the
+		 * commands ran out first.
+		 */
+		public Ending getEnding() {
+			return ending;
+		}
+
+		public int getScore() {
+			return score;
+		}
+
+		/**
+		 * The number of commands handled, including the one that ended the game.
+		 */
+		public int getTurns() {
+			return turns;
+		}
+
+		/**
+		 * The room the player was in at the end (e.g. where they got caught).
+		 */
+		public Room getRoom() {
+			return room;
+		}
+
+		public boolean isEscaped() {
+			return ending != null && ending.isEscape();
+		}
+
+		public boolean isCaught() {
+			return ending == Ending.CAUGHT;
+		}
+
+		@Override
+		public String toString() {
+			return "seed " + seed + ": " + (ending == null ? "unfinished" : ending.name().toLowerCase(Locale.ROOT))
+					+ " in " + room.shortDescription() + " after " + turns + " turns, score " + score;
+		}
+	}
+
+	/**
+	 * A PrintStream that drops everything. It keeps no state, so all
+	 * simulated games share one and never take its lock.
+	 */
+	private static final class SilentPrintStream extends PrintStream {
+
+		static final SilentPrintStream INSTANCE = new SilentPrintStream();
+
+		private SilentPrintStream() {
+			super(new OutputStream() {
+				public void write(int b) {
+					// simulated games are not shown to anyone
+				}
+			});
+		}
+
+		@Override public void write(int b) { }
+		@Override public void write(byte[] buf, int off, int len) { }
+		@Override public void print(boolean b) { }
+		@Override public void print(char c) { }
+		@Override public void print(int i) { }
+		@Override public void print(long l) { }
+		@Override public void print(float f) { }
+		@Override public void print(double d) { }
+		@Override public void print(char[] s) { }
+		@Override public void print(String s) { }
+		@Override public void print(Object obj) { }
+		@Override public void println() { }
+		@Override public void println(boolean x) { }
+		@Override public void println(char x) { }
+		@Override public void println(int x) { }
+		@Override public void println(long x) { }
+		@Override public void println(float x) { }
+		@Override public void println(double x) { }
+		@Override public void println(char[] x) { }
+		@Override public void println(String x) { }
+		@Override public void println(Object x) { }
+		@Override public PrintStream printf(String format, Object... args) { return this; }
+		@Override public PrintStream printf(Locale l, String format, Object... args) { return this; }
+		@Override public PrintStream format(String format, Object... args) { return this; }
+		@Override public PrintStream format(Locale l, String format, Object... args) { return this; }
+		@Override public PrintStream append(CharSequence csq) { return this; }
+		@Override public PrintStream append(CharSequence csq, int start, int end) { return this; }
+		@Override public PrintStream append(char c) { return this; }
+		@Override public void flush() { }
+		@Override public void close() { }
+		@Override public boolean checkError() { return false; }
+	}
+}
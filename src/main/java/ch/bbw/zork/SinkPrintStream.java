@@ -0,0 +1,51 @@
+package ch.bbw.zork;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * SinkPrintStream - the PrintStream a game prints to when its output
+ * goes to an OutputSink.
+ *
+ * Text is encoded as UTF-8 and handed to the sink as it is printed; the
+ * sink only sends it on flush(). Game recognizes this stream and writes
+ * its pre-encoded text (screens, room descriptions) to the sink
+ * directly.
+ */
+public final class SinkPrintStream extends PrintStream {
+
+	private final OutputSink sink;
+
+	private SinkPrintStream(OutputSink sink) throws UnsupportedEncodingException {
+		super(new OutputStream() {
+			@Override
+			public void write(int b) {
+				sink.write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] bytes, int offset, int length) {
+				sink.write(bytes, offset, length);
+			}
+
+			@Override
+			public void flush() {
+				sink.flush();
+			}
+		}, false, "UTF-8");
+		this.sink = sink;
+	}
+
+	public static SinkPrintStream of(OutputSink sink) {
+		try {
+			return new SinkPrintStream(sink);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public OutputSink getSink() {
+		return sink;
+	}
+}
@@ -0,0 +1,87 @@
+package ch.bbw.zork;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * StreamSink - buffers a session's output for an OutputStream (e.g. the
+ * stream of a blocking socket) and writes it once per response.
+ *
+ * Like a PrintStream it does not throw: after the first IOException the
+ * output is dropped and checkError() returns true.
+ */
+public class StreamSink implements OutputSink {
+
+	private final OutputStream out;
+	private final byte[] buffer;
+	private int count;
+	private boolean error;
+
+	public StreamSink(OutputStream out) {
+		this(out, 8192);
+	}
+
+	public StreamSink(OutputStream out, int bufferSize) {
+		this.out = out;
+		this.buffer = new byte[bufferSize];
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) {
+		while (length > 0) {
+			if (count == buffer.length) {
+				drain();
+			}
+			int n = Math.min(length, buffer.length - count);
+			System.arraycopy(bytes, offset, buffer, count, n);
+			count += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	@Override
+	public void write(ByteBuffer bytes) {
+		while (bytes.hasRemaining()) {
+			if (count == buffer.length) {
+				drain();
+			}
+			int n = Math.min(bytes.remaining(), buffer.length - count);
+			bytes.get(buffer, count, n);
+			count += n;
+		}
+	}
+
+	@Override
+	public void flush() {
+		drain();
+		if (!error) {
+			try {
+				out.flush();
+			} catch (IOException e) {
+				error = true;
+			}
+		}
+	}
+
+	/**
+	 * True once writing to the stream failed.
+	 */
+	public boolean checkError() {
+		return error;
+	}
+
+	// Write the buffered bytes (a response longer than the buffer is
+	// written in several pieces)
+	private void drain() {
+		if (count > 0 && !error) {
+			try {
+				out.write(buffer, 0, count);
+			} catch (IOException e) {
+				error = true;
+			}
+		}
+		count = 0;
+	}
+}
@@ -0,0 +1,500 @@
+package ch.bbw.zork;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+
+/**
+ * TelnetServer - serves the game over a plain TCP line protocol.
+ *
+ * A single thread runs a non-blocking Selector loop over all
+ * connections, so an idle player costs a socket and a Game but no
+ * thread. Bytes read from a socket are collected into lines; each
+ * complete line is handed to the connection's Game, and everything
+ * the game prints in response is queued in the connection's ChannelSink
+ * and written back without blocking. Works with telnet, netcat or any line-based bot client.
+ * The games themselves live in a SessionStore, which can hibernate the
+ * games of idle players off the heap.
+ *
+ * Usage: java -cp target/classes ch.bbw.zork.TelnetServer [port] [maxConnections] [liveHeapMB] [offHeapMB]
+ *
+ * When the system property zork.journal names a directory, every
+ * session is journaled there (see SessionJournal). The games a crash
+ * interrupted are recovered when the server starts, and a player who
+ * disconnected before the end can come back as well: typing "resume"
+ * and the session token the server showed them as their first line
+ * gives them their game back, until the journal's detach timeout is
+ * over.
+ *
+ * The server's GameMetrics are shown over JMX, and over HTTP in the
+ * Prometheus format when the system property zork.metrics.port names a
+ * port for the MetricsEndpoint.
+ */
+public class TelnetServer implements Runnable {
+
+	// Names the journal directory of main()
+	public static final String JOURNAL_PROPERTY = "zork.journal";
+	// Longer lines are cut off so a client cannot fill our memory
+	private static final int MAX_LINE_LENGTH = 512;
+	// Telnet "interpret as command" byte and the option negotiation codes
+	private static final int IAC = 255;
+	private static final int WILL = 251;
+	private static final int DONT = 254;
+
+	private final int port;
+	private final int maxConnections;
+	private Selector selector;
+	private ServerSocketChannel serverChannel;
+	private volatile boolean running;
+	// The games of all connections (only used by the selector thread)
+	private final SessionStore sessions;
+	// Optional crash-recovery journal for all connections
+	private SessionJournal journal;
+	// Optional metrics of all connections' games
+	private GameMetrics metrics;
+	private int nextSessionId = 1;
+	// Shared by all connections - only the selector thread touches it
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(8192);
+
+	// Statistics, readable from any thread
+	private final AtomicLong connections = new AtomicLong();
+	private final AtomicLong totalConnections = new AtomicLong();
+	private final AtomicLong bytesIn = new AtomicLong();
+	private final AtomicLong bytesOut = new AtomicLong();
+	private final AtomicLong commands = new AtomicLong();
+	private final AtomicLong commandNanos = new AtomicLong();
+	private final AtomicLong maxCommandNanos = new AtomicLong();
+
+	/**
+	 * Create a server that keeps the games of all players on the heap.
+	 */
+	public TelnetServer(int port, int maxConnections) {
+		this(port, maxConnections, new SessionStore(Long.MAX_VALUE, 0));
+	}
+
+	/**
+	 * Create a server whose games are kept in the given store.
+	 */
+	public TelnetServer(int port, int maxConnections, SessionStore sessions) {
+		this.port = port;
+		this.maxConnections = maxConnections;
+		this.sessions = sessions;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 2323;
+		int maxConnections = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		long liveBytes = args.length > 2 ? Long.parseLong(args[2]) * 1024 * 1024 : Long.MAX_VALUE;
+		int offHeapBytes = args.length > 3 ? Integer.parseInt(args[3]) * 1024 * 1024 : 0;
+		TelnetServer server = new TelnetServer(port, maxConnections, new SessionStore(liveBytes, offHeapBytes));
+		GameMetrics metrics = new GameMetrics();
+		try {
+			metrics.registerMBeans();
+		} catch (JMException e) {
+			System.err.println("Metrics are not shown over JMX: " + e.getMessage());
+		}
+		server.setMetrics(metrics);
+		String journalDirectory = System.getProperty(JOURNAL_PROPERTY);
+		if (journalDirectory != null) {
+			server.setJournal(new SessionJournal(new File(journalDirectory)));
+		}
+		String metricsPort = System.getProperty(GameMetrics.PORT_PROPERTY);
+		if (metricsPort != null) {
+			MetricsEndpoint endpoint = new MetricsEndpoint(metrics, Integer.parseInt(metricsPort));
+			endpoint.start();
+			System.out.println("Metrics on http://localhost:" + endpoint.getPort() + "/metrics");
+		}
+		server.start();
+		if (journalDirectory != null) {
+			System.out.println("Recovered " + server.getResumableCount() + " sessions from " + journalDirectory);
+		}
+		System.out.println("Zork server listening on port " + server.getPort());
+		server.run();
+	}
+
+	/**
+	 * Record every connection's session in the given journal. Must be
+	 * set before start().
+	 */
+	public void setJournal(SessionJournal journal) {
+		this.journal = journal;
+		sessions.setJournal(journal);
+	}
+
+	/**
+	 * Record the commands and events of every connection's game in the
+	 * given metrics. Must be set before start().
+	 */
+	public void setMetrics(GameMetrics metrics) {
+		this.metrics = metrics;
+		sessions.setMetrics(metrics);
+	}
+
+	/**
+	 * Open the listening socket. Call run() afterwards to serve clients.
+	 * With a journal, the sessions its earlier runs left unfinished are
+	 * recovered first.
+	 */
+	public void start() throws IOException {
+		if (journal != null) {
+			journal.recover();
+		}
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.configureBlocking(false);
+		serverChannel.bind(new InetSocketAddress(port));
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		running = true;
+	}
+
+	/**
+	 * The selector loop. Runs until stop() is called.
+	 */
+	public void run() {
+		try {
+			while (running) {
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isAcceptable()) {
+							accept();
+						} else {
+							if (key.isReadable()) {
+								read(key);
+							}
+							if (key.isValid() && key.isWritable()) {
+								write(key);
+							}
+						}
+					} catch (IOException e) {
+						close(key);
+					}
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Server stopped: " + e.getMessage());
+		} finally {
+			closeAll();
+		}
+	}
+
+	/**
+	 * Stop the selector loop and disconnect all players.
+	 */
+	public void stop() {
+		running = false;
+		if (selector != null) {
+			selector.wakeup();
+		}
+	}
+
+	/**
+	 * The port the server listens on (useful when started with port 0).
+	 */
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	public long getConnectionCount() {
+		return connections.get();
+	}
+
+	public long getTotalConnections() {
+		return totalConnections.get();
+	}
+
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+
+	public long getCommandCount() {
+		return commands.get();
+	}
+
+	/**
+	 * Average time the game needed to answer one line, in nanoseconds.
+	 */
+	public long getAverageCommandLatencyNanos() {
+		long count = commands.get();
+		return count == 0 ? 0 : commandNanos.get() / count;
+	}
+
+	public long getMaxCommandLatencyNanos() {
+		return maxCommandNanos.get();
+	}
+
+	/**
+	 * The number of games that can be resumed: recovered ones nobody took
+	 * up yet and those of players who disconnected.
+	 */
+	public int getResumableCount() {
+		return journal == null ? 0 : journal.getDetachedKeys().size();
+	}
+
+	/**
+	 * The store holding the players' games (live and hibernated).
+	 */
+	public SessionStore getSessionStore() {
+		return sessions;
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		if (connections.get() >= maxConnections) {
+			turnAway(channel);
+			return;
+		}
+		int sessionId = nextSessionId;
+		ChannelSink sink = new ChannelSink(channel);
+		Game game = new Game(sink);
+		try {
+			// Before anything is journaled, so a game turned away leaves no trace
+			sessions.add(sessionId, game);
+		} catch (IllegalStateException e) {
+			turnAway(channel);
+			return;
+		}
+		nextSessionId++;
+		SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+		Connection connection = new Connection(sessionId, sink, game.getOutput());
+		key.attach(connection);
+		connections.incrementAndGet();
+		totalConnections.incrementAndGet();
+
+		game.setSessionId(sessionId);
+		if (journal != null) {
+			game.setJournal(journal, sessionId);
+		}
+		if (metrics != null) {
+			game.setMetrics(metrics, sessionId);
+		}
+		if (journal != null) {
+			String token = SessionJournal.token(journal.key(sessionId));
+			connection.out.println("Your session token is " + token + ". Should the server restart, type \"resume "
+					+ token + "\" to go on.");
+		}
+		game.start();
+		queueOutput(key, connection);
+	}
+
+	private void turnAway(SocketChannel channel) throws IOException {
+		channel.write(ByteBuffer.wrap("Server full, please try again later.\r\n".getBytes(StandardCharsets.UTF_8)));
+		channel.close();
+	}
+
+	private void read(SelectionKey key) throws IOException {
+		SocketChannel channel = (SocketChannel) key.channel();
+		Connection connection = (Connection) key.attachment();
+		readBuffer.clear();
+		int n = channel.read(readBuffer);
+		if (n < 0) {
+			close(key);
+			return;
+		}
+		bytesIn.addAndGet(n);
+		readBuffer.flip();
+		while (readBuffer.hasRemaining() && !connection.closing) {
+			int b = readBuffer.get() & 0xFF;
+			if (connection.skipTelnetByte(b)) {
+				continue;
+			}
+			if (b == '\n') {
+				handleLine(connection);
+			} else if (b != '\r' && connection.lineLength < MAX_LINE_LENGTH) {
+				connection.line[connection.lineLength++] = (byte) b;
+			}
+		}
+		queueOutput(key, connection);
+	}
+
+	private void handleLine(Connection connection) throws IOException {
+		String line = new String(connection.line, 0, connection.lineLength, StandardCharsets.UTF_8);
+		connection.lineLength = 0;
+		boolean first = !connection.typed;
+		connection.typed = true;
+		if (first && journal != null && line.startsWith("resume ")) {
+			resume(connection, line.substring("resume ".length()).trim());
+			return;
+		}
+
+		long start = System.nanoTime();
+		Game game = sessions.get(connection.sessionId, connection.out);
+		boolean finished = game.handleLine(line);
+		long elapsed = System.nanoTime() - start;
+
+		commands.incrementAndGet();
+		commandNanos.addAndGet(elapsed);
+		long max;
+		while (elapsed > (max = maxCommandNanos.get()) && !maxCommandNanos.compareAndSet(max, elapsed)) {
+			// retry until the maximum is stored
+		}
+		if (finished) {
+			connection.closing = true;
+		}
+	}
+
+	/**
+	 * Give the connection the recovered game of the given token instead
+	 * of its new one.
+	 */
+	private void resume(Connection connection, String token) {
+		long key = 0;
+		Game game = null;
+		try {
+			key = SessionJournal.parseToken(token);
+			game = journal.takeDetached(key);
+		} catch (IllegalArgumentException e) {
+			// not a token - no game either
+		}
+		if (game == null) {
+			connection.out.println("There is no game to resume under " + token + ".");
+			connection.out.print("> ");
+			connection.out.flush();
+			return;
+		}
+		// The RESUME record replaces the new game's snapshot under this key
+		game.setOutput(connection.out);
+		game.setSessionId(connection.sessionId);
+		game.resumeJournal(journal, connection.sessionId, key);
+		if (metrics != null) {
+			game.setMetrics(metrics, connection.sessionId);
+		}
+		sessions.remove(connection.sessionId);
+		sessions.add(connection.sessionId, game);
+		game.resume();
+	}
+
+	/**
+	 * Send the responses the game queued (the game flushes its sink once
+	 * per response) right away.
+	 */
+	private void queueOutput(SelectionKey key, Connection connection) throws IOException {
+		connection.out.flush();
+		write(key);
+	}
+
+	private void write(SelectionKey key) throws IOException {
+		Connection connection = (Connection) key.attachment();
+		bytesOut.addAndGet(connection.sink.send());
+		if (connection.sink.hasPending()) {
+			// Socket buffer is full - wait until it can take more
+			key.interestOps(SelectionKey.OP_WRITE);
+			return;
+		}
+		if (connection.closing) {
+			close(key);
+		} else {
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	private void close(SelectionKey key) {
+		if (key.attachment() != null) {
+			Connection connection = (Connection) key.attachment();
+			int sessionId = connection.sessionId;
+			if (connection.closing) {
+				sessions.remove(sessionId); // the game is over
+			} else if (connection.typed) {
+				sessions.detach(sessionId);
+			} else {
+				// Nothing played yet - nothing to come back to
+				sessions.remove(sessionId);
+				if (journal != null) {
+					journal.recordEnd(journal.key(sessionId));
+				}
+			}
+			if (metrics != null) {
+				metrics.closeSession(sessionId);
+			}
+			connections.decrementAndGet();
+			key.attach(null);
+		}
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			// nothing left to do for this connection
+		}
+	}
+
+	private void closeAll() {
+		if (selector == null) {
+			return;
+		}
+		for (SelectionKey key : selector.keys()) {
+			close(key);
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			// shutting down anyway
+		}
+	}
+
+	/**
+	 * State of one connected player.
+	 */
+	private static class Connection {
+		final ChannelSink sink;
+		final PrintStream out;
+		final int sessionId;
+		final byte[] line = new byte[MAX_LINE_LENGTH];
+		int lineLength;
+		// False until the first line arrived (which may resume a game)
+		boolean typed;
+		boolean closing;
+		// Telnet negotiation: 0 = data, 1 = after IAC, 2 = option byte follows
+		private int telnetState;
+
+		Connection(int sessionId, ChannelSink sink, PrintStream out) {
+			this.sessionId = sessionId;
+			this.sink = sink;
+			this.out = out;
+		}
+
+		/**
+		 * Returns true when the byte belongs to a telnet command sequence
+		 * and must not end up in the player's line.
+		 */
+		boolean skipTelnetByte(int b) {
+			if (telnetState == 1) {
+				telnetState = (b >= WILL && b <= DONT) ? 2 : 0;
+				return b != IAC; // IAC IAC is a literal 255
+			}
+			if (telnetState == 2) {
+				telnetState = 0;
+				return true;
+			}
+			if (b == IAC) {
+				telnetState = 1;
+				return true;
+			}
+			return false;
+		}
+	}
+}
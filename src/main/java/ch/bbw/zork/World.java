@@ -0,0 +1,420 @@
+package ch.bbw.zork;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * World - the building the game is played in: rooms, exits, hiding
+ * spots, searchable objects, items and notes.
+ *
+ * A World never changes once it is built, so one instance is shared by
+ * all games in the process. Everything a player changes (searched
+ * objects, picked up notes, opened doors, the revealed teleport
+ * machine) is kept per game in a WorldState instead.
+ *
+ * The rooms, items and searchables the game's puzzles are built around
+ * are given by role (see Role), never by their keys or names.
+ *
+ * Rooms, searchables, notes and items are numbered in a fixed order
+ * (room by room), so a WorldState can store them as bits. Item names
+ * are numbered as well (item types), so an Inventory is a bitset too.
+ */
+public class World {
+
+	// System property naming a world file to play instead of the built-in one
+	public static final String WORLD_FILE_PROPERTY = "zork.world";
+	private static final String STANDARD_RESOURCE = "standard.world";
+
+	private static World standard;
+
+	private final Room[] rooms;
+	// The room graph: adjacency[room * Direction.COUNT + direction] is the
+	// id of the neighbouring room (or -1), exitLocks the lock of that exit
+	private final int[] adjacency;
+	private final int[] exitLocks;
+	// The exits into every room as from * Direction.COUNT + direction; those
+	// into room r are entrances[entranceStart[r]] to entrances[entranceStart[r + 1]]
+	private final int[] entranceStart;
+	private final int[] entrances;
+	private final Map<String, Room> roomsByKey;
+	private final Searchable[] searchables;
+	private final Note[] notes;
+	private final Item[] items;
+	// Item types: every distinct item name (in lower case) gets a number,
+	// and a mask with its bit lets an Inventory check for it in one step
+	private final Map<String, Integer> itemTypes;
+	private final long[][] itemTypeMasks;
+	// The mask of the item each searchable requires, by searchable id
+	private final long[][] requiredItemMasks;
+	// A mask no inventory can satisfy (for names without items)
+	private final long[] noItemMask;
+	private final Room startRoom;
+	private final Room guardStartRoom;
+	private final List<Room> guardForbiddenRooms;
+	// A Room, item name (lower case) or Searchable for every given role
+	private final Map<Role, Object> roles;
+	// Rooms by the names players type for them (see findRoom)
+	private final NameTrie<Room> roomNames;
+	// Built on first use (see getRoutes)
+	private volatile RoutingTable routes;
+
+	/**
+	 * Create a world from fully built rooms. The rooms and everything in
+	 * them must not be changed afterwards.
+	 *
+	 * @param rooms the rooms by key, in a fixed order
+	 */
+	public World(Map<String, Room> rooms, Room startRoom, Room guardStartRoom, List<Room> guardForbiddenRooms) {
+		this(rooms, startRoom, guardStartRoom, guardForbiddenRooms, new EnumMap<>(Role.class));
+	}
+
+	/**
+	 * Create a world whose rooms, items and searchables play the given
+	 * roles: a Room, an item name or a Searchable of the world, matching
+	 * the role's kind (WorldLoader checks this for world files).
+	 */
+	public World(Map<String, Room> rooms, Room startRoom, Room guardStartRoom, List<Room> guardForbiddenRooms,
+			Map<Role, Object> roles) {
+		this.roles = new EnumMap<>(Role.class);
+		for (Map.Entry<Role, Object> role : roles.entrySet()) {
+			Object value = role.getValue();
+			this.roles.put(role.getKey(), value instanceof String ? Inventory.key((String) value) : value);
+		}
+		this.roomsByKey = Collections.unmodifiableMap(new LinkedHashMap<>(rooms));
+		this.rooms = rooms.values().toArray(new Room[0]);
+		this.startRoom = startRoom;
+		this.guardStartRoom = guardStartRoom;
+		this.guardForbiddenRooms = Collections.unmodifiableList(new ArrayList<>(guardForbiddenRooms));
+
+		List<Searchable> allSearchables = new ArrayList<>();
+		List<Note> allNotes = new ArrayList<>();
+		List<Item> allItems = new ArrayList<>();
+		for (int i = 0; i < this.rooms.length; i++) {
+			Room room = this.rooms[i];
+			room.setId(i);
+			room.buildNameIndex();
+			for (Searchable searchable : room.getSearchables()) {
+				searchable.setId(allSearchables.size());
+				allSearchables.add(searchable);
+				if (searchable.getItem() != null) {
+					searchable.getItem().setId(allItems.size());
+					allItems.add(searchable.getItem());
+				}
+			}
+			for (Note note : room.getNotes()) {
+				note.setId(allNotes.size());
+				allNotes.add(note);
+			}
+		}
+		this.adjacency = new int[this.rooms.length * Direction.COUNT];
+		this.exitLocks = new int[this.rooms.length * Direction.COUNT];
+		for (Room room : this.rooms) {
+			for (int d = 0; d < Direction.COUNT; d++) {
+				Room next = room.nextRoom(Direction.get(d));
+				adjacency[room.getId() * Direction.COUNT + d] = next == null ? -1 : next.getId();
+				exitLocks[room.getId() * Direction.COUNT + d] = room.getExitLock(Direction.get(d));
+			}
+		}
+		this.entranceStart = new int[this.rooms.length + 1];
+		for (int exit : adjacency) {
+			if (exit >= 0) {
+				entranceStart[exit + 1]++;
+			}
+		}
+		for (int room = 0; room < this.rooms.length; room++) {
+			entranceStart[room + 1] += entranceStart[room];
+		}
+		this.entrances = new int[entranceStart[this.rooms.length]];
+		int[] fill = Arrays.copyOf(entranceStart, this.rooms.length);
+		for (int i = 0; i < adjacency.length; i++) {
+			if (adjacency[i] >= 0) {
+				entrances[fill[adjacency[i]]++] = i;
+			}
+		}
+		this.roomNames = new NameTrie<>();
+		for (Room room : this.rooms) {
+			roomNames.add(roomName(room), room);
+		}
+		for (Map.Entry<String, Room> entry : roomsByKey.entrySet()) {
+			roomNames.add(entry.getKey(), entry.getValue());
+		}
+		this.searchables = allSearchables.toArray(new Searchable[0]);
+		this.notes = allNotes.toArray(new Note[0]);
+		this.items = allItems.toArray(new Item[0]);
+
+		this.itemTypes = new HashMap<>();
+		for (Item item : this.items) {
+			Integer type = itemTypes.putIfAbsent(Inventory.key(item.getName()), itemTypes.size());
+			item.setTypeId(type == null ? itemTypes.size() - 1 : type);
+		}
+		this.itemTypeMasks = new long[itemTypes.size()][];
+		for (int type = 0; type < itemTypeMasks.length; type++) {
+			itemTypeMasks[type] = maskOf(type);
+		}
+		// The bit after the last type is never set in an inventory
+		this.noItemMask = maskOf(itemTypes.size());
+		this.requiredItemMasks = new long[this.searchables.length][];
+		for (Searchable searchable : this.searchables) {
+			String required = searchable.getRequiredItem();
+			requiredItemMasks[searchable.getId()] = required == null ? noItemMask : getItemMask(required);
+		}
+	}
+
+	private long[] maskOf(int type) {
+		long[] mask = new long[type / 64 + 1];
+		mask[type / 64] = 1L << type;
+		return mask;
+	}
+
+	/**
+	 * The world games are played in unless they are given another one:
+	 * the world file named by the system property zork.world, or else the
+	 * escape building of the original game (standard.world next to this
+	 * class). It is loaded on first use and then shared by every game.
+	 */
+	public static synchronized World standard() {
+		if (standard == null) {
+			standard = loadStandard();
+		}
+		return standard;
+	}
+
+	public Room getRoom(int id) {
+		return rooms[id];
+	}
+
+	/**
+	 * Find a room by its key (e.g. "empfangshalle"), or null.
+	 */
+	public Room getRoom(String key) {
+		return roomsByKey.get(key);
+	}
+
+	/**
+	 * Find the room a player means: its name without spaces
+	 * ("receptionhall") or its key ("empfangshalle"), in any case and
+	 * possibly abbreviated ("recep").
+	 */
+	public NameTrie.Match<Room> findRoom(String name) {
+		return roomNames.resolve(name);
+	}
+
+	/**
+	 * The name of a room without spaces, as players type it.
+	 */
+	private static String roomName(Room room) {
+		return room.getName().replace(" ", "");
+	}
+
+	/**
+	 * The shortest ways between all rooms. They are computed on first
+	 * use, which takes a while for a world of thousands of rooms, and
+	 * then shared by every game in this world.
+	 */
+	public RoutingTable getRoutes() {
+		RoutingTable table = routes;
+		if (table == null) {
+			synchronized (this) {
+				table = routes;
+				if (table == null) {
+					table = new RoutingTable(this);
+					routes = table;
+				}
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * The id of the room in the given direction, or -1 if there is no
+	 * exit. Locks are not checked (see WorldState.nextRoom).
+	 */
+	public int getExit(int room, Direction direction) {
+		return adjacency[room * Direction.COUNT + direction.ordinal()];
+	}
+
+	/**
+	 * The lock of the exit in the given direction, or -1 if it is not locked.
+	 */
+	public int getExitLock(int room, Direction direction) {
+		return exitLocks[room * Direction.COUNT + direction.ordinal()];
+	}
+
+	/**
+	 * Where the exits into a room start in the list of entrances: those
+	 * into the room are getEntrance(getEntranceStart(room)) up to (not
+	 * including) getEntrance(getEntranceStart(room + 1)).
+	 */
+	int getEntranceStart(int room) {
+		return entranceStart[room];
+	}
+
+	/**
+	 * An exit into a room, as the id of the room it leaves times
+	 * Direction.COUNT plus the direction it leaves in (see getEntranceStart).
+	 */
+	int getEntrance(int index) {
+		return entrances[index];
+	}
+
+	public int getRoomCount() {
+		return rooms.length;
+	}
+
+	public Searchable getSearchable(int id) {
+		return searchables[id];
+	}
+
+	public int getSearchableCount() {
+		return searchables.length;
+	}
+
+	public Note getNote(int id) {
+		return notes[id];
+	}
+
+	public int getNoteCount() {
+		return notes.length;
+	}
+
+	public Item getItem(int id) {
+		return items[id];
+	}
+
+	public int getItemCount() {
+		return items.length;
+	}
+
+	/**
+	 * The type of the items with the given name (ignoring case), or -1 if
+	 * there is no such item.
+	 */
+	public int getItemType(String name) {
+		Integer type = itemTypes.get(Inventory.key(name));
+		return type == null ? -1 : type;
+	}
+
+	/**
+	 * The number of item types, i.e. of distinct item names.
+	 */
+	public int getItemTypeCount() {
+		return itemTypeMasks.length;
+	}
+
+	/**
+	 * A mask of the item types with the given names, for
+	 * Inventory.hasAny and hasAll. A name without items gives a bit no
+	 * inventory has. The mask for a single name is shared, so it must
+	 * not be changed.
+	 */
+	public long[] getItemMask(String... names) {
+		if (names.length == 1) {
+			int type = getItemType(names[0]);
+			return type < 0 ? noItemMask : itemTypeMasks[type];
+		}
+		long[] mask = new long[0];
+		for (String name : names) {
+			mask = or(mask, getItemMask(name));
+		}
+		return mask;
+	}
+
+	/**
+	 * Same as getItemMask(String...) for the items playing the given
+	 * roles. A role no item plays gives a bit no inventory has.
+	 */
+	public long[] getItemMask(Role... roles) {
+		long[] mask = new long[0];
+		for (Role role : roles) {
+			String name = getItemName(role);
+			mask = or(mask, name == null ? noItemMask : getItemMask(name));
+		}
+		return mask;
+	}
+
+	private static long[] or(long[] mask, long[] other) {
+		if (other.length > mask.length) {
+			mask = Arrays.copyOf(mask, other.length);
+		}
+		for (int i = 0; i < other.length; i++) {
+			mask[i] |= other[i];
+		}
+		return mask;
+	}
+
+	/**
+	 * The mask of the item needed to open a door or gate. Without a
+	 * required item the mask can never be satisfied.
+	 */
+	public long[] getRequiredItems(Searchable searchable) {
+		return requiredItemMasks[searchable.getId()];
+	}
+
+	public Room getStartRoom() {
+		return startRoom;
+	}
+
+	public Room getGuardStartRoom() {
+		return guardStartRoom;
+	}
+
+	public List<Room> getGuardForbiddenRooms() {
+		return guardForbiddenRooms;
+	}
+
+	/**
+	 * The room playing a role of kind ROOM, or null if none does.
+	 */
+	public Room getRoom(Role role) {
+		return (Room) roles.get(checkKind(role, Role.Kind.ROOM));
+	}
+
+	/**
+	 * The (lower-case) name of the item playing a role of kind ITEM, or
+	 * null if none does.
+	 */
+	public String getItemName(Role role) {
+		return (String) roles.get(checkKind(role, Role.Kind.ITEM));
+	}
+
+	/**
+	 * The searchable playing a role of kind SEARCHABLE, or null if none
+	 * does.
+	 */
+	public Searchable getSearchable(Role role) {
+		return (Searchable) roles.get(checkKind(role, Role.Kind.SEARCHABLE));
+	}
+
+	private static Role checkKind(Role role, Role.Kind kind) {
+		if (role.getKind() != kind) {
+			throw new IllegalArgumentException(role.getName() + " is not a role of kind " + kind);
+		}
+		return role;
+	}
+
+	private static World loadStandard() {
+		String file = System.getProperty(WORLD_FILE_PROPERTY);
+		try {
+			if (file != null) {
+				return WorldLoader.load(new File(file));
+			}
+			try (InputStream in = World.class.getResourceAsStream(STANDARD_RESOURCE)) {
+				if (in == null) {
+					throw new IOException(STANDARD_RESOURCE + " is missing");
+				}
+				return WorldLoader.load(in);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not load the world " + (file != null ? file : STANDARD_RESOURCE), e);
+		}
+	}
+}
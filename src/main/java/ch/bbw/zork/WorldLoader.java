@@ -0,0 +1,524 @@
+package ch.bbw.zork;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * WorldLoader - reads a World from a world file, so new buildings can
+ * be played without changing the code.
+ *
+ * A world file is plain UTF-8 text with one definition per line. Empty
+ * lines and lines starting with '#' are ignored. Free text (descriptions,
+ * note texts) follows a '|' at the end of the line:
+ *
+ * <pre>
+ * room    &lt;key&gt; | &lt;description&gt;
+ * exit    &lt;room&gt; &lt;north|east|south|west&gt; &lt;room&gt; [lock=&lt;n&gt;]
+ * hide    &lt;room&gt; &lt;name&gt; | &lt;description&gt;
+ * search  &lt;room&gt; &lt;name&gt; [door] [vent] [gate] [safe] [hidden]
+ *         [requires=&lt;item&gt;] [opens=&lt;n&gt;] [password=&lt;code&gt;] | &lt;description&gt;
+ * item    &lt;name&gt; | &lt;description&gt;     (inside the search line above it)
+ * note    &lt;room&gt; &lt;name&gt; | &lt;text&gt;
+ * start   &lt;room&gt;
+ * guard   &lt;room&gt;
+ * forbid  &lt;room&gt;                        (the guard never enters it)
+ * role    &lt;vault|hideout&gt; &lt;room&gt;
+ * role    &lt;crowbar|pistol|bullets|disguise|energydrink&gt; &lt;item&gt;
+ * role    &lt;teleport|handle|hatch|atticdoor&gt; &lt;room&gt; &lt;searchable&gt;
+ * </pre>
+ *
+ * A locked exit stays closed until a searchable with the matching
+ * "opens" lock is used. Rooms may be used before the line defining them.
+ * The role lines tell the game which rooms, items and searchables its
+ * puzzles are built around (see Role); a building without a role line
+ * for a puzzle does not have that puzzle.
+ *
+ * Before a World is returned it is checked: every room must be
+ * reachable from the start room, every required item must exist and
+ * every role must be played by something that can play it, together
+ * with the roles its puzzle needs as well (e.g. a vent needs a vault to
+ * lead into and a crowbar to open it). All problems are reported
+ * together in one IOException.
+ *
+ *   java -cp target/classes ch.bbw.zork.WorldLoader &lt;world file&gt;
+ */
+public class WorldLoader {
+
+	private final Map<String, Room> rooms = new LinkedHashMap<>();
+	// Exits are connected once all rooms are known
+	private final List<Exit> exits = new ArrayList<>();
+	private final List<String> problems = new ArrayList<>();
+	private String startKey;
+	private String guardKey;
+	private final List<String> forbiddenKeys = new ArrayList<>();
+	// The words and line number of every role line, by role
+	private final Map<Role, List<String>> roleWords = new EnumMap<>(Role.class);
+	private final Map<Role, Integer> roleLines = new EnumMap<>(Role.class);
+	// Objects that refer to rooms, placed once all rooms are known
+	private final List<Object[]> placements = new ArrayList<>();
+	private Searchable lastSearchable;
+	private int lineNumber;
+
+	private WorldLoader() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: WorldLoader <world file>");
+			return;
+		}
+		long start = System.nanoTime();
+		World world = load(new File(args[0]));
+		long millis = (System.nanoTime() - start) / 1000000;
+		System.out.println(args[0] + " is valid: " + world.getRoomCount() + " rooms, "
+				+ world.getSearchableCount() + " searchables, " + world.getItemCount() + " items, "
+				+ world.getNoteCount() + " notes (loaded in " + millis + " ms)");
+	}
+
+	/**
+	 * Load and check the world in the given file.
+	 *
+	 * @throws IOException when the file cannot be read or the world is not valid
+	 */
+	public static World load(File file) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			return load(in);
+		}
+	}
+
+	/**
+	 * Load and check a world from a stream (e.g. a class path resource).
+	 */
+	public static World load(InputStream in) throws IOException {
+		return new WorldLoader().read(new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+
+	private World read(Reader source) throws IOException {
+		BufferedReader reader = new BufferedReader(source, 1 << 16);
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			parseLine(line);
+		}
+		World world = build();
+		if (!problems.isEmpty()) {
+			throw new IOException("Invalid world: " + String.join("\n  ", problems));
+		}
+		return world;
+	}
+
+	private void parseLine(String line) {
+		String text = null;
+		int bar = line.indexOf('|');
+		if (bar >= 0) {
+			text = line.substring(bar + 1).trim();
+			line = line.substring(0, bar);
+		}
+		List<String> words = words(line);
+		if (words.isEmpty() || words.get(0).startsWith("#")) {
+			return;
+		}
+		String keyword = words.get(0);
+		if (keyword.equals("room")) {
+			if (expect(words, 2, text, true) && rooms.put(words.get(1), new Room(text)) != null) {
+				problem("room " + words.get(1) + " is defined twice");
+			}
+		} else if (keyword.equals("exit")) {
+			if (words.size() < 4 || words.size() > 5) {
+				problem("expected: exit <room> <direction> <room> [lock=<n>]");
+			} else if (Direction.fromName(words.get(2)) == null) {
+				problem("unknown direction " + words.get(2));
+			} else {
+				int lock = words.size() == 5 ? number(option(words.get(4), "lock")) : -1;
+				exits.add(new Exit(words.get(1), Direction.fromName(words.get(2)), words.get(3), lock, lineNumber));
+			}
+		} else if (keyword.equals("hide")) {
+			if (expect(words, 3, text, true)) {
+				place(words.get(1), new Hideable(words.get(2), text));
+			}
+		} else if (keyword.equals("search")) {
+			lastSearchable = null;
+			if (words.size() >= 3 && text != null) {
+				lastSearchable = searchable(words, text);
+				place(words.get(1), lastSearchable);
+			} else {
+				problem("expected: search <room> <name> [options] | <description>");
+			}
+		} else if (keyword.equals("item")) {
+			if (lastSearchable == null) {
+				problem("item without a search line above it");
+			} else if (lastSearchable.getItem() != null) {
+				problem("only one item fits into " + lastSearchable.getName());
+			} else if (expect(words, 2, text, true)) {
+				lastSearchable.setItem(new Item(words.get(1), text));
+			}
+		} else if (keyword.equals("note")) {
+			if (expect(words, 3, text, true)) {
+				place(words.get(1), new Note(words.get(2), text));
+			}
+		} else if (keyword.equals("start")) {
+			if (expect(words, 2, text, false)) {
+				startKey = words.get(1);
+			}
+		} else if (keyword.equals("guard")) {
+			if (expect(words, 2, text, false)) {
+				guardKey = words.get(1);
+			}
+		} else if (keyword.equals("forbid")) {
+			if (expect(words, 2, text, false)) {
+				forbiddenKeys.add(words.get(1));
+			}
+		} else if (keyword.equals("role")) {
+			Role role = words.size() < 2 ? null : Role.fromName(words.get(1));
+			if (role == null) {
+				problem("unknown role " + (words.size() < 2 ? "" : words.get(1)));
+			} else if (expect(words, role.getKind() == Role.Kind.SEARCHABLE ? 4 : 3, text, false)) {
+				if (roleWords.put(role, words) != null) {
+					problem("role " + role.getName() + " is given twice");
+				}
+				roleLines.put(role, lineNumber);
+			}
+		} else {
+			problem("unknown definition " + keyword);
+		}
+	}
+
+	private Searchable searchable(List<String> words, String description) {
+		Searchable searchable = new Searchable(words.get(2), description, null);
+		for (int i = 3; i < words.size(); i++) {
+			String word = words.get(i);
+			if (word.equals("door")) {
+				searchable.setDoor(true);
+			} else if (word.equals("vent")) {
+				searchable.setVent(true);
+			} else if (word.equals("gate")) {
+				searchable.setGate(true);
+			} else if (word.equals("safe")) {
+				searchable.setPasswordProtected(true);
+			} else if (word.equals("hidden")) {
+				searchable.setHidden(true);
+			} else if (word.startsWith("requires=")) {
+				searchable.setRequiredItem(option(word, "requires"));
+			} else if (word.startsWith("password=")) {
+				searchable.setPasswordProtected(true);
+				searchable.setPassword(option(word, "password"));
+			} else if (word.startsWith("opens=")) {
+				searchable.setOpensLock(number(option(word, "opens")));
+			} else {
+				problem("unknown option " + word);
+			}
+		}
+		return searchable;
+	}
+
+	/**
+	 * Put the collected objects into their rooms, connect the rooms and
+	 * check the result.
+	 */
+	private World build() {
+		for (Object[] placement : placements) {
+			Room room = room((String) placement[0], (Integer) placement[2]);
+			if (room == null) {
+				continue;
+			}
+			Object object = placement[1];
+			if (object instanceof Hideable) {
+				room.addHideable((Hideable) object);
+			} else if (object instanceof Searchable) {
+				room.addSearchable((Searchable) object);
+			} else {
+				room.addNote((Note) object);
+			}
+		}
+		for (Exit exit : exits) {
+			Room from = room(exit.from, exit.line);
+			Room to = room(exit.to, exit.line);
+			if (from != null && to != null) {
+				from.setExit(exit.direction, to);
+				if (exit.lock >= 0) {
+					from.lockExit(exit.direction, exit.lock);
+				}
+			}
+		}
+		if (rooms.isEmpty()) {
+			problems.add("the world has no rooms");
+			return null;
+		}
+		Room start = startKey == null ? null : room(startKey, 0);
+		if (start == null) {
+			problems.add("no start room (start <room>)");
+			return null;
+		}
+		Room guardStart = guardKey == null ? null : room(guardKey, 0);
+		if (guardStart == null) {
+			problems.add("no guard start room (guard <room>)");
+			return null;
+		}
+		List<Room> forbidden = new ArrayList<>();
+		for (String key : forbiddenKeys) {
+			Room room = room(key, 0);
+			if (room != null) {
+				forbidden.add(room);
+			}
+		}
+
+		World world = new World(rooms, start, guardStart, forbidden, roles());
+		checkItems(world);
+		checkReachable(world);
+		checkRoles(world);
+		return world;
+	}
+
+	/**
+	 * The rooms, item names and searchables the role lines name.
+	 */
+	private Map<Role, Object> roles() {
+		Map<Role, Object> roles = new EnumMap<>(Role.class);
+		for (Map.Entry<Role, List<String>> entry : roleWords.entrySet()) {
+			Role role = entry.getKey();
+			List<String> words = entry.getValue();
+			int line = roleLines.get(role);
+			if (role.getKind() == Role.Kind.ITEM) {
+				roles.put(role, words.get(2));
+				continue;
+			}
+			Room room = room(words.get(2), line);
+			if (room == null) {
+				continue;
+			}
+			if (role.getKind() == Role.Kind.ROOM) {
+				roles.put(role, room);
+				continue;
+			}
+			for (Searchable searchable : room.getSearchables()) {
+				if (searchable.getName().equalsIgnoreCase(words.get(3))) {
+					roles.put(role, searchable);
+				}
+			}
+			if (!roles.containsKey(role)) {
+				problems.add("line " + line + ": room " + words.get(2) + " has no searchable " + words.get(3));
+			}
+		}
+		return roles;
+	}
+
+	/**
+	 * Every role must be played by something that can play it, and the
+	 * roles its puzzle needs must be given as well.
+	 */
+	private void checkRoles(World world) {
+		for (Role role : roleWords.keySet()) {
+			String item = role.getKind() == Role.Kind.ITEM ? world.getItemName(role) : null;
+			if (item != null && world.getItemType(item) < 0) {
+				roleProblem(role, "there is no item " + item + " in the world");
+			}
+		}
+		Room vault = world.getRoom(Role.VAULT);
+		Room hideout = world.getRoom(Role.HIDEOUT);
+		Searchable teleport = world.getSearchable(Role.TELEPORT);
+		Searchable handle = world.getSearchable(Role.VAULT_HANDLE);
+		Searchable hatch = world.getSearchable(Role.ROOF_HATCH);
+		Searchable atticDoor = world.getSearchable(Role.ATTIC_DOOR);
+
+		requireRoles(Role.VAULT, Role.CROWBAR);
+		requireRoles(Role.HIDEOUT, Role.TELEPORT);
+		requireRoles(Role.TELEPORT, Role.HIDEOUT);
+		requireRoles(Role.VAULT_HANDLE, Role.VAULT, Role.CROWBAR);
+		requireRoles(Role.ROOF_HATCH, Role.BULLETS);
+		if (teleport != null && (!teleport.isDoor() || !teleport.isHidden() || !isIn(teleport, hideout))) {
+			roleProblem(Role.TELEPORT, "must be a hidden door in the hideout");
+		}
+		if (handle != null && (!handle.isDoor() || handle.getOpensLock() < 0 || !isIn(handle, vault))) {
+			roleProblem(Role.VAULT_HANDLE, "must be a door in the vault that opens a lock");
+		}
+		if (hatch != null && !hatch.isGate()) {
+			roleProblem(Role.ROOF_HATCH, "must be a gate");
+		}
+		if (atticDoor != null && !atticDoor.isDoor()) {
+			roleProblem(Role.ATTIC_DOOR, "must be a door");
+		}
+
+		for (int i = 0; i < world.getSearchableCount(); i++) {
+			Searchable searchable = world.getSearchable(i);
+			if (searchable.isVent() && (vault == null || world.getItemName(Role.CROWBAR) == null)) {
+				problems.add(searchable.getName() + " is a vent, which needs the roles vault and crowbar");
+			}
+			if (searchable.isHidden() && !isIn(searchable, hideout)) {
+				problems.add(searchable.getName() + " is hidden, but only hiding in the hideout reveals something");
+			}
+		}
+	}
+
+	/**
+	 * A role needs the given other roles for its puzzle.
+	 */
+	private void requireRoles(Role role, Role... needed) {
+		if (!roleWords.containsKey(role)) {
+			return;
+		}
+		for (Role other : needed) {
+			if (!roleWords.containsKey(other)) {
+				roleProblem(role, "needs the role " + other.getName() + " as well");
+			}
+		}
+	}
+
+	private void roleProblem(Role role, String message) {
+		Integer line = roleLines.get(role);
+		problems.add((line != null ? "line " + line + ": " : "") + "role " + role.getName() + " " + message);
+	}
+
+	private static boolean isIn(Searchable searchable, Room room) {
+		return room != null && room.getSearchables().contains(searchable);
+	}
+
+	/**
+	 * Every item a door or gate requires must be found somewhere.
+	 */
+	private void checkItems(World world) {
+		Set<String> items = new HashSet<>();
+		for (int i = 0; i < world.getItemCount(); i++) {
+			items.add(world.getItem(i).getName().toLowerCase());
+		}
+		for (int i = 0; i < world.getSearchableCount(); i++) {
+			String required = world.getSearchable(i).getRequiredItem();
+			if (required != null && !items.contains(required.toLowerCase())) {
+				problems.add(world.getSearchable(i).getName() + " requires " + required + ", which is nowhere in the world");
+			}
+		}
+	}
+
+	/**
+	 * Every room must be reachable from the start room. Locked exits only
+	 * count if something in the world opens their lock.
+	 */
+	private void checkReachable(World world) {
+		BitSet openable = new BitSet();
+		for (int i = 0; i < world.getSearchableCount(); i++) {
+			int lock = world.getSearchable(i).getOpensLock();
+			if (lock >= 0) {
+				openable.set(lock);
+			}
+		}
+		boolean[] reached = new boolean[world.getRoomCount()];
+		int[] queue = new int[world.getRoomCount()];
+		int head = 0;
+		int tail = 0;
+		reached[world.getStartRoom().getId()] = true;
+		queue[tail++] = world.getStartRoom().getId();
+		while (head < tail) {
+			int room = queue[head++];
+			for (int d = 0; d < Direction.COUNT; d++) {
+				int next = world.getExit(room, Direction.get(d));
+				int lock = world.getExitLock(room, Direction.get(d));
+				if (next >= 0 && !reached[next] && (lock < 0 || openable.get(lock))) {
+					reached[next] = true;
+					queue[tail++] = next;
+				}
+			}
+		}
+		for (Map.Entry<String, Room> entry : rooms.entrySet()) {
+			if (!reached[entry.getValue().getId()]) {
+				problems.add("room " + entry.getKey() + " cannot be reached from " + startKey);
+			}
+		}
+	}
+
+	private void place(String roomKey, Object object) {
+		placements.add(new Object[] { roomKey, object, lineNumber });
+	}
+
+	private Room room(String key, int line) {
+		Room room = rooms.get(key);
+		if (room == null) {
+			problems.add((line > 0 ? "line " + line + ": " : "") + "unknown room " + key);
+		}
+		return room;
+	}
+
+	private boolean expect(List<String> words, int count, String text, boolean withText) {
+		if (words.size() != count || (text != null) != withText) {
+			problem("wrong number of words for " + words.get(0));
+			return false;
+		}
+		return true;
+	}
+
+	private String option(String word, String name) {
+		if (!word.startsWith(name + "=")) {
+			problem("expected " + name + "=... but found " + word);
+			return null;
+		}
+		return word.substring(name.length() + 1);
+	}
+
+	private int number(String value) {
+		try {
+			int number = Integer.parseInt(value);
+			if (number >= 0) {
+				return number;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		problem("expected a number >= 0 but found " + value);
+		return -1;
+	}
+
+	private void problem(String message) {
+		problems.add("line " + lineNumber + ": " + message);
+	}
+
+	/**
+	 * Split a line at spaces and tabs (without regular expressions, as
+	 * world files can have many thousand lines).
+	 */
+	private static List<String> words(String line) {
+		List<String> words = new ArrayList<>(6);
+		int length = line.length();
+		int i = 0;
+		while (i < length) {
+			while (i < length && Character.isWhitespace(line.charAt(i))) {
+				i++;
+			}
+			int start = i;
+			while (i < length && !Character.isWhitespace(line.charAt(i))) {
+				i++;
+			}
+			if (i > start) {
+				words.add(line.substring(start, i));
+			}
+		}
+		return words;
+	}
+
+	private static class Exit {
+		final String from;
+		final Direction direction;
+		final String to;
+		final int lock;
+		final int line;
+
+		Exit(String from, Direction direction, String to, int lock, int line) {
+			this.from = from;
+			this.direction = direction;
+			this.to = to;
+			this.lock = lock;
+			this.line = line;
+		}
+	}
+}
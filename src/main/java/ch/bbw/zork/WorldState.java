@@ -0,0 +1,107 @@
+package ch.bbw.zork;
+
+import java.util.BitSet;
+
+/**
+ * WorldState - everything one game has changed in the shared World.
+ *
+ * The World itself is never modified. Instead every game keeps a few
+ * bitsets indexed by the ids the World gave its objects: which
+ * searchables were searched, which notes were picked up, which locks
+ * (doors) were opened and which hidden objects were revealed.
+ */
+public class WorldState {
+
+	private final World world;
+	private final BitSet searched;
+	private final BitSet notesTaken;
+	private final BitSet openLocks;
+	private final BitSet revealed;
+
+	public WorldState(World world) {
+		this.world = world;
+		this.searched = new BitSet();
+		this.notesTaken = new BitSet();
+		this.openLocks = new BitSet();
+		this.revealed = new BitSet();
+	}
+
+	public World getWorld() {
+		return world;
+	}
+
+	public boolean isSearched(Searchable searchable) {
+		// True when the player already looked here
+		return searched.get(searchable.getId());
+	}
+
+	public void setSearched(Searchable searchable) {
+		searched.set(searchable.getId());
+	}
+
+	public boolean isTaken(Note note) {
+		return notesTaken.get(note.getId());
+	}
+
+	public void take(Note note) {
+		notesTaken.set(note.getId());
+	}
+
+	public boolean isOpen(int lock) {
+		return openLocks.get(lock);
+	}
+
+	public void open(int lock) {
+		openLocks.set(lock);
+	}
+
+	/**
+	 * A searchable is visible unless it is hidden and not yet revealed.
+	 */
+	public boolean isVisible(Searchable searchable) {
+		return !searchable.isHidden() || revealed.get(searchable.getId());
+	}
+
+	public void reveal(Searchable searchable) {
+		revealed.set(searchable.getId());
+	}
+
+	/**
+	 * The room in the given direction as this game sees it: exits that
+	 * are locked and not yet opened lead nowhere.
+	 */
+	public Room nextRoom(Room room, Direction direction) {
+		int next = nextRoom(room.getId(), direction);
+		return next < 0 ? null : world.getRoom(next);
+	}
+
+	/**
+	 * Same as nextRoom(Room, Direction) on room ids, or -1 for no exit.
+	 */
+	public int nextRoom(int room, Direction direction) {
+		int next = world.getExit(room, direction);
+		if (next < 0) {
+			return -1;
+		}
+		int lock = world.getExitLock(room, direction);
+		return (lock < 0 || openLocks.get(lock)) ? next : -1;
+	}
+
+	// The raw bitsets, used to write and restore snapshots
+
+	BitSet getSearchedBits() {
+		return searched;
+	}
+
+	BitSet getNotesTakenBits() {
+		return notesTaken;
+	}
+
+	BitSet getOpenLockBits() {
+		return openLocks;
+	}
+
+	BitSet getRevealedBits() {
+		return revealed;
+	}
+}
@@ -0,0 +1,47 @@
+package ch.bbw.zork;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class BalanceAnalyzerTest {
+
+	@Test
+	public void explorerWaitsInARoomWithNothingToDo() throws IOException {
+		World world = GeneratedWorlds.grid(1, 1);
+		Game game = new Game(null, silent(), 1, world);
+		game.start();
+		game.handleLine("go east");
+		game.handleLine("go south");
+		assertEquals("Pit", game.getCurrentRoom().getName());
+
+		BalanceAnalyzer.Explorer explorer = new BalanceAnalyzer.Explorer(world);
+		Random random = new Random(1);
+		for (int turn = 0; turn < 10; turn++) {
+			assertEquals("inventory", explorer.nextLine(game, turn, random));
+		}
+	}
+
+	@Test
+	public void explorerPlaysAGeneratedWorld() throws IOException {
+		World world = GeneratedWorlds.grid(3, 1);
+		BalanceAnalyzer analyzer = new BalanceAnalyzer(world, 2, new ArrayList<Room>(), ForkJoinPool.commonPool());
+		BalanceAnalyzer.Report report = analyzer.analyze(new BalanceAnalyzer.Explorer(world), 0, 500, 200);
+		assertEquals(500, report.getRuns());
+	}
+
+	private static PrintStream silent() {
+		return new PrintStream(new OutputStream() {
+			public void write(int b) {
+				// not checked
+			}
+		});
+	}
+}
@@ -0,0 +1,31 @@
+package ch.bbw.zork;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GameRandomTest {
+
+	@Test
+	public void drawsLikeJavaUtilRandom() {
+		Random expected = new Random(42);
+		GameRandom random = new GameRandom(42);
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(expected.nextInt(1 + i), random.nextInt(1 + i));
+			assertEquals(expected.nextLong(), random.nextLong());
+		}
+	}
+
+	@Test
+	public void stateContinuesWithoutDrawing() {
+		GameRandom random = new GameRandom(7);
+		random.nextInt(10);
+		GameRandom copy = new GameRandom(0);
+		copy.setState(random.getState());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(random.nextInt(), copy.nextInt());
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package ch.bbw.zork;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Worlds and reference searches shared by the tests.
+ */
+final class GeneratedWorlds {
+
+	private GeneratedWorlds() {
+	}
+
+	/**
+	 * A size x size grid whose rows are corridors and whose first column
+	 * joins them (so every room can be reached), plus random one-way
+	 * exits to the rooms above and below. Behind the last room lie two
+	 * rooms with no way back: a trap with an exit in every direction,
+	 * all into a pit without exits.
+	 */
+	static World grid(int size, long seed) throws IOException {
+		Random random = new Random(seed);
+		StringBuilder text = new StringBuilder("start g0_0\nguard g0_0\n");
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				text.append("room g").append(x).append('_').append(y).append(" | Room ").append(x).append('/').append(y).append('\n');
+				if (x > 0) {
+					exit(text, x, y, "west", x - 1, y);
+					exit(text, x - 1, y, "east", x, y);
+				}
+				if (y > 0 && (x == 0 || random.nextInt(3) == 0)) {
+					exit(text, x, y, "north", x, y - 1);
+				}
+				if (y > 0 && (x == 0 || random.nextInt(3) == 0)) {
+					exit(text, x, y - 1, "south", x, y);
+				}
+			}
+		}
+		text.append("room trap | Trap\nroom pit | Pit\n");
+		text.append("exit g").append(size - 1).append('_').append(size - 1).append(" east trap\n");
+		for (String direction : new String[] { "north", "east", "south", "west" }) {
+			text.append("exit trap ").append(direction).append(" pit\n");
+		}
+		return WorldLoader.load(new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static void exit(StringBuilder text, int x, int y, String direction, int toX, int toY) {
+		text.append("exit g").append(x).append('_').append(y).append(' ').append(direction)
+				.append(" g").append(toX).append('_').append(toY).append('\n');
+	}
+
+	/**
+	 * The number of steps from every room to the target along the exits,
+	 * -1 where there is no way: a plain breadth-first search.
+	 */
+	static int[] distancesTo(World world, int target) {
+		int[] distance = new int[world.getRoomCount()];
+		Arrays.fill(distance, -1);
+		distance[target] = 0;
+		ArrayDeque<Integer> queue = new ArrayDeque<>();
+		queue.add(target);
+		while (!queue.isEmpty()) {
+			int room = queue.poll();
+			for (int from = 0; from < world.getRoomCount(); from++) {
+				if (distance[from] >= 0) {
+					continue;
+				}
+				for (int d = 0; d < Direction.COUNT; d++) {
+					if (world.getExit(from, Direction.get(d)) == room) {
+						distance[from] = distance[room] + 1;
+						queue.add(from);
+						break;
+					}
+				}
+			}
+		}
+		return distance;
+	}
+}
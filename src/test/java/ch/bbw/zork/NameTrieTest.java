@@ -0,0 +1,71 @@
+package ch.bbw.zork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class NameTrieTest {
+
+	private final NameTrie<Integer> trie = new NameTrie<>();
+
+	public NameTrieTest() {
+		trie.add("drawer", 1);
+		trie.add("desk", 2);
+		trie.add("door", 3);
+		trie.add("doormat", 4);
+		trie.add("Inventory", 5);
+		trie.add("DESK", 6); // the same name again
+	}
+
+	@Test
+	public void uniquePrefixResolvesToItsName() {
+		assertEquals("drawer", trie.resolve("dra").getName());
+		assertEquals(Integer.valueOf(2), trie.resolve("des").getValue());
+		assertEquals(Integer.valueOf(4), trie.resolve("doorm").getValue());
+	}
+
+	@Test
+	public void exactNameWinsOverLongerOnes() {
+		NameTrie.Match<Integer> match = trie.resolve("door");
+		assertTrue(match.isFound());
+		assertEquals(Integer.valueOf(3), match.getValue());
+	}
+
+	@Test
+	public void sharedPrefixIsAmbiguousInAddingOrder() {
+		NameTrie.Match<Integer> match = trie.resolve("d");
+		assertTrue(match.isAmbiguous());
+		assertFalse(match.isFound());
+		assertEquals(Arrays.asList("drawer", "desk", "door", "doormat"), match.getCandidateNames());
+		assertEquals(Arrays.asList(1, 2, 3, 4), match.getCandidates());
+		assertEquals(Arrays.asList("door", "doormat"), trie.resolve("do").getCandidateNames());
+	}
+
+	@Test
+	public void caseIsIgnoredAndTheFirstValueKept() {
+		assertEquals(5, trie.size());
+		assertEquals("Inventory", trie.resolve("INV").getName());
+		assertEquals(Integer.valueOf(2), trie.resolve("Desk").getValue());
+	}
+
+	@Test
+	public void unknownOrEmptyWordsResolveToNothing() {
+		for (String word : new String[] { "x", "drawers", "" }) {
+			NameTrie.Match<Integer> match = trie.resolve(word);
+			assertFalse(word, match.isFound());
+			assertFalse(word, match.isAmbiguous());
+			assertNull(word, match.getValue());
+		}
+	}
+
+	@Test
+	public void partOfALineResolvesWithoutCopying() {
+		String line = "search dra now";
+		assertEquals("drawer", trie.resolve(line, 7, 10).getName());
+	}
+}
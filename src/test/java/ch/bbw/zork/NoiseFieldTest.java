@@ -0,0 +1,72 @@
+package ch.bbw.zork;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class NoiseFieldTest {
+
+	@Test
+	public void standardWorldMatchesSearch() {
+		checkRandomMoves(World.standard(), 500, 1);
+	}
+
+	@Test
+	public void gridMatchesSearch() throws IOException {
+		checkRandomMoves(GeneratedWorlds.grid(20, 9), 300, 2);
+	}
+
+	@Test
+	public void noiseFadesAndIsHeardInRange() {
+		World world = World.standard();
+		NoiseField field = new NoiseField(world);
+		Room start = world.getStartRoom();
+		field.moveSource(start);
+		field.makeNoise(2);
+		field.makeNoise(1); // quieter, changes nothing
+		assertEquals(2, field.getLevel());
+		for (int room = 0; room < world.getRoomCount(); room++) {
+			int steps = field.getDistance(world.getRoom(room));
+			assertEquals(steps >= 0 && steps <= 2, field.isHeardIn(world.getRoom(room)));
+		}
+		field.fade();
+		field.fade();
+		field.fade();
+		assertEquals(0, field.getLevel());
+		assertEquals(true, field.isHeardIn(start));
+	}
+
+	/**
+	 * Walk the source around (sometimes jumping anywhere), make noises
+	 * and compare every room's distance with a search from scratch.
+	 */
+	private static void checkRandomMoves(World world, int moves, long seed) {
+		Random random = new Random(seed);
+		NoiseField field = new NoiseField(world);
+		int room = 0;
+		for (int move = 0; move < moves; move++) {
+			if (random.nextInt(10) == 0) {
+				room = random.nextInt(world.getRoomCount());
+			} else {
+				int next = world.getExit(room, Direction.get(random.nextInt(Direction.COUNT)));
+				if (next >= 0) {
+					room = next;
+				}
+			}
+			field.moveSource(world.getRoom(room));
+			if (random.nextInt(4) == 0) {
+				field.makeNoise(random.nextInt(NoiseField.RANGE + 2));
+			} else {
+				field.fade();
+			}
+			int[] distance = GeneratedWorlds.distancesTo(world, room);
+			for (int other = 0; other < distance.length; other++) {
+				int expected = distance[other] > NoiseField.RANGE ? -1 : distance[other];
+				assertEquals("move " + move + ", room " + other, expected, field.getDistance(world.getRoom(other)));
+			}
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package ch.bbw.zork;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class RoutingTableTest {
+
+	@Test
+	public void standardWorldRoutesAreShortest() {
+		checkAgainstSearch(World.standard());
+	}
+
+	@Test
+	public void gridRoutesAreShortest() throws IOException {
+		// Over 64 rooms, so the table is built in several batches
+		checkAgainstSearch(GeneratedWorlds.grid(12, 5));
+	}
+
+	private static void checkAgainstSearch(World world) {
+		RoutingTable routes = world.getRoutes();
+		for (int target = 0; target < world.getRoomCount(); target++) {
+			int[] distance = GeneratedWorlds.distancesTo(world, target);
+			for (int from = 0; from < world.getRoomCount(); from++) {
+				String way = world.getRoom(from).shortDescription() + " to " + world.getRoom(target).shortDescription();
+				assertEquals(way, from == target ? 0 : distance[from], routes.distance(from, target));
+				int hop = routes.nextHop(from, target);
+				if (distance[from] > 0) {
+					// The first step leads one step closer
+					int next = world.getExit(from, Direction.get(hop));
+					assertEquals(way, distance[from] - 1, distance[next]);
+				} else {
+					assertEquals(way, -1, hop);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package ch.bbw.zork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SessionJournalTest {
+
+	private static final String[] SCRIPT = { "search drawer", "pickup note", "go west", "map", "go north", "inventory",
+			"search cabinet", "help", "go west", "map" };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void crashedSessionIsRecovered() throws IOException {
+		File directory = folder.newFolder();
+		SessionJournal first = open(directory);
+		Game game = new Game(silent(), 42);
+		game.setJournal(first, 1);
+		for (String line : SCRIPT) {
+			game.handleLine(line);
+		}
+		assertFalse(game.isGameOver());
+		// The process dies: no END record for the game
+		first.close();
+
+		SessionJournal second = open(directory);
+		assertEquals(first.getEpoch() + 1, second.getEpoch());
+		// The new run's session 1 must not clobber the crashed one
+		Game next = new Game(silent(), 7);
+		next.setJournal(second, 1);
+		next.handleLine("quit");
+
+		assertEquals(1, second.recover());
+		Game recovered = second.takeDetached(SessionJournal.key(first.getEpoch(), 1));
+		second.close();
+		assertEquals(game.toStateMap(), recovered.toStateMap());
+	}
+
+	@Test
+	public void resumedSessionMovesToTheNewRun() throws IOException {
+		File directory = folder.newFolder();
+		SessionJournal first = open(directory);
+		Game game = new Game(silent(), 42);
+		game.setJournal(first, 1);
+		game.handleLine("go east");
+		first.close();
+
+		SessionJournal second = open(directory);
+		SessionManager manager = new SessionManager(10, Runnable::run);
+		manager.setJournal(second);
+		assertEquals(1, manager.recoverSessions());
+		String token = SessionJournal.token(SessionJournal.key(first.getEpoch(), 1));
+		assertEquals(Collections.singletonList(token), manager.getResumableTokens());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// Plays until the input ends (the player leaves again)
+		Session session = manager.resumeSession(token, input("search desk\n"), out);
+		assertTrue(out.toString("UTF-8").startsWith("Welcome back."));
+		// The player who left can come back in the same run
+		assertEquals(Collections.singletonList(manager.getToken(session)), manager.getResumableTokens());
+		second.close();
+
+		Map<Long, Game> games = SessionJournal.recover(directory);
+		assertEquals(1, games.size());
+		Game recovered = games.get(SessionJournal.key(second.getEpoch(), session.getId()));
+		assertEquals(session.getGame().toStateMap(), recovered.toStateMap());
+	}
+
+	@Test
+	public void leftGamesExpire() throws IOException {
+		File directory = folder.newFolder();
+		SessionJournal first = new SessionJournal(directory, 4, 10, 1024 * 1024, 0);
+		Game game = new Game(input("go east\n"), silent(), 42);
+		game.setJournal(first, 1);
+		game.play(); // input ends: the player left
+		first.close();
+
+		assertTrue(SessionJournal.recover(directory).isEmpty());
+		SessionJournal second = open(directory);
+		assertEquals(0, second.recover());
+		assertNull(second.takeDetached(SessionJournal.key(first.getEpoch(), 1)));
+		second.close();
+	}
+
+	@Test
+	public void segmentsBehindTheOpenSessionsAreArchived() throws IOException {
+		File directory = folder.newFolder();
+		// Small segments, so the script fills a few of them
+		SessionJournal journal = new SessionJournal(directory, 2, 10, 256);
+		Game finished = new Game(silent(), 42);
+		finished.setJournal(journal, 1);
+		for (String line : SCRIPT) {
+			finished.handleLine(line);
+		}
+		finished.handleLine("quit");
+		Game open = new Game(silent(), 7);
+		open.setJournal(journal, 2);
+		for (String line : SCRIPT) {
+			open.handleLine(line);
+		}
+		journal.commit();
+		journal.close();
+
+		File[] archived = JournalReader.segments(new File(directory, SessionJournal.ARCHIVE_DIRECTORY));
+		assertTrue(archived.length > 0);
+		// Recovery still finds the open game in what is left
+		Map<Long, Game> games = SessionJournal.recover(directory);
+		assertEquals(Collections.singleton(journal.key(2)), games.keySet());
+		assertEquals(open.toStateMap(), games.get(journal.key(2)).toStateMap());
+
+		// The whole history stays readable
+		int[] lines = new int[1];
+		JournalReader.scanHistory(directory, (key, type, payload) -> {
+			if (type == SessionJournal.LINE) {
+				lines[0]++;
+			}
+		});
+		assertEquals(2 * SCRIPT.length + 1, lines[0]);
+	}
+
+	private static SessionJournal open(File directory) throws IOException {
+		return new SessionJournal(directory, 4, 10, 1024 * 1024);
+	}
+
+	private static ByteArrayInputStream input(String text) {
+		return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static PrintStream silent() {
+		return new PrintStream(new OutputStream() {
+			public void write(int b) {
+				// not checked
+			}
+		});
+	}
+}
@@ -0,0 +1,51 @@
+package ch.bbw.zork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+public class SessionManagerTest {
+
+	@Test
+	public void fullServerCreatesNoGame() {
+		SessionManager manager = new SessionManager(1);
+		assertEquals(1, create(manager).getId());
+		try {
+			create(manager);
+			fail("the second session must be turned away");
+		} catch (IllegalStateException expected) {
+			// the server is full
+		}
+		manager.sessionEnded(manager.getSession(1));
+		// The turned away player used up no session id
+		assertEquals(2, create(manager).getId());
+	}
+
+	@Test
+	public void memoryBudgetBoundsSessions() {
+		SessionManager manager = new SessionManager(100);
+		long perSession = Game.estimateFootprint(World.standard(), true);
+		manager.setMemoryBudget(3 * perSession + perSession / 2);
+		assertEquals(3, manager.getMaxSessions());
+		for (int i = 0; i < 3; i++) {
+			create(manager);
+		}
+		try {
+			create(manager);
+			fail("the budget allows three sessions");
+		} catch (IllegalStateException expected) {
+			// over budget
+		}
+		long usage = manager.getMemoryUsage();
+		assertTrue(usage > 0 && usage <= manager.getMemoryBudget());
+	}
+
+	private static Session create(SessionManager manager) {
+		return manager.createSession(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream());
+	}
+}
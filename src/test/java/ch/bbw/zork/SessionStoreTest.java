@@ -0,0 +1,93 @@
+package ch.bbw.zork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+public class SessionStoreTest {
+
+	private final long footprint = new Game(silent(), 1).getFootprint();
+
+	@Test
+	public void idleGamesGoToSleepWhenTheBudgetIsUsedUp() throws IOException {
+		SessionStore store = new SessionStore(2 * footprint, 1024);
+		for (int id = 1; id <= 3; id++) {
+			store.add(id, new Game(silent(), id));
+		}
+		assertTrue(store.isHibernated(1));
+		assertEquals(2 * footprint, store.getLiveBytes());
+
+		Game game = store.get(1, silent());
+		assertFalse(store.isHibernated(1));
+		assertTrue(store.isHibernated(2));
+		assertSame(game, store.get(1, silent()));
+		assertEquals(2 * footprint, store.getLiveBytes());
+	}
+
+	@Test
+	public void gamesTheSnapshotCannotHoldStayAwake() {
+		Game hunted = new Game(silent(), 1);
+		hunted.setHunting(true);
+		SessionStore store = new SessionStore(hunted.getFootprint() + footprint, 1024);
+		Game faster = new Game(silent(), 2);
+		faster.setMovesPerRound(5);
+		store.add(1, hunted);
+		store.add(2, faster);
+		try {
+			store.add(3, new Game(silent(), 3));
+			fail("neither live game can make room");
+		} catch (IllegalStateException expected) {
+			// turned away instead of going over the budget
+		}
+		assertFalse(store.isHibernated(1));
+		assertFalse(store.isHibernated(2));
+	}
+
+	@Test
+	public void fullOffHeapBufferTurnsNewGamesAway() {
+		// Room for one hibernated game only
+		SessionStore store = new SessionStore(footprint, 128);
+		store.add(1, new Game(silent(), 1));
+		store.add(2, new Game(silent(), 2));
+		try {
+			store.add(3, new Game(silent(), 3));
+			fail("the off-heap buffer is full");
+		} catch (IllegalStateException expected) {
+			// turned away instead of going over the budget
+		}
+		assertEquals(footprint, store.getLiveBytes());
+		store.remove(2);
+		store.add(3, new Game(silent(), 3));
+	}
+
+	@Test
+	public void leavingTakesOffWhatWasCharged() {
+		SessionStore store = new SessionStore(Long.MAX_VALUE, 0);
+		Game game = new Game(silent(), 1);
+		store.add(1, game);
+		store.add(2, new Game(silent(), 2));
+		// Grows while it is live
+		game.setHunting(true);
+		assertTrue(game.getFootprint() > footprint);
+		store.remove(1);
+		assertEquals(footprint, store.getLiveBytes());
+		store.remove(2);
+		assertEquals(0, store.getLiveBytes());
+	}
+
+	private static PrintStream silent() {
+		return new PrintStream(new OutputStream() {
+			public void write(int b) {
+				// not checked
+			}
+		});
+	}
+}
@@ -0,0 +1,73 @@
+package ch.bbw.zork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+import org.junit.Test;
+
+public class SnapshotTest {
+
+	private static final String[] SCRIPT = { "search drawer", "pickup note", "go west", "go north", "search cabinet",
+			"hide curtains", "1", "go west", "search books" };
+
+	@Test
+	public void restoredGameIsTheSame() throws IOException {
+		Game game = new Game(silent(), 42);
+		for (String line : SCRIPT) {
+			game.handleLine(line);
+			Game restored = Game.restoreSnapshot(game.writeSnapshot(), silent());
+			assertEquals(game.toStateMap(), restored.toStateMap());
+		}
+	}
+
+	@Test
+	public void largeWorldsFitTheSnapshot() throws IOException {
+		// The standard building with a corridor of 40,000 more rooms behind
+		// the hideout, each with a note; the player starts at its far end
+		int extra = 40000;
+		StringBuilder text = new StringBuilder(standardWorld().replace("start empfangshalle", "start x" + (extra - 1)));
+		text.append("exit versteck south x0\nexit x0 north versteck\n");
+		for (int i = 0; i < extra; i++) {
+			text.append("room x").append(i).append(" | Corridor ").append(i).append('\n');
+			text.append("note x").append(i).append(" note | Note ").append(i).append('\n');
+			if (i > 0) {
+				text.append("exit x").append(i - 1).append(" east x").append(i).append('\n');
+				text.append("exit x").append(i).append(" west x").append(i - 1).append('\n');
+			}
+		}
+		World world = WorldLoader.load(new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.UTF_8)));
+		assertTrue(world.getRoomCount() > Short.MAX_VALUE);
+
+		Game game = new Game(null, silent(), 42, world);
+		game.handleLine("pickup note");
+		game.handleLine("go west");
+		// The taken note's bit lies far beyond 255 bytes of bitset
+		assertTrue(game.toStateMap().toString(), game.writeSnapshot().length > 255 * 3);
+		Game restored = Game.restoreSnapshot(game.writeSnapshot(), silent(), world);
+		assertEquals(game.toStateMap(), restored.toStateMap());
+		assertEquals(game.writeSnapshot().length, restored.writeSnapshot().length);
+	}
+
+	private static String standardWorld() throws IOException {
+		try (InputStream in = Game.class.getResourceAsStream("standard.world");
+				Scanner scanner = new Scanner(in, "UTF-8")) {
+			return scanner.useDelimiter("\\A").next();
+		}
+	}
+
+	private static PrintStream silent() {
+		return new PrintStream(new OutputStream() {
+			public void write(int b) {
+				// not checked
+			}
+		});
+	}
+}
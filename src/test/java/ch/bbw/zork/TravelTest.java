@@ -0,0 +1,56 @@
+package ch.bbw.zork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TravelTest {
+
+	private final World world = World.standard();
+	private final Game game = new Game(new PrintStream(new OutputStream() {
+		public void write(int b) {
+			// not checked
+		}
+	}), 42);
+
+	@Test
+	public void closedVaultDoorIsWalkedAround() {
+		Room bueroChef = world.getRoom("bueroChef");
+		Room sicherheitsraum = world.getRoom("sicherheitsraum");
+		// With every door open the way leads through the vault
+		assertEquals(Direction.EAST, world.getRoutes().nextHop(bueroChef, sicherheitsraum));
+
+		List<Direction> way = game.findWay(bueroChef, sicherheitsraum);
+		assertNotEquals(Direction.EAST, way.get(0));
+		WorldState closed = new WorldState(world);
+		Room room = bueroChef;
+		for (Direction exit : way) {
+			room = closed.nextRoom(room, exit);
+		}
+		assertEquals(sicherheitsraum, room);
+		// Around through both corridors, the reception, the cafeteria and
+		// the surveillance room
+		assertEquals(6, way.size());
+	}
+
+	@Test
+	public void sealedVentIsNoWay() {
+		// Both the vault door and the vent are shut from the vault room
+		assertNull(game.findWay(world.getRoom("tresorRaum"), world.getRoom("sicherheitsraum")));
+	}
+
+	@Test
+	public void openWayComesFromTheTable() {
+		Room start = world.getStartRoom();
+		Room versteck = world.getRoom("versteck");
+		List<Direction> way = game.findWay(start, versteck);
+		assertEquals(world.getRoutes().distance(start.getId(), versteck.getId()), way.size());
+		assertEquals(world.getRoutes().nextHop(start, versteck), way.get(0));
+	}
+}
@@ -0,0 +1,165 @@
+package ch.bbw.zork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class WorldLoaderTest {
+
+	// A small building with other keys and names than the standard one:
+	// a vault behind a keycard door with a vent and a handle, and a
+	// hideout with a hidden teleport machine
+	private static final String BUILDING = String.join("\n",
+			"room hall | Hall - the entrance",
+			"room den | Den - a quiet corner",
+			"room post | Guard Post - a small room",
+			"room strongroom | Strong Room - the vault",
+			"room closet | Closet - a dead end",
+			"start hall",
+			"guard closet",
+			"exit hall north closet",
+			"exit hall east den",
+			"exit den west hall",
+			"exit hall south post",
+			"exit post north hall",
+			"exit hall west strongroom lock=3",
+			"exit strongroom east hall lock=3",
+			"exit strongroom north post",
+			"hide den nook | A nook in the wall",
+			"search hall desk | A desk",
+			"item keycard | A keycard",
+			"search hall door door requires=keycard opens=3 | A steel door",
+			"search den chest | A chest",
+			"item crowbar | A crowbar",
+			"search den machine door hidden | A machine",
+			"search post vent vent | A vent",
+			"search strongroom lever door opens=3 | A lever",
+			"role vault strongroom",
+			"role hideout den",
+			"role crowbar crowbar",
+			"role teleport den machine",
+			"role handle strongroom lever",
+			"");
+
+	@Test
+	public void standardWorldGivesEveryRole() {
+		World world = World.standard();
+		for (Role role : Role.values()) {
+			Object value = role.getKind() == Role.Kind.ROOM ? world.getRoom(role)
+					: role.getKind() == Role.Kind.ITEM ? world.getItemName(role) : world.getSearchable(role);
+			assertNotNull(role.getName(), value);
+		}
+	}
+
+	@Test
+	public void buildingWithOtherKeysKeepsItsPuzzles() throws IOException {
+		World world = load(BUILDING);
+		Game game = new Game(null, silent(), 1, world);
+		game.start();
+		play(game, "go east", "search chest", "go west", "go south", "search vent");
+		assertEquals("Strong Room", game.getCurrentRoom().getName());
+		// The sealed side of the vent and the handle work with the crowbar
+		play(game, "search lever", "go east", "go east");
+		assertEquals("Den", game.getCurrentRoom().getName());
+		assertEquals(Boolean.TRUE, game.toStateMap().get("tresorDoorOpen"));
+
+		play(game, "hide nook", "1", "1", "1", "2");
+		assertEquals(Boolean.TRUE, game.toStateMap().get("teleportMachineRevealed"));
+		play(game, "search machine");
+		assertEquals(Ending.TELEPORT, game.getEnding());
+	}
+
+	@Test
+	public void worldWithoutRolesHasNoPuzzles() throws IOException {
+		Game game = new Game(null, silent(), 1, GeneratedWorlds.grid(5, 1));
+		game.start();
+		play(game, "search nothing", "go east");
+		assertEquals(Boolean.FALSE, game.toStateMap().get("teleportMachineRevealed"));
+		assertEquals(Boolean.FALSE, game.toStateMap().get("tresorDoorOpen"));
+	}
+
+	@Test
+	public void rolesArePlayedByWhatCanPlayThem() {
+		assertInvalid(BUILDING.replace("role vault strongroom\n", ""), "vent, which needs the roles vault and crowbar",
+				"role handle needs the role vault");
+		assertInvalid(BUILDING.replace("role teleport den machine\n", ""), "role hideout needs the role teleport");
+		assertInvalid(BUILDING.replace("machine door hidden", "machine door"), "role teleport must be a hidden door");
+		assertInvalid(BUILDING.replace("desk | A desk", "desk hidden | A desk"), "desk is hidden");
+		assertInvalid(BUILDING.replace("role crowbar crowbar", "role crowbar hammer"), "no item hammer");
+		assertInvalid(BUILDING + "role secret hall\nrole hatch hall safe\nrole vault den\n", "unknown role secret",
+				"room hall has no searchable safe", "role vault is given twice");
+	}
+
+	@Test
+	public void tenThousandRoomWorldLoads() throws IOException {
+		World world = load(building(100));
+		assertEquals(100 * 100 + 5, world.getRoomCount());
+		Game game = new Game(null, silent(), 1, world);
+		game.start();
+		play(game, "go east", "go west", "go east");
+		assertEquals("Den", game.getCurrentRoom().getName());
+		assertFalse(game.isGameOver());
+	}
+
+	/**
+	 * BUILDING with a size x size grid of rooms behind the den: the rows
+	 * are corridors and the first column joins them.
+	 */
+	private static String building(int size) {
+		StringBuilder text = new StringBuilder(BUILDING);
+		text.append("exit den east g0_0\nexit g0_0 west den\n");
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				text.append("room g").append(x).append('_').append(y).append(" | Room ").append(x).append('/').append(y).append('\n');
+				text.append("search g").append(x).append('_').append(y).append(" shelf | A shelf\n");
+				if (x > 0) {
+					text.append("exit g").append(x).append('_').append(y).append(" west g").append(x - 1).append('_').append(y).append('\n');
+					text.append("exit g").append(x - 1).append('_').append(y).append(" east g").append(x).append('_').append(y).append('\n');
+				} else if (y > 0) {
+					text.append("exit g0_").append(y).append(" north g0_").append(y - 1).append('\n');
+					text.append("exit g0_").append(y - 1).append(" south g0_").append(y).append('\n');
+				}
+			}
+		}
+		return text.toString();
+	}
+
+	private static void assertInvalid(String text, String... problems) {
+		try {
+			load(text);
+			fail("the world is not valid");
+		} catch (IOException e) {
+			for (String problem : problems) {
+				assertTrue(e.getMessage(), e.getMessage().contains(problem));
+			}
+		}
+	}
+
+	private static World load(String text) throws IOException {
+		return WorldLoader.load(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static void play(Game game, String... lines) {
+		for (String line : lines) {
+			game.handleLine(line);
+		}
+	}
+
+	private static PrintStream silent() {
+		return new PrintStream(new OutputStream() {
+			public void write(int b) {
+				// not checked
+			}
+		});
+	}
+}